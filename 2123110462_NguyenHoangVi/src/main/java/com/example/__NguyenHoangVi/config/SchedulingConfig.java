@@ -0,0 +1,12 @@
+package com.example.__NguyenHoangVi.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enable @Scheduled background jobs (sales velocity, rollups, flushes...)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,30 +1,55 @@
 package com.example.__NguyenHoangVi.controller;
 
+import com.example.__NguyenHoangVi.dto.Notification;
 import com.example.__NguyenHoangVi.repository.*;
+import com.example.__NguyenHoangVi.service.ClusterEventBus;
+import com.example.__NguyenHoangVi.service.NotificationHub;
+import com.example.__NguyenHoangVi.service.NotificationReadService;
+import com.example.__NguyenHoangVi.service.NotificationStore;
+import com.example.__NguyenHoangVi.service.OrderRollupService;
+import com.example.__NguyenHoangVi.service.SalesCubeService;
+import com.example.__NguyenHoangVi.service.TopProductsService;
+import com.example.__NguyenHoangVi.util.SalesCube;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 @RestController
 @RequestMapping("/api/admin")
 @CrossOrigin(origins = "*")
 public class AdminController {
 
-    // Static list to store notifications temporarily (replace with database later)
-    private static final List<Map<String, Object>> notificationStore = Collections.synchronizedList(new ArrayList<>());
-
     @Autowired
     private ProductRepository productRepo;
 
     @Autowired
-    private OrderRepository orderRepo;
+    private CustomerRepository customerRepo;
 
     @Autowired
-    private CustomerRepository customerRepo;
+    private NotificationStore notificationStore;
+
+    @Autowired
+    private NotificationHub notificationHub;
+
+    @Autowired
+    private NotificationReadService notificationReadService;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Autowired
+    private OrderRollupService orderRollupService;
+
+    @Autowired
+    private TopProductsService topProductsService;
+
+    @Autowired
+    private SalesCubeService salesCubeService;
 
     // GET http://localhost:8080/api/admin/stats
     @GetMapping("/stats")
@@ -35,21 +60,159 @@ public class AdminController {
         long productCount = productRepo.count();
         stats.put("productCount", productCount);
 
-        // Đếm số lượng đơn hàng
-        long orderCount = orderRepo.count();
-        stats.put("orderCount", orderCount);
-
         // Đếm số lượng khách hàng
         long customerCount = customerRepo.count();
         stats.put("customerCount", customerCount);
 
-        // Tính tổng doanh thu (giả sử bạn muốn tính từ bảng orders)
-        // Nếu không có method này, có thể tạm thời để số giả
-        stats.put("totalRevenue", "15.2M"); // Có thể tính thực tế sau
+        // Số đơn hàng và doanh thu (không tính đơn bị hủy) từ bảng tổng hợp theo ngày
+        Map<String, Object> orders = orderRollupService.summary(null, null);
+        stats.put("orderCount", orders.get("orders"));
+        stats.put("totalRevenue", orders.get("netRevenue"));
 
         return ResponseEntity.ok(stats);
     }
 
+    // GET http://localhost:8080/api/admin/stats/orders?from=2026-01-01&to=2026-02-01
+    // Mặc định: 30 ngày gần nhất
+    @GetMapping("/stats/orders")
+    public ResponseEntity<?> getOrderStats(@RequestParam(required = false) String from,
+            @RequestParam(required = false) String to) {
+        try {
+            LocalDateTime end = to != null ? parseTime(to) : LocalDateTime.now();
+            LocalDateTime start = from != null ? parseTime(from) : LocalDate.now().minusDays(29).atStartOfDay();
+            if (!start.isBefore(end)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Khoảng thời gian không hợp lệ"));
+            }
+            Map<String, Object> summary = orderRollupService.summary(start, end);
+            @SuppressWarnings("unchecked")
+            Map<String, Map<String, Object>> byStatus = (Map<String, Map<String, Object>>) summary.get("byStatus");
+            long orders = (Long) summary.get("orders");
+            double netRevenue = (Double) summary.get("netRevenue");
+            summary.put("totalOrders", orders);
+            summary.put("totalRevenue", netRevenue);
+            summary.put("avgOrderValue", orders == 0 ? 0.0 : (Double) summary.get("revenue") / orders);
+            for (String status : List.of("pending", "confirmed", "shipped", "delivered", "cancelled")) {
+                Map<String, Object> row = byStatus.get(status);
+                summary.put(status + "Orders", row != null ? row.get("orders") : 0L);
+            }
+            return ResponseEntity.ok(summary);
+        } catch (java.time.format.DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Ngày không hợp lệ: " + e.getParsedString()));
+        }
+    }
+
+    // GET http://localhost:8080/api/admin/stats/revenue?days=7
+    // hoặc ?granularity=hour&from=2026-01-01T00:00:00&to=2026-01-02T00:00:00
+    @GetMapping("/stats/revenue")
+    public ResponseEntity<?> getRevenueSeries(@RequestParam(defaultValue = "day") String granularity,
+            @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "7") int days) {
+        if (!OrderRollupService.DAY.equals(granularity) && !OrderRollupService.HOUR.equals(granularity)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "granularity phải là day hoặc hour"));
+        }
+        try {
+            LocalDateTime end = to != null ? parseTime(to) : LocalDate.now().plusDays(1).atStartOfDay();
+            LocalDateTime start = from != null ? parseTime(from) : end.minusDays(Math.max(1, days));
+            if (!start.isBefore(end)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Khoảng thời gian không hợp lệ"));
+            }
+            return ResponseEntity.ok(orderRollupService.series(granularity, start, end));
+        } catch (java.time.format.DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Ngày không hợp lệ: " + e.getParsedString()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // GET http://localhost:8080/api/admin/stats/top-products?window=today&limit=10
+    // window: hour (giờ hiện tại), today (từ 0h hôm nay), week (7 ngày gần nhất)
+    @GetMapping("/stats/top-products")
+    public ResponseEntity<?> getTopProducts(@RequestParam(defaultValue = "today") String window,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            return ResponseEntity.ok(topProductsService.top(window, Math.max(1, Math.min(limit, 50))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // POST http://localhost:8080/api/admin/stats/rollups/rebuild
+    // Tính lại bảng tổng hợp từ bảng orders (sau khi sửa dữ liệu trực tiếp)
+    @PostMapping("/stats/rollups/rebuild")
+    public ResponseEntity<?> rebuildOrderRollups() {
+        try {
+            int rows = orderRollupService.rebuild();
+            return ResponseEntity.ok(Map.of("success", true, "rows", rows));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // GET http://localhost:8080/api/admin/analytics/sales?from=2026-01-01&to=2026-02-01&groupBy=category,channel
+    // groupBy: day, month, category, channel, payment, status (comma separated, empty = totals only)
+    // Filters (comma separated): category=1,2&channel=mobile&payment=cod&status=confirmed
+    @GetMapping("/analytics/sales")
+    public ResponseEntity<?> getSalesAnalytics(@RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "category") String groupBy,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String channel,
+            @RequestParam(required = false) String payment,
+            @RequestParam(required = false) String status,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            Set<Long> categories = null;
+            if (category != null) {
+                categories = new HashSet<>();
+                for (String id : csv(category)) {
+                    categories.add(Long.parseLong(id));
+                }
+            }
+            SalesCube.Query query = new SalesCube.Query(
+                    from != null ? LocalDate.parse(from.trim()) : null,
+                    to != null ? LocalDate.parse(to.trim()) : null,
+                    csv(groupBy),
+                    categories,
+                    channel != null ? new HashSet<>(csv(channel)) : null,
+                    payment != null ? new HashSet<>(csv(payment)) : null,
+                    status != null ? new HashSet<>(csv(status)) : null);
+            return ResponseEntity.ok(salesCubeService.query(query, Math.max(1, Math.min(limit, 1000))));
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Tham số không hợp lệ: " + e.getMessage()));
+        }
+    }
+
+    // GET http://localhost:8080/api/admin/analytics/sales/stats
+    @GetMapping("/analytics/sales/stats")
+    public ResponseEntity<?> getSalesCubeStats() {
+        return ResponseEntity.ok(salesCubeService.stats());
+    }
+
+    // POST http://localhost:8080/api/admin/analytics/sales/rebuild
+    // Dựng lại khối dữ liệu bán hàng từ bảng orders
+    @PostMapping("/analytics/sales/rebuild")
+    public ResponseEntity<?> rebuildSalesCube() {
+        int cells = salesCubeService.rebuild();
+        return ResponseEntity.ok(Map.of("success", true, "cells", cells));
+    }
+
+    // "a, b,,c" -> [a, b, c] (lower case)
+    private static List<String> csv(String value) {
+        List<String> parts = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                parts.add(part.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return parts;
+    }
+
+    // "2026-01-31" (start of day) or "2026-01-31T10:00:00"
+    private static LocalDateTime parseTime(String value) {
+        String trimmed = value.trim().replace("Z", "");
+        return trimmed.length() == 10 ? LocalDate.parse(trimmed).atStartOfDay() : LocalDateTime.parse(trimmed);
+    }
+
     // POST http://localhost:8080/api/admin/notifications/send
     @PostMapping("/notifications/send")
     public ResponseEntity<?> sendNotification(@RequestBody Map<String, Object> request) {
@@ -67,26 +230,25 @@ public class AdminController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Tiêu đề và nội dung không được trống"));
             }
 
-            // Lưu notification vào database hoặc cache
-            Map<String, Object> notification = new HashMap<>();
-            notification.put("id", UUID.randomUUID().toString());
-            notification.put("title", title);
-            notification.put("message", message);
-            notification.put("type", type != null ? type : "news");
-            notification.put("targetUsers", targetUsers != null ? targetUsers : "all");
-            notification.put("targetUserIds", targetUserIds != null ? targetUserIds : new ArrayList<>());
-            notification.put("imageUrl", imageUrl);
-            notification.put("actionUrl", actionUrl);
-            notification.put("sentAt", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
-            notification.put("isActive", true);
-
-            // Save to temporary storage
-            notificationStore.add(notification);
+            List<String> phones = new ArrayList<>();
+            if (targetUserIds != null) {
+                for (Object phone : targetUserIds) {
+                    if (!phones.contains(String.valueOf(phone))) {
+                        phones.add(String.valueOf(phone));
+                    }
+                }
+            }
+
+            // Lưu vào notification store và đẩy tới các client đang kết nối SSE
+            Notification notification = notificationHub.publish(title, message, type, targetUsers, phones,
+                    imageUrl, actionUrl);
 
             System.out.println("✅ Admin sent notification: " + title);
             return ResponseEntity.ok(Map.of(
                     "message", "Gửi thông báo thành công",
                     "notification", notification));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.internalServerError().body(Map.of("error", "Lỗi gửi thông báo: " + e.getMessage()));
@@ -95,40 +257,97 @@ public class AdminController {
 
     // GET
     // http://localhost:8080/api/notifications/new?since=2024-01-01T00:00:00&userPhone=0123456789
+    // or ?sinceSeq=42&userPhone=... to resume from the last seq received
     @GetMapping("/notifications/new")
     public ResponseEntity<?> getNewNotifications(
             @RequestParam(value = "since", defaultValue = "2024-01-01T00:00:00") String since,
+            @RequestParam(value = "sinceSeq", required = false) Long sinceSeq,
             @RequestParam(value = "userPhone", required = false) String userPhone) {
         try {
-            LocalDateTime sinceTime = LocalDateTime.parse(since.replace("Z", ""));
-            List<Map<String, Object>> newNotifications = new ArrayList<>();
-
-            synchronized (notificationStore) {
-                for (Map<String, Object> noti : notificationStore) {
-                    String sentAtStr = (String) noti.get("sentAt");
-                    LocalDateTime sentAt = LocalDateTime.parse(sentAtStr.replace("Z", ""));
-
-                    // Check if notification is after 'since' time
-                    if (sentAt.isAfter(sinceTime)) {
-                        // Check if notification targets this user
-                        String targetUsers = (String) noti.get("targetUsers");
-                        if ("all".equals(targetUsers)) {
-                            newNotifications.add(noti);
-                        } else if ("specific".equals(targetUsers) && userPhone != null) {
-                            List<?> targetUserIds = (List<?>) noti.get("targetUserIds");
-                            if (targetUserIds != null && targetUserIds.contains(userPhone)) {
-                                newNotifications.add(noti);
-                            }
-                        }
-                    }
-                }
-            }
+            List<Notification> newNotifications = sinceSeq != null
+                    ? notificationStore.afterSeq(sinceSeq, userPhone)
+                    : notificationStore.since(LocalDateTime.parse(since.replace("Z", "")), userPhone);
 
-            System.out.println("📬 Returning " + newNotifications.size() + " new notifications for user: " + userPhone);
+            for (Notification notification : newNotifications) {
+                notificationReadService.markDelivered(notification.seq(), userPhone);
+            }
+            if (!newNotifications.isEmpty()) {
+                System.out.println("📬 Returning " + newNotifications.size() + " new notifications for user: " + userPhone);
+            }
             return ResponseEntity.ok(newNotifications);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.internalServerError().body(Map.of("error", "Lỗi lấy thông báo: " + e.getMessage()));
         }
     }
+
+    // GET http://localhost:8080/api/admin/notifications/stream?userPhone=0123456789
+    // Server-Sent Events; on reconnect the browser sends Last-Event-ID (or pass lastEventId)
+    @GetMapping(value = "/notifications/stream", produces = "text/event-stream")
+    public SseEmitter streamNotifications(
+            @RequestParam(value = "userPhone", required = false) String userPhone,
+            @RequestParam(value = "lastEventId", required = false) Long lastEventIdParam,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader) {
+        Long lastEventId = lastEventIdParam;
+        if (lastEventIdHeader != null && !lastEventIdHeader.isBlank()) {
+            try {
+                lastEventId = Long.parseLong(lastEventIdHeader.trim());
+            } catch (NumberFormatException e) {
+                // Not one of our ids, start from now
+            }
+        }
+        return notificationHub.subscribe(userPhone, lastEventId);
+    }
+
+    // GET http://localhost:8080/api/admin/notifications/stream/stats
+    @GetMapping("/notifications/stream/stats")
+    public ResponseEntity<?> getStreamStats() {
+        return ResponseEntity.ok(notificationHub.stats());
+    }
+
+    // GET http://localhost:8080/api/admin/cluster
+    @GetMapping("/cluster")
+    public ResponseEntity<?> getClusterStats() {
+        return ResponseEntity.ok(clusterEventBus.stats());
+    }
+
+    // POST http://localhost:8080/api/admin/notifications/42/read?userPhone=0123456789
+    @PostMapping("/notifications/{seq}/read")
+    public ResponseEntity<?> markNotificationRead(@PathVariable long seq, @RequestParam String userPhone) {
+        // Someone else's targeted notification is as unknown to this phone as a missing one
+        if (seq < 1 || seq > notificationStore.lastSeq() || !notificationStore.isVisibleTo(seq, userPhone)) {
+            return ResponseEntity.status(404).body(Map.of("error", "Không tìm thấy thông báo"));
+        }
+        boolean marked = notificationReadService.markRead(seq, userPhone);
+        return ResponseEntity.ok(Map.of("seq", seq, "marked", marked,
+                "unreadCount", notificationReadService.unreadCount(userPhone)));
+    }
+
+    // POST http://localhost:8080/api/admin/notifications/read-all?userPhone=0123456789
+    @PostMapping("/notifications/read-all")
+    public ResponseEntity<?> markAllNotificationsRead(@RequestParam String userPhone) {
+        int marked = notificationReadService.markAllRead(userPhone);
+        return ResponseEntity.ok(Map.of("marked", marked, "unreadCount", 0));
+    }
+
+    // GET http://localhost:8080/api/admin/notifications/unread-count?userPhone=0123456789
+    @GetMapping("/notifications/unread-count")
+    public ResponseEntity<?> getUnreadCount(@RequestParam String userPhone) {
+        return ResponseEntity.ok(Map.of("unreadCount", notificationReadService.unreadCount(userPhone)));
+    }
+
+    // GET http://localhost:8080/api/admin/notifications/42/read-stats
+    @GetMapping("/notifications/{seq}/read-stats")
+    public ResponseEntity<?> getReadStats(@PathVariable long seq) {
+        if (seq < 1 || seq > notificationStore.lastSeq()) {
+            return ResponseEntity.status(404).body(Map.of("error", "Không tìm thấy thông báo"));
+        }
+        return ResponseEntity.ok(notificationReadService.stats(seq));
+    }
+
+    // GET http://localhost:8080/api/admin/notifications/read-stats?limit=20 (newest broadcasts)
+    @GetMapping("/notifications/read-stats")
+    public ResponseEntity<?> getRecentReadStats(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(notificationReadService.recentStats(Math.max(1, Math.min(limit, 200))));
+    }
 }
@@ -0,0 +1,81 @@
+package com.example.__NguyenHoangVi.controller;
+
+import com.example.__NguyenHoangVi.service.CartService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+// Giỏ hàng phía server, theo userId hoặc số điện thoại
+// Ví dụ: GET http://localhost:8080/api/cart?phone=0909123456
+@RestController
+@RequestMapping("/api/cart")
+@CrossOrigin(origins = "*")
+public class CartController {
+
+    @Autowired
+    private CartService cartService;
+
+    // Digits with an optional leading +; keeps "phone:" + phone within cart_snapshots.cart_key (64)
+    private static final Pattern PHONE_PATTERN = Pattern.compile("^\\+?[0-9]{8,15}$");
+
+    @GetMapping
+    public ResponseEntity<?> getCart(@RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String phone) {
+        return handle(userId, phone, cartService::view);
+    }
+
+    // Body: { "productId": 5, "quantity": 2 }
+    @PostMapping("/items")
+    public ResponseEntity<?> addItem(@RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String phone, @RequestBody Map<String, Object> request) {
+        if (request.get("productId") == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "productId is required"));
+        }
+        Long productId = Long.valueOf(request.get("productId").toString());
+        int quantity = request.get("quantity") != null ? Integer.parseInt(request.get("quantity").toString()) : 1;
+        return handle(userId, phone, key -> cartService.addItem(key, productId, quantity));
+    }
+
+    // Body: { "quantity": 3 } (0 removes the line)
+    @PutMapping("/items/{productId}")
+    public ResponseEntity<?> updateItem(@PathVariable Long productId, @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String phone, @RequestBody Map<String, Object> request) {
+        if (request.get("quantity") == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "quantity is required"));
+        }
+        int quantity = Integer.parseInt(request.get("quantity").toString());
+        return handle(userId, phone, key -> cartService.updateItem(key, productId, quantity));
+    }
+
+    @DeleteMapping("/items/{productId}")
+    public ResponseEntity<?> removeItem(@PathVariable Long productId, @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String phone) {
+        return handle(userId, phone, key -> cartService.removeItem(key, productId));
+    }
+
+    @DeleteMapping
+    public ResponseEntity<?> clearCart(@RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String phone) {
+        return handle(userId, phone, cartService::clear);
+    }
+
+    private ResponseEntity<?> handle(Long userId, String phone, Function<String, CartService.CartView> op) {
+        String key = userId != null ? "user:" + userId
+                : phone != null && !phone.trim().isEmpty() ? "phone:" + phone.trim() : null;
+        if (key == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "userId or phone is required"));
+        }
+        if (userId == null && !PHONE_PATTERN.matcher(phone.trim()).matches()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Số điện thoại không hợp lệ"));
+        }
+        try {
+            return ResponseEntity.ok(op.apply(key));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.__NguyenHoangVi.controller;
+
+import com.example.__NguyenHoangVi.dto.CheckoutRequest;
+import com.example.__NguyenHoangVi.service.CheckoutService;
+import com.example.__NguyenHoangVi.util.LatencyHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+@RestController
+@RequestMapping("/api/checkout")
+@CrossOrigin(origins = "*")
+public class CheckoutController {
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    private static final int LOCK_RETRIES = 2;
+
+    // POST http://localhost:8080/api/checkout
+    // Đặt hàng: giá, khuyến mãi/voucher, tồn kho và đơn hàng trong một transaction
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> checkout(@RequestBody CheckoutRequest request) {
+        long start = System.nanoTime();
+        Map<String, Object> response = new HashMap<>();
+        int status = 200;
+        try {
+            CheckoutService.CheckoutResult result = checkoutWithRetry(request);
+            response.put("success", true);
+            response.put("orderId", result.order().getId());
+            response.put("items", result.items());
+            response.put("subtotal", result.subtotal());
+            response.put("discount", result.discount());
+            response.put("total", result.total());
+            response.put("promotionCode", result.promotionCode());
+            response.put("voucherCode", result.voucherCode());
+            response.put("message", "Đặt hàng thành công!");
+            System.out.println("✅ Checkout order " + result.order().getId() + " total " + result.total());
+        } catch (CheckoutService.CheckoutException e) {
+            status = e.getStatus();
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        } catch (PessimisticLockingFailureException e) {
+            System.err.println("⚠️ Warning checkout lost a lock wait after retries: " + e.getMessage());
+            status = 409;
+            response.put("success", false);
+            response.put("error", "Hệ thống đang bận, vui lòng thử lại");
+        } catch (Exception e) {
+            System.out.println("❌ Error during checkout: " + e.getMessage());
+            status = 500;
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+
+        long elapsed = System.nanoTime() - start;
+        checkoutService.latency().recordNanos(elapsed);
+        return ResponseEntity.status(status)
+                .header("Server-Timing", String.format(Locale.ROOT, "checkout;dur=%.2f", elapsed / 1_000_000.0))
+                .body(response);
+    }
+
+    // A deadlock or lock wait timeout rolled the whole transaction back, so it is safe to run again
+    private CheckoutService.CheckoutResult checkoutWithRetry(CheckoutRequest request) {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return checkoutService.checkout(request);
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= LOCK_RETRIES) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * (attempt + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // GET http://localhost:8080/api/checkout/stats
+    // Độ trễ checkout (ms) kể từ khi server khởi động
+    @GetMapping("/stats")
+    public Map<String, Object> getLatencyStats() {
+        LatencyHistogram latency = checkoutService.latency();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("count", latency.count());
+        stats.put("meanMs", latency.meanMillis());
+        stats.put("p50Ms", latency.percentileMillis(0.50));
+        stats.put("p95Ms", latency.percentileMillis(0.95));
+        stats.put("p99Ms", latency.percentileMillis(0.99));
+        stats.put("maxMs", latency.maxMillis());
+        return stats;
+    }
+}
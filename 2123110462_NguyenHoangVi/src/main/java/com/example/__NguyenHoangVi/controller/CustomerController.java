@@ -2,10 +2,13 @@ package com.example.__NguyenHoangVi.controller;
 
 import com.example.__NguyenHoangVi.entity.Customer;
 import com.example.__NguyenHoangVi.repository.CustomerRepository;
+import com.example.__NguyenHoangVi.service.CustomerMetricsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/customers")
@@ -14,9 +17,55 @@ public class CustomerController {
     @Autowired
     private CustomerRepository repo;
 
+    @Autowired
+    private CustomerMetricsService customerMetricsService;
+
     // GET http://localhost:8080/api/customers
     @GetMapping
     public List<Customer> getAll() {
         return repo.findAll();
     }
+
+    // GET http://localhost:8080/api/customers/metrics?segment=champions&size=20&cursor=...
+    // Khách hàng theo tổng chi tiêu (cao nhất trước), kèm điểm RFM và phân khúc
+    @GetMapping("/metrics")
+    public ResponseEntity<?> getMetrics(@RequestParam(required = false) String segment,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            String filter = segment != null && !segment.isBlank() ? segment.trim() : null;
+            return ResponseEntity.ok(customerMetricsService.page(filter, cursor, Math.max(1, Math.min(size, 100))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // GET http://localhost:8080/api/customers/metrics/overview
+    // Số khách mỗi phân khúc, lần chạy gần nhất và tốc độ xử lý
+    @GetMapping("/metrics/overview")
+    public ResponseEntity<?> getMetricsOverview() {
+        return ResponseEntity.ok(customerMetricsService.overview());
+    }
+
+    // GET http://localhost:8080/api/customers/metrics/0123456789
+    @GetMapping("/metrics/{phone}")
+    public ResponseEntity<?> getMetricsByPhone(@PathVariable String phone) {
+        Map<String, Object> metric = customerMetricsService.get(phone);
+        if (metric == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Chưa có số liệu cho khách hàng này"));
+        }
+        return ResponseEntity.ok(metric);
+    }
+
+    // POST http://localhost:8080/api/customers/metrics/run?mode=incremental (or full)
+    @PostMapping("/metrics/run")
+    public ResponseEntity<?> runMetrics(@RequestParam(defaultValue = CustomerMetricsService.INCREMENTAL) String mode) {
+        if (!CustomerMetricsService.INCREMENTAL.equals(mode) && !CustomerMetricsService.FULL.equals(mode)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "mode phải là incremental hoặc full"));
+        }
+        if (!customerMetricsService.start(mode)) {
+            return ResponseEntity.status(409).body(Map.of("error", "Đang có một lần chạy khác"));
+        }
+        return ResponseEntity.accepted().body(Map.of("success", true, "mode", mode));
+    }
 }
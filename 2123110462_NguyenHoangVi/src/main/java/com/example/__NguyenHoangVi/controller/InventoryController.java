@@ -2,11 +2,15 @@ package com.example.__NguyenHoangVi.controller;
 
 import com.example.__NguyenHoangVi.entity.Inventory;
 import com.example.__NguyenHoangVi.repository.InventoryRepository;
+import com.example.__NguyenHoangVi.service.SalesVelocityService;
+import com.example.__NguyenHoangVi.service.SalesVelocityService.ReorderRecommendation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
@@ -19,6 +23,9 @@ public class InventoryController {
     @Autowired
     private InventoryRepository inventoryRepository;
 
+    @Autowired
+    private SalesVelocityService salesVelocityService;
+
     // Get all inventory
     @GetMapping
     public List<Inventory> getAllInventory() {
@@ -54,6 +61,43 @@ public class InventoryController {
         }
     }
 
+    // Get dynamic reorder recommendations (based on sales velocity)
+    @GetMapping("/reorder-recommendations")
+    public List<Map<String, Object>> getReorderRecommendations() {
+        List<Inventory> inventories = inventoryRepository.findAll();
+        List<ReorderRecommendation> recommendations = salesVelocityService.recommendAll(inventories);
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < inventories.size(); i++) {
+            ReorderRecommendation rec = recommendations.get(i);
+            if (rec != null) {
+                result.add(toRecommendationResponse(inventories.get(i), rec));
+            }
+        }
+        return result;
+    }
+
+    // Get reorder recommendation for one product
+    @GetMapping("/product/{productId}/reorder-recommendation")
+    public ResponseEntity<?> getReorderRecommendation(@PathVariable Long productId) {
+        Optional<Inventory> inventory = inventoryRepository.findByProductId(productId);
+        if (inventory.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReorderRecommendation rec = salesVelocityService.recommend(productId);
+        if (rec == null) {
+            return ResponseEntity.ok(Map.of("productId", productId, "message", "No recent sales for this product"));
+        }
+        return ResponseEntity.ok(toRecommendationResponse(inventory.get(), rec));
+    }
+
+    // Apply reorder recommendations to all inventory rows
+    @PostMapping("/reorder-recommendations/apply")
+    public ResponseEntity<?> applyReorderRecommendations() {
+        int updated = salesVelocityService.applyRecommendations();
+        return ResponseEntity.ok(Map.of("message", "Reorder recommendations applied", "updated", updated));
+    }
+
     // Get inventory by ID
     @GetMapping("/{id}")
     public ResponseEntity<Inventory> getInventoryById(@PathVariable Long id) {
@@ -162,4 +206,17 @@ public class InventoryController {
             return ResponseEntity.notFound().build();
         }
     }
+
+    private Map<String, Object> toRecommendationResponse(Inventory inv, ReorderRecommendation rec) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("inventoryId", inv.getId());
+        response.put("productId", inv.getProductId());
+        response.put("quantityInStock", inv.getQuantityInStock());
+        response.put("dailyVelocity", Math.round(rec.dailyVelocity() * 100.0) / 100.0);
+        response.put("currentReorderLevel", inv.getReorderLevel());
+        response.put("currentReorderQuantity", inv.getReorderQuantity());
+        response.put("recommendedReorderLevel", rec.reorderLevel());
+        response.put("recommendedReorderQuantity", rec.reorderQuantity());
+        return response;
+    }
 }
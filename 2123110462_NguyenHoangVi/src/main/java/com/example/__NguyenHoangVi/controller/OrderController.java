@@ -1,12 +1,21 @@
 package com.example.__NguyenHoangVi.controller;
 
 import com.example.__NguyenHoangVi.entity.Order;
+import com.example.__NguyenHoangVi.entity.OrderItem;
+import com.example.__NguyenHoangVi.repository.OrderItemRepository;
 import com.example.__NguyenHoangVi.repository.OrderRepository;
 import com.example.__NguyenHoangVi.dto.OrderRequest;
+import com.example.__NguyenHoangVi.service.OrderRollupService;
+import com.example.__NguyenHoangVi.service.SalesCubeService;
+import com.example.__NguyenHoangVi.service.SalesVelocityService;
+import com.example.__NguyenHoangVi.service.TopProductsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,6 +27,26 @@ public class OrderController {
     @Autowired
     private OrderRepository repo;
 
+    @Autowired
+    private OrderItemRepository orderItemRepo;
+
+    @Autowired
+    private SalesVelocityService salesVelocityService;
+
+    @Autowired
+    private OrderRollupService orderRollupService;
+
+    @Autowired
+    private TopProductsService topProductsService;
+
+    @Autowired
+    private SalesCubeService salesCubeService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static final String CONCURRENT_CHANGE = "Đơn hàng vừa được cập nhật bởi người khác, vui lòng tải lại";
+
     // GET http://localhost:8080/api/orders
     // Lấy tất cả đơn hàng
     @GetMapping
@@ -51,6 +80,30 @@ public class OrderController {
             // Lưu vào database
             Order savedOrder = repo.save(order);
             System.out.println("✅ Order saved successfully - ID: " + savedOrder.getId());
+            orderRollupService.orderCreated(savedOrder);
+
+            // Lưu các sản phẩm trong đơn hàng
+            if (request.getItems() != null && !request.getItems().isEmpty()) {
+                List<OrderItem> items = new ArrayList<>();
+                for (OrderRequest.OrderItem reqItem : request.getItems()) {
+                    OrderItem item = new OrderItem();
+                    item.setOrderId(savedOrder.getId());
+                    item.setProductId(reqItem.getProductId());
+                    item.setProductName(reqItem.getProductName());
+                    item.setQuantity(reqItem.getQuantity());
+                    item.setPrice(reqItem.getPrice());
+                    items.add(item);
+                }
+                orderItemRepo.saveAll(items);
+
+                // Cập nhật tốc độ bán hàng (gợi ý nhập hàng); sản phẩm bán chạy đọc từ bảng orders
+                for (OrderItem item : items) {
+                    if (item.getQuantity() != null) {
+                        salesVelocityService.recordSale(item.getProductId(), item.getQuantity(),
+                                savedOrder.getCreatedAt());
+                    }
+                }
+            }
 
             // Trả về response
             Map<String, Object> response = new HashMap<>();
@@ -83,8 +136,10 @@ public class OrderController {
             }
 
             // Cập nhật status thành "confirmed"
-            order.setStatus("confirmed");
-            Order updatedOrder = repo.save(order);
+            Order updatedOrder = changeStatus(order, "confirmed");
+            if (updatedOrder == null) {
+                return ResponseEntity.status(409).body(Map.of("error", CONCURRENT_CHANGE));
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -163,8 +218,10 @@ public class OrderController {
                 return ResponseEntity.status(404).body(error);
             }
 
-            order.setStatus(newStatus);
-            Order updatedOrder = repo.save(order);
+            Order updatedOrder = changeStatus(order, newStatus);
+            if (updatedOrder == null) {
+                return ResponseEntity.status(409).body(Map.of("error", CONCURRENT_CHANGE));
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -180,6 +237,27 @@ public class OrderController {
         }
     }
 
+    /**
+     * Move the order to newStatus only if its status is still the one we read
+     * (conditional UPDATE); the rollups and the sales cube are told only when
+     * exactly this request made the move. The UPDATE and the cluster event
+     * commit in one transaction. Returns null when another request changed
+     * the status first.
+     */
+    private Order changeStatus(Order order, String newStatus) {
+        String oldStatus = order.getStatus();
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            if (repo.updateStatusIfUnchanged(order.getId(), oldStatus != null ? oldStatus : "", newStatus) != 1) {
+                return null;
+            }
+            order.setStatus(newStatus);
+            orderRollupService.statusChanged(order, oldStatus);
+            salesCubeService.statusChanged(order, oldStatus);
+            topProductsService.statusChanged(order, oldStatus);
+            return order;
+        });
+    }
+
     // GET http://localhost:8080/api/orders/{id}
     // Lấy chi tiết một đơn hàng
     @GetMapping("/{id}")
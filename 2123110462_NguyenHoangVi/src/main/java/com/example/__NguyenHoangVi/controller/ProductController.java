@@ -2,6 +2,8 @@ package com.example.__NguyenHoangVi.controller;
 
 import com.example.__NguyenHoangVi.entity.Product;
 import com.example.__NguyenHoangVi.repository.ProductRepository;
+import com.example.__NguyenHoangVi.service.CartService;
+import com.example.__NguyenHoangVi.service.ClusterEventBus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,11 +19,47 @@ public class ProductController {
     @Autowired
     private ProductRepository repo;
 
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
     @PostMapping
     public Product create(@RequestBody Product p) {
         return repo.save(p);
     }
 
+    // Update product; carts holding it are repriced in place (on every node)
+    @PutMapping("/{id}")
+    public ResponseEntity<Product> update(@PathVariable Long id, @RequestBody Product details) {
+        Optional<Product> product = repo.findById(id);
+        if (product.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Product p = product.get();
+        if (details.getName() != null)
+            p.setName(details.getName());
+        if (details.getDescription() != null)
+            p.setDescription(details.getDescription());
+        if (details.getPrice() != null)
+            p.setPrice(details.getPrice());
+        if (details.getQuantity() != null)
+            p.setQuantity(details.getQuantity());
+        if (details.getStockQuantity() != null)
+            p.setStockQuantity(details.getStockQuantity());
+        if (details.getImage() != null)
+            p.setImage(details.getImage());
+        if (details.getCategoryId() != null)
+            p.setCategoryId(details.getCategoryId());
+        if (details.getStatus() != null)
+            p.setStatus(details.getStatus());
+        Product saved = repo.save(p);
+        cartService.onPriceChanged(saved.getId(), saved.getPrice(), saved.getName());
+        clusterEventBus.publish(ClusterEventBus.PRODUCT, saved.getId().toString());
+        return ResponseEntity.ok(saved);
+    }
+
     @GetMapping
     public List<Product> getAll() {
         return repo.findAll();
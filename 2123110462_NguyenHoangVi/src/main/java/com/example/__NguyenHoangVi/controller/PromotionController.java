@@ -2,11 +2,18 @@ package com.example.__NguyenHoangVi.controller;
 
 import com.example.__NguyenHoangVi.entity.Promotion;
 import com.example.__NguyenHoangVi.repository.PromotionRepository;
+import com.example.__NguyenHoangVi.service.CustomerRedemptionService;
+import com.example.__NguyenHoangVi.service.PromotionPricingEngine;
+import com.example.__NguyenHoangVi.service.PromotionRuleSet;
+import com.example.__NguyenHoangVi.service.PromotionScheduler;
+import com.example.__NguyenHoangVi.service.PromotionUsageService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
@@ -19,16 +26,50 @@ public class PromotionController {
     @Autowired
     private PromotionRepository promotionRepository;
 
+    @Autowired
+    private PromotionPricingEngine pricingEngine;
+
+    @Autowired
+    private PromotionScheduler promotionScheduler;
+
+    @Autowired
+    private PromotionUsageService promotionUsageService;
+
+    @Autowired
+    private CustomerRedemptionService redemptionService;
+
     // Get all promotions
     @GetMapping
     public List<Promotion> getAllPromotions() {
         return promotionRepository.findAll();
     }
 
-    // Get active promotions
+    // Get active promotions (served from the compiled rule set, no query)
     @GetMapping("/active")
     public List<Promotion> getActivePromotions() {
-        return promotionRepository.findActivePromotions(LocalDateTime.now());
+        return pricingEngine.activePromotions();
+    }
+
+    // Best promotion for a cart subtotal, or the discount of a specific code
+    // Body: { "subtotal": 250000, "code": "SALE10" (optional) }
+    @PostMapping("/best")
+    public ResponseEntity<?> getBestPromotion(@RequestBody Map<String, Object> request) {
+        if (request.get("subtotal") == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "subtotal is required"));
+        }
+        BigDecimal subtotal = new BigDecimal(request.get("subtotal").toString());
+        String code = (String) request.get("code");
+        PromotionRuleSet.Result result = code != null && !code.isEmpty()
+                ? pricingEngine.forCode(code, subtotal)
+                : pricingEngine.best(subtotal);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("promotionId", result.promotionId());
+        response.put("code", result.code());
+        response.put("subtotal", subtotal);
+        response.put("discount", result.discount());
+        response.put("total", result.total());
+        return ResponseEntity.ok(response);
     }
 
     // Get promotions by type (flash_sale, seasonal, discount)
@@ -68,7 +109,9 @@ public class PromotionController {
         promotion.setCreatedAt(LocalDateTime.now());
         promotion.setUpdatedAt(LocalDateTime.now());
         promotion.setUsageCount(0);
+        promotion.setUsageShards(null); // sharding is switched on via PUT /{id}/shards, which creates the shard rows
         Promotion saved = promotionRepository.save(promotion);
+        promotionScheduler.promotionsChanged();
         return ResponseEntity.ok(saved);
     }
 
@@ -96,12 +139,21 @@ public class PromotionController {
                 p.setStartDate(promotionDetails.getStartDate());
             if (promotionDetails.getEndDate() != null)
                 p.setEndDate(promotionDetails.getEndDate());
+            boolean limitChanged = promotionDetails.getUsageLimit() != null
+                    && !promotionDetails.getUsageLimit().equals(p.getUsageLimit());
             if (promotionDetails.getUsageLimit() != null)
                 p.setUsageLimit(promotionDetails.getUsageLimit());
             if (promotionDetails.getPromotionType() != null)
                 p.setPromotionType(promotionDetails.getPromotionType());
+            if (promotionDetails.getPerCustomerLimit() != null) // 0 removes the limit
+                p.setPerCustomerLimit(
+                        promotionDetails.getPerCustomerLimit() > 0 ? promotionDetails.getPerCustomerLimit() : null);
             p.setUpdatedAt(LocalDateTime.now());
             Promotion updated = promotionRepository.save(p);
+            if (limitChanged && p.getUsageShards() != null && p.getUsageShards() > 1) {
+                promotionUsageService.setShards(id, p.getUsageShards()); // re-split budget for the new limit
+            }
+            promotionScheduler.promotionsChanged();
             return ResponseEntity.ok(updated);
         } else {
             return ResponseEntity.notFound().build();
@@ -117,6 +169,7 @@ public class PromotionController {
             p.setIsActive(!p.getIsActive());
             p.setUpdatedAt(LocalDateTime.now());
             Promotion updated = promotionRepository.save(p);
+            promotionScheduler.promotionsChanged();
             return ResponseEntity.ok(updated);
         } else {
             return ResponseEntity.notFound().build();
@@ -128,29 +181,77 @@ public class PromotionController {
     public ResponseEntity<?> deletePromotion(@PathVariable Long id) {
         Optional<Promotion> promotion = promotionRepository.findById(id);
         if (promotion.isPresent()) {
+            promotionUsageService.deleteShards(id);
             promotionRepository.deleteById(id);
+            promotionScheduler.promotionsChanged();
             return ResponseEntity.ok().body(Map.of("message", "Promotion deleted successfully"));
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
-    // Increment usage count
+    // Increment usage count (atomic, never exceeds usageLimit or perCustomerLimit)
     @PutMapping("/{id}/use")
-    public ResponseEntity<Promotion> usePromotion(@PathVariable Long id) {
+    public ResponseEntity<?> usePromotion(@PathVariable Long id, @RequestParam(required = false) Long customerId) {
+        if (!CustomerRedemptionService.validCustomerId(customerId)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "customerId không hợp lệ"));
+        }
         Optional<Promotion> promotion = promotionRepository.findById(id);
         if (promotion.isPresent()) {
             Promotion p = promotion.get();
-            if (p.getUsageLimit() == null || p.getUsageCount() < p.getUsageLimit()) {
-                p.setUsageCount(p.getUsageCount() + 1);
-                p.setUpdatedAt(LocalDateTime.now());
-                Promotion updated = promotionRepository.save(p);
-                return ResponseEntity.ok(updated);
+            CustomerRedemptionService.Claim claim = redemptionService.claim(CustomerRedemptionService.PROMOTION,
+                    id, customerId, p.getPerCustomerLimit(), null);
+            if (!claim.granted()) {
+                return ResponseEntity.status(409).body(Map.of("error", claim.reason()));
+            }
+            if (promotionUsageService.use(p)) {
+                if (promotionUsageService.exhausted(p)) {
+                    promotionScheduler.promotionsChanged(); // last use taken, drop from rule set
+                }
+                p.setUsageCount(promotionUsageService.totalUsage(p)); // response only, column is not updatable
+                return ResponseEntity.ok(p);
             } else {
+                redemptionService.release(CustomerRedemptionService.PROMOTION, id, customerId, claim);
                 return ResponseEntity.badRequest().build();
             }
         } else {
             return ResponseEntity.notFound().build();
         }
     }
+
+    // Can this customer still use the promotion? (no query for customers who never used it)
+    @GetMapping("/{id}/eligibility")
+    public ResponseEntity<?> checkEligibility(@PathVariable Long id, @RequestParam Long customerId) {
+        if (!CustomerRedemptionService.validCustomerId(customerId)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "customerId không hợp lệ"));
+        }
+        Optional<Promotion> promotion = promotionRepository.findById(id);
+        if (promotion.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean eligible = redemptionService.canUse(CustomerRedemptionService.PROMOTION, id, customerId,
+                promotion.get().getPerCustomerLimit());
+        return ResponseEntity.ok(Map.of("promotionId", id, "customerId", customerId, "eligible", eligible));
+    }
+
+    // Switch usage counting to N shards for hot promotions (1 = single counter)
+    // Body: { "shards": 16 }
+    @PutMapping("/{id}/shards")
+    public ResponseEntity<?> setUsageShards(@PathVariable Long id, @RequestBody Map<String, Object> request) {
+        Optional<Promotion> promotion = promotionRepository.findById(id);
+        if (promotion.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        int shards = request.get("shards") != null ? Integer.parseInt(request.get("shards").toString()) : 1;
+        if (shards > 1 && promotion.get().getUsageLimit() == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Sharded mode needs a usage limit"));
+        }
+        int usageCount = promotionUsageService.setShards(id, shards);
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", id);
+        response.put("usageShards", shards > 1 ? Math.min(shards, PromotionUsageService.MAX_SHARDS) : null);
+        response.put("usageCount", usageCount);
+        response.put("usageLimit", promotion.get().getUsageLimit());
+        return ResponseEntity.ok(response);
+    }
 }
@@ -0,0 +1,116 @@
+package com.example.__NguyenHoangVi.controller;
+
+import com.example.__NguyenHoangVi.entity.ReportJob;
+import com.example.__NguyenHoangVi.repository.ReportJobRepository;
+import com.example.__NguyenHoangVi.service.ReportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/admin/reports")
+@CrossOrigin(origins = "*")
+public class ReportController {
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private ReportJobRepository reportJobRepository;
+
+    // Queue a report job; an identical job still in progress is returned instead
+    // Body: { "type": "sales", "from": "2026-01-01", "to": "2026-02-01", "granularity": "day" }
+    @PostMapping
+    public ResponseEntity<?> createReport(@RequestBody Map<String, Object> request) {
+        Map<String, String> params = new HashMap<>();
+        request.forEach((name, value) -> {
+            if (value != null) {
+                params.put(name, value.toString());
+            }
+        });
+        try {
+            ReportService.Submission submission = reportService.submit(params.get("type"), params);
+            Map<String, Object> body = view(submission.job());
+            body.put("coalesced", submission.coalesced());
+            return ResponseEntity.accepted().body(body);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of("error", "Hàng đợi báo cáo đang đầy, vui lòng thử lại sau"));
+        }
+    }
+
+    // Recent jobs and worker pool load
+    @GetMapping
+    public Map<String, Object> getReports() {
+        List<Map<String, Object>> jobs = reportService.recent().stream().map(this::view).collect(Collectors.toList());
+        Map<String, Object> body = new HashMap<>();
+        body.put("jobs", jobs);
+        body.put("pool", reportService.poolStats());
+        return body;
+    }
+
+    // Job status (poll until completed or failed)
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getReport(@PathVariable Long id) {
+        return reportJobRepository.findById(id)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(view(job)))
+                .orElse(ResponseEntity.status(404).body(Map.of("error", "Không tìm thấy báo cáo")));
+    }
+
+    // Download the gzipped CSV; Range requests get 206 partial content
+    @GetMapping("/{id}/download")
+    public ResponseEntity<?> downloadReport(@PathVariable Long id) {
+        ReportJob job = reportJobRepository.findById(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Không tìm thấy báo cáo"));
+        }
+        if (!"completed".equals(job.getStatus())) {
+            return ResponseEntity.status(409).body(Map.of("error", "Báo cáo chưa sẵn sàng", "status", job.getStatus()));
+        }
+        Path file = reportService.file(job);
+        if (file == null) {
+            return ResponseEntity.status(410).body(Map.of("error", "Tệp báo cáo đã hết hạn hoặc không có trên máy chủ này"));
+        }
+        Resource resource = new FileSystemResource(file);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/gzip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"report-" + job.getId() + "-" + job.getType() + ".csv.gz\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(resource);
+    }
+
+    private Map<String, Object> view(ReportJob job) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("id", job.getId());
+        view.put("type", job.getType());
+        view.put("params", job.getParams());
+        view.put("status", job.getStatus());
+        view.put("rows", reportService.rows(job));
+        view.put("fileSize", job.getFileSize());
+        view.put("error", job.getError());
+        view.put("createdAt", job.getCreatedAt());
+        view.put("startedAt", job.getStartedAt());
+        view.put("completedAt", job.getCompletedAt());
+        view.put("durationMs", job.getDurationMs());
+        if ("completed".equals(job.getStatus())) {
+            view.put("downloadUrl", "/api/admin/reports/" + job.getId() + "/download");
+        }
+        return view;
+    }
+}
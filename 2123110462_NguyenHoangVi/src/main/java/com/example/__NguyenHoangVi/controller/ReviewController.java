@@ -1,16 +1,32 @@
 package com.example.__NguyenHoangVi.controller;
 
+import com.example.__NguyenHoangVi.dto.CursorPage;
+import com.example.__NguyenHoangVi.dto.ReviewListItem;
 import com.example.__NguyenHoangVi.entity.Review;
 import com.example.__NguyenHoangVi.repository.ReviewRepository;
+import com.example.__NguyenHoangVi.service.RatingSummaryService;
+import com.example.__NguyenHoangVi.service.RatingSummaryService.RatingSummary;
+import com.example.__NguyenHoangVi.service.ReviewDuplicateDetector;
+import com.example.__NguyenHoangVi.service.ReviewModerationService;
+import com.example.__NguyenHoangVi.service.ReviewVoteService;
+import com.example.__NguyenHoangVi.util.MinHashLshIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/reviews")
@@ -20,46 +36,181 @@ public class ReviewController {
     @Autowired
     private ReviewRepository reviewRepository;
 
-    // Get all reviews
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private ReviewVoteService reviewVoteService;
+
+    @Autowired
+    private ReviewModerationService reviewModerationService;
+
+    @Autowired
+    private ReviewDuplicateDetector reviewDuplicateDetector;
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_SUMMARY_PRODUCTS = 200;
+    private static final String CONCURRENT_CHANGE = "Đánh giá vừa được cập nhật bởi người khác, vui lòng tải lại";
+
+    // Get all reviews (cursor paginated, newest first)
     @GetMapping
-    public List<Review> getAllReviews() {
-        return reviewRepository.findAll();
+    public ResponseEntity<?> getAllReviews(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        try {
+            int limit = pageSize(size);
+            PageRequest page = PageRequest.of(0, limit + 1);
+            List<ReviewListItem> rows;
+            if (cursor == null || cursor.isEmpty()) {
+                rows = reviewRepository.findFeedFirstPage(page);
+            } else {
+                CursorPage.Cursor c = CursorPage.Cursor.decode(cursor);
+                rows = reviewRepository.findFeedAfter(c.createdAt(), c.id(), page);
+            }
+            return ResponseEntity.ok(toPage(rows, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
-    // Get reviews by product
+    // Get reviews by product (first page + rating summary)
     @GetMapping("/product/{productId}")
-    public ResponseEntity<?> getReviewsByProduct(@PathVariable Long productId) {
-        List<Review> reviews = reviewRepository.findApprovedReviewsByProduct(productId);
-        Double avgRating = reviewRepository.getAverageRatingByProduct(productId);
+    public ResponseEntity<?> getReviewsByProduct(@PathVariable Long productId,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        int limit = pageSize(size);
+        List<ReviewListItem> rows = reviewRepository.findApprovedFeedFirstPage(productId, PageRequest.of(0, limit + 1));
+        CursorPage<ReviewListItem> page = toPage(rows, limit);
+        RatingSummary summary = ratingSummaryService.getSummary(productId);
 
         Map<String, Object> response = new HashMap<>();
-        response.put("averageRating", avgRating != null ? avgRating : 0.0);
-        response.put("totalReviews", reviews.size());
-        response.put("reviews", reviews);
+        response.put("averageRating", summary.averageRating());
+        response.put("totalReviews", summary.reviewCount());
+        response.put("reviews", page.items());
+        response.put("nextCursor", page.nextCursor());
+        response.put("hasMore", page.hasMore());
 
-        // Rating breakdown
-        Map<Integer, Long> ratingBreakdown = new HashMap<>();
-        for (int i = 1; i <= 5; i++) {
-            Long count = reviewRepository.countReviewsByRating(productId, i);
-            ratingBreakdown.put(i, count);
-        }
-        response.put("ratingBreakdown", ratingBreakdown);
+        // Rating breakdown (materialized, cached)
+        response.put("ratingBreakdown", summary.breakdown());
 
         return ResponseEntity.ok(response);
     }
 
+    // Get rating summaries for many products at once (product grids)
+    // GET /api/reviews/summary?productIds=1,2,3
+    @GetMapping("/summary")
+    public ResponseEntity<?> getRatingSummaries(@RequestParam("productIds") List<Long> productIds) {
+        LinkedHashSet<Long> ids = new LinkedHashSet<>(productIds);
+        ids.remove(null);
+        if (ids.size() > MAX_SUMMARY_PRODUCTS) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "At most " + MAX_SUMMARY_PRODUCTS + " products per request"));
+        }
+
+        Map<Long, RatingSummary> summaries = ratingSummaryService.getSummaries(ids);
+        List<Map<String, Object>> result = new ArrayList<>(summaries.size());
+        for (RatingSummary summary : summaries.values()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("productId", summary.productId());
+            item.put("averageRating", summary.averageRating());
+            item.put("reviewCount", summary.reviewCount());
+            result.add(item);
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(30, TimeUnit.SECONDS))
+                .body(result);
+    }
+
+    // Get next page of approved reviews for a product
+    @GetMapping("/product/{productId}/page")
+    public ResponseEntity<?> getReviewPageByProduct(@PathVariable Long productId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        try {
+            int limit = pageSize(size);
+            PageRequest page = PageRequest.of(0, limit + 1);
+            List<ReviewListItem> rows;
+            if (cursor == null || cursor.isEmpty()) {
+                rows = reviewRepository.findApprovedFeedFirstPage(productId, page);
+            } else {
+                CursorPage.Cursor c = CursorPage.Cursor.decode(cursor);
+                rows = reviewRepository.findApprovedFeedAfter(productId, c.createdAt(), c.id(), page);
+            }
+            return ResponseEntity.ok(toPage(rows, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // Get pending reviews (Admin)
     @GetMapping("/pending")
     public List<Review> getPendingReviews() {
         return reviewRepository.findByStatus("pending");
     }
 
+    // Get reviews auto-flagged as near-duplicates (Admin)
+    @GetMapping("/flagged")
+    public List<Review> getFlaggedReviews() {
+        return reviewRepository.findByStatus("flagged");
+    }
+
+    // Claim a batch of pending reviews for moderation (Admin)
+    // Body: { "moderator": "admin1", "batchSize": 20 }
+    @PostMapping("/moderation/claim")
+    public ResponseEntity<?> claimPendingReviews(@RequestBody Map<String, Object> request) {
+        String moderator = (String) request.get("moderator");
+        if (moderator == null || moderator.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "moderator is required"));
+        }
+        int batchSize = request.get("batchSize") != null ? ((Number) request.get("batchSize")).intValue() : 20;
+        List<Review> claimed = reviewModerationService.claim(moderator.trim(), batchSize);
+        return ResponseEntity.ok(Map.of("moderator", moderator.trim(), "reviews", claimed, "count", claimed.size()));
+    }
+
+    // Approve/reject a claimed batch in one call (Admin)
+    // Body: { "moderator": "admin1", "decisions": [ { "id": 1, "decision": "approve" }, ... ] }
+    @PostMapping("/moderation/decisions")
+    public ResponseEntity<?> submitModerationDecisions(@RequestBody Map<String, Object> request) {
+        String moderator = (String) request.get("moderator");
+        List<?> decisionList = (List<?>) request.get("decisions");
+        if (moderator == null || moderator.trim().isEmpty() || decisionList == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "moderator and decisions are required"));
+        }
+        Map<Long, String> decisions = new LinkedHashMap<>();
+        for (Object item : decisionList) {
+            Map<?, ?> decision = (Map<?, ?>) item;
+            decisions.put(((Number) decision.get("id")).longValue(), (String) decision.get("decision"));
+        }
+        ReviewModerationService.DecisionResult result = reviewModerationService.decide(moderator.trim(), decisions);
+        return ResponseEntity.ok(Map.of(
+                "approved", result.approved(),
+                "rejected", result.rejected(),
+                "skipped", result.skipped()));
+    }
+
+    // Release claimed reviews back to the queue (Admin)
+    // Body: { "moderator": "admin1", "ids": [1, 2, 3] }
+    @PostMapping("/moderation/release")
+    public ResponseEntity<?> releaseClaimedReviews(@RequestBody Map<String, Object> request) {
+        String moderator = (String) request.get("moderator");
+        List<?> idList = (List<?>) request.get("ids");
+        if (moderator == null || moderator.trim().isEmpty() || idList == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "moderator and ids are required"));
+        }
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        for (Object id : idList) {
+            ids.add(((Number) id).longValue());
+        }
+        int released = reviewModerationService.release(moderator.trim(), ids);
+        return ResponseEntity.ok(Map.of("released", released));
+    }
+
     // Get review by ID
     @GetMapping("/{id}")
     public ResponseEntity<Review> getReviewById(@PathVariable Long id) {
         Optional<Review> review = reviewRepository.findById(id);
         if (review.isPresent()) {
-            return ResponseEntity.ok(review.get());
+            return ResponseEntity.ok(withPendingVotes(review.get()));
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -74,27 +225,34 @@ public class ReviewController {
         review.setCreatedAt(LocalDateTime.now());
         review.setUpdatedAt(LocalDateTime.now());
         review.setStatus("pending");
+
+        // Near-copies of an existing review skip the pending queue
+        int[] signature = reviewDuplicateDetector.signature(review.getContent());
+        MinHashLshIndex.Match duplicate = reviewDuplicateDetector.findDuplicate(signature);
+        if (duplicate != null) {
+            review.setStatus("flagged");
+            review.setDuplicateOfId(duplicate.docId());
+            System.out.println("🚩 Review flagged as near-duplicate of #" + duplicate.docId()
+                    + " (similarity " + duplicate.similarity() + ")");
+        }
+
         Review saved = reviewRepository.save(review);
+        reviewDuplicateDetector.register(saved.getId(), signature);
         return ResponseEntity.ok(saved);
     }
 
     // Update review
     @PutMapping("/{id}")
-    public ResponseEntity<Review> updateReview(@PathVariable Long id, @RequestBody Review reviewDetails) {
+    @Transactional
+    public ResponseEntity<?> updateReview(@PathVariable Long id, @RequestBody Review reviewDetails) {
         Optional<Review> review = reviewRepository.findById(id);
         if (review.isPresent()) {
             Review r = review.get();
-            if (reviewDetails.getTitle() != null)
-                r.setTitle(reviewDetails.getTitle());
-            if (reviewDetails.getContent() != null)
-                r.setContent(reviewDetails.getContent());
-            if (reviewDetails.getRating() != null)
-                r.setRating(reviewDetails.getRating());
-            if (reviewDetails.getStatus() != null)
-                r.setStatus(reviewDetails.getStatus());
-            r.setUpdatedAt(LocalDateTime.now());
-            Review updated = reviewRepository.save(r);
-            return ResponseEntity.ok(updated);
+            return transition(r,
+                    reviewDetails.getTitle() != null ? reviewDetails.getTitle() : r.getTitle(),
+                    reviewDetails.getContent() != null ? reviewDetails.getContent() : r.getContent(),
+                    reviewDetails.getRating() != null ? reviewDetails.getRating() : r.getRating(),
+                    reviewDetails.getStatus() != null ? reviewDetails.getStatus() : r.getStatus());
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -102,14 +260,12 @@ public class ReviewController {
 
     // Approve review
     @PutMapping("/{id}/approve")
-    public ResponseEntity<Review> approveReview(@PathVariable Long id) {
+    @Transactional
+    public ResponseEntity<?> approveReview(@PathVariable Long id) {
         Optional<Review> review = reviewRepository.findById(id);
         if (review.isPresent()) {
             Review r = review.get();
-            r.setStatus("approved");
-            r.setUpdatedAt(LocalDateTime.now());
-            Review updated = reviewRepository.save(r);
-            return ResponseEntity.ok(updated);
+            return transition(r, r.getTitle(), r.getContent(), r.getRating(), "approved");
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -117,14 +273,12 @@ public class ReviewController {
 
     // Reject review
     @PutMapping("/{id}/reject")
-    public ResponseEntity<Review> rejectReview(@PathVariable Long id) {
+    @Transactional
+    public ResponseEntity<?> rejectReview(@PathVariable Long id) {
         Optional<Review> review = reviewRepository.findById(id);
         if (review.isPresent()) {
             Review r = review.get();
-            r.setStatus("rejected");
-            r.setUpdatedAt(LocalDateTime.now());
-            Review updated = reviewRepository.save(r);
-            return ResponseEntity.ok(updated);
+            return transition(r, r.getTitle(), r.getContent(), r.getRating(), "rejected");
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -132,43 +286,103 @@ public class ReviewController {
 
     // Delete review
     @DeleteMapping("/{id}")
+    @Transactional
     public ResponseEntity<?> deleteReview(@PathVariable Long id) {
         Optional<Review> review = reviewRepository.findById(id);
         if (review.isPresent()) {
-            reviewRepository.deleteById(id);
+            Review r = review.get();
+            if (reviewRepository.deleteIfUnchanged(id, statusOf(r), r.getRating()) != 1) {
+                return ResponseEntity.status(409).body(Map.of("error", CONCURRENT_CHANGE));
+            }
+            ratingSummaryService.recordTransition(r.getProductId(), approvedRating(r), null);
+            reviewDuplicateDetector.remove(id);
             return ResponseEntity.ok().body(Map.of("message", "Review deleted successfully"));
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
-    // Update helpful count
-    @PutMapping("/{id}/helpful")
-    public ResponseEntity<Review> markHelpful(@PathVariable Long id) {
-        Optional<Review> review = reviewRepository.findById(id);
-        if (review.isPresent()) {
-            Review r = review.get();
-            r.setHelpfulCount(r.getHelpfulCount() + 1);
-            r.setUpdatedAt(LocalDateTime.now());
-            Review updated = reviewRepository.save(r);
-            return ResponseEntity.ok(updated);
-        } else {
-            return ResponseEntity.notFound().build();
+    /**
+     * Write the new fields only if status and rating are still what we read
+     * (conditional UPDATE), then move the rating summary by exactly that
+     * transition. A concurrent approve/reject/update makes this one a 409
+     * instead of applying the same delta twice.
+     */
+    private ResponseEntity<?> transition(Review r, String title, String content, Integer rating, String status) {
+        Integer oldApprovedRating = approvedRating(r);
+        int updated = reviewRepository.updateIfUnchanged(r.getId(), statusOf(r), r.getRating(), title, content,
+                rating, status, LocalDateTime.now());
+        if (updated != 1) {
+            return ResponseEntity.status(409).body(Map.of("error", CONCURRENT_CHANGE));
+        }
+        Review saved = reviewRepository.findById(r.getId()).orElse(r);
+        ratingSummaryService.recordTransition(r.getProductId(), oldApprovedRating, approvedRating(saved));
+        // Edited text is compared from now on; rejected reviews stop matching
+        if (!Objects.equals(content, r.getContent()) || !Objects.equals(status, r.getStatus())) {
+            reviewDuplicateDetector.reindex(saved.getId(), saved.getContent(), saved.getStatus());
         }
+        return ResponseEntity.ok(saved);
+    }
+
+    // Update helpful count (buffered, flushed in batches)
+    @PutMapping("/{id}/helpful")
+    public ResponseEntity<?> markHelpful(@PathVariable Long id,
+            @RequestParam(value = "customerId", required = false) Long customerId) {
+        return vote(id, customerId, true);
     }
 
-    // Update unhelpful count
+    // Update unhelpful count (buffered, flushed in batches)
     @PutMapping("/{id}/unhelpful")
-    public ResponseEntity<Review> markUnhelpful(@PathVariable Long id) {
+    public ResponseEntity<?> markUnhelpful(@PathVariable Long id,
+            @RequestParam(value = "customerId", required = false) Long customerId) {
+        return vote(id, customerId, false);
+    }
+
+    private ResponseEntity<?> vote(Long id, Long customerId, boolean helpful) {
         Optional<Review> review = reviewRepository.findById(id);
-        if (review.isPresent()) {
-            Review r = review.get();
-            r.setUnhelpfulCount(r.getUnhelpfulCount() + 1);
-            r.setUpdatedAt(LocalDateTime.now());
-            Review updated = reviewRepository.save(r);
-            return ResponseEntity.ok(updated);
-        } else {
+        if (review.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        if (!reviewVoteService.vote(id, customerId, helpful)) {
+            return ResponseEntity.status(409).body(Map.of("error", "Bạn đã đánh giá bình luận này rồi"));
+        }
+        return ResponseEntity.ok(withPendingVotes(review.get()));
+    }
+
+    // Persisted counts + votes still waiting for the next flush (response only, never saved)
+    private Review withPendingVotes(Review r) {
+        long[] pending = reviewVoteService.pendingDelta(r.getId());
+        r.setHelpfulCount((int) ((r.getHelpfulCount() != null ? r.getHelpfulCount() : 0) + pending[0]));
+        r.setUnhelpfulCount((int) ((r.getUnhelpfulCount() != null ? r.getUnhelpfulCount() : 0) + pending[1]));
+        return r;
+    }
+
+    private static int pageSize(int size) {
+        return size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    // Rows were fetched with limit + 1 to know whether another page exists
+    private CursorPage<ReviewListItem> toPage(List<ReviewListItem> rows, int limit) {
+        boolean hasMore = rows.size() > limit;
+        List<ReviewListItem> items = new ArrayList<>(Math.min(rows.size(), limit));
+        for (ReviewListItem row : hasMore ? rows.subList(0, limit) : rows) {
+            long[] pending = reviewVoteService.pendingDelta(row.id());
+            items.add(pending[0] == 0 && pending[1] == 0 ? row : row.withVoteDelta(pending[0], pending[1]));
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            ReviewListItem last = items.get(items.size() - 1);
+            nextCursor = new CursorPage.Cursor(last.createdAt(), last.id()).encode();
+        }
+        return new CursorPage<>(items, nextCursor, hasMore);
+    }
+
+    // Rating counted in the product summary, or null if the review is not approved
+    private static String statusOf(Review r) {
+        return r.getStatus() != null ? r.getStatus() : "";
+    }
+
+    private static Integer approvedRating(Review r) {
+        return "approved".equals(r.getStatus()) ? r.getRating() : null;
     }
 }
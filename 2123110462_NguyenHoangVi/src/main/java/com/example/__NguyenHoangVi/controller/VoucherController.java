@@ -1,17 +1,220 @@
 package com.example.__NguyenHoangVi.controller;
 
+import com.example.__NguyenHoangVi.entity.Voucher;
+import com.example.__NguyenHoangVi.entity.VoucherBatch;
+import com.example.__NguyenHoangVi.repository.VoucherBatchRepository;
+import com.example.__NguyenHoangVi.repository.VoucherRepository;
+import com.example.__NguyenHoangVi.service.CustomerRedemptionService;
+import com.example.__NguyenHoangVi.service.VoucherBatchService;
+import com.example.__NguyenHoangVi.service.VoucherService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/vouchers")
 @CrossOrigin(origins = "*")
 public class VoucherController {
 
-    // ========================================
-    // ⚠️ VOUCHER ENDPOINTS DISABLED
-    // ========================================
-    // All voucher API endpoints are currently disabled
-    // The controller is kept as a placeholder for future use
-    // ========================================
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Autowired
+    private VoucherService voucherService;
+
+    @Autowired
+    private VoucherBatchRepository voucherBatchRepository;
+
+    @Autowired
+    private VoucherBatchService voucherBatchService;
+
+    private static final String CODEGEN_DISABLED = "Chưa cấu hình khóa sinh mã voucher (VOUCHER_CODEGEN_SECRET)";
+
+    // Get all vouchers
+    @GetMapping
+    public List<Voucher> getAllVouchers() {
+        return voucherRepository.findAll();
+    }
+
+    // Get vouchers that are active and still have uses left
+    @GetMapping("/available")
+    public List<Voucher> getAvailableVouchers() {
+        return voucherRepository.findAvailableVouchers();
+    }
+
+    // Create voucher
+    @PostMapping
+    public ResponseEntity<?> createVoucher(@RequestBody Voucher voucher) {
+        if (voucher.getCode() == null || voucher.getDiscountType() == null || voucher.getDiscountValue() == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "code, discountType and discountValue are required"));
+        }
+        if (voucherRepository.findByCode(voucher.getCode()).isPresent()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Mã voucher đã tồn tại"));
+        }
+        voucher.setId(null);
+        voucher.setUsedCount(0);
+        Voucher saved = voucherRepository.save(voucher);
+        voucherService.register(saved);
+        return ResponseEntity.ok(saved);
+    }
+
+    // Validate a code for an order amount (in-memory, no database hit)
+    // Body: { "code": "GIAM50K", "orderAmount": 350000, "customerId": 12 (optional) }
+    @PostMapping("/validate")
+    public ResponseEntity<?> validateVoucher(@RequestBody Map<String, Object> request) {
+        if (request.get("code") == null || request.get("orderAmount") == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "code and orderAmount are required"));
+        }
+        double orderAmount = Double.parseDouble(request.get("orderAmount").toString());
+        Long customerId = request.get("customerId") != null ? Long.valueOf(request.get("customerId").toString()) : null;
+        if (!CustomerRedemptionService.validCustomerId(customerId)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "customerId không hợp lệ"));
+        }
+        return ResponseEntity.ok(toResponse(voucherService.validate(request.get("code").toString(), orderAmount,
+                customerId)));
+    }
+
+    // Redeem a code: validates, then consumes one use atomically against maxUses
+    // Body: { "code": "GIAM50K", "orderAmount": 350000, "customerId": 12 (required if perCustomerLimit is set) }
+    @PostMapping("/redeem")
+    public ResponseEntity<?> redeemVoucher(@RequestBody Map<String, Object> request) {
+        if (request.get("code") == null || request.get("orderAmount") == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "code and orderAmount are required"));
+        }
+        double orderAmount = Double.parseDouble(request.get("orderAmount").toString());
+        Long customerId = request.get("customerId") != null ? Long.valueOf(request.get("customerId").toString()) : null;
+        if (!CustomerRedemptionService.validCustomerId(customerId)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "customerId không hợp lệ"));
+        }
+        VoucherService.Check check = voucherService.redeem(request.get("code").toString(), orderAmount, customerId,
+                null);
+        if (!check.valid()) {
+            return ResponseEntity.status(409).body(toResponse(check));
+        }
+        return ResponseEntity.ok(toResponse(check));
+    }
+
+    // Start a bulk generation of single-use codes (runs in the background)
+    // Body: { "name": "Tet 2026", "prefix": "TET-", "quantity": 1000000, "discountType": "fixed",
+    //         "discountValue": 20000, "minOrderAmount": 100000, "startDate": "...", "endDate": "..." }
+    @PostMapping("/batches")
+    public ResponseEntity<?> createBatch(@RequestBody Map<String, Object> request) {
+        if (!voucherBatchService.isConfigured()) {
+            return ResponseEntity.status(503).body(Map.of("error", CODEGEN_DISABLED));
+        }
+        if (request.get("quantity") == null || request.get("discountType") == null
+                || request.get("discountValue") == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "quantity, discountType and discountValue are required"));
+        }
+        int quantity = Integer.parseInt(request.get("quantity").toString());
+        if (quantity < 1 || quantity > VoucherBatchService.MAX_QUANTITY) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "quantity must be between 1 and " + VoucherBatchService.MAX_QUANTITY));
+        }
+        String prefix = request.get("prefix") != null
+                ? request.get("prefix").toString().trim().toUpperCase(Locale.ROOT)
+                : "";
+        if (prefix.length() > 10) {
+            return ResponseEntity.badRequest().body(Map.of("error", "prefix must be at most 10 characters"));
+        }
+
+        VoucherBatch batch = new VoucherBatch();
+        batch.setName(request.get("name") != null ? request.get("name").toString() : "Voucher batch");
+        batch.setPrefix(prefix);
+        batch.setQuantity(quantity);
+        batch.setDiscountType(request.get("discountType").toString());
+        batch.setDiscountValue(Double.parseDouble(request.get("discountValue").toString()));
+        if (request.get("minOrderAmount") != null)
+            batch.setMinOrderAmount(Double.parseDouble(request.get("minOrderAmount").toString()));
+        if (request.get("startDate") != null)
+            batch.setStartDate(LocalDateTime.parse(request.get("startDate").toString()));
+        if (request.get("endDate") != null)
+            batch.setEndDate(LocalDateTime.parse(request.get("endDate").toString()));
+
+        VoucherBatch started = voucherBatchService.start(batch);
+        return ResponseEntity.accepted().body(toBatchResponse(started));
+    }
+
+    @GetMapping("/batches")
+    public List<Map<String, Object>> getBatches() {
+        return voucherBatchRepository.findAllByOrderByCreatedAtDesc().stream()
+                .map(this::toBatchResponse)
+                .collect(Collectors.toList());
+    }
+
+    // Progress of a batch
+    @GetMapping("/batches/{id}")
+    public ResponseEntity<?> getBatch(@PathVariable Long id) {
+        Optional<VoucherBatch> batch = voucherBatchRepository.findById(id);
+        if (batch.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(toBatchResponse(batch.get()));
+    }
+
+    // Download the codes of a completed batch as text, one per line (regenerated, not read back)
+    @GetMapping("/batches/{id}/codes")
+    public ResponseEntity<StreamingResponseBody> downloadBatchCodes(@PathVariable Long id) {
+        Optional<VoucherBatch> batch = voucherBatchRepository.findById(id);
+        if (batch.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!voucherBatchService.isConfigured()) {
+            return ResponseEntity.status(503).build();
+        }
+        if (!"completed".equals(batch.get().getStatus())) {
+            return ResponseEntity.status(409).build();
+        }
+        VoucherBatch b = batch.get();
+        StreamingResponseBody body = out -> voucherBatchService.writeCodes(b,
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 64 * 1024));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"voucher-batch-" + id + ".txt\"")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(body);
+    }
+
+    private Map<String, Object> toBatchResponse(VoucherBatch batch) {
+        int generated = voucherBatchService.generatedCount(batch);
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", batch.getId());
+        response.put("name", batch.getName());
+        response.put("prefix", batch.getPrefix());
+        response.put("quantity", batch.getQuantity());
+        response.put("generated", generated);
+        response.put("percent", batch.getQuantity() > 0 ? generated * 100.0 / batch.getQuantity() : 100.0);
+        response.put("codesPerSecond", Math.round(voucherBatchService.rate(batch)));
+        response.put("status", batch.getStatus());
+        response.put("error", batch.getError());
+        response.put("createdAt", batch.getCreatedAt());
+        response.put("completedAt", batch.getCompletedAt());
+        return response;
+    }
 
+    private Map<String, Object> toResponse(VoucherService.Check check) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("valid", check.valid());
+        response.put("voucherId", check.voucherId());
+        response.put("code", check.code());
+        response.put("discount", check.discount());
+        response.put("total", check.total());
+        if (check.reason() != null) {
+            response.put("message", check.reason());
+        }
+        return response;
+    }
 }
@@ -0,0 +1,24 @@
+package com.example.__NguyenHoangVi.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class CheckoutRequest {
+    private Long customerId; // needed for per-customer limited promotions/vouchers
+    private String customerName;
+    private String phone;
+    private String address;
+    private String paymentMethod;
+    private String transactionCode; // Mã giao dịch ngân hàng
+    private String promotionCode; // optional, otherwise the best automatic promotion is used
+    private String voucherCode; // optional
+    private List<Line> items;
+
+    // Prices are never taken from the client
+    @Data
+    public static class Line {
+        private Long productId;
+        private Integer quantity;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.__NguyenHoangVi.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated feed ordered by (createdAt DESC, id DESC).
+ * nextCursor is null on the last page.
+ */
+public record CursorPage<T>(List<T> items, String nextCursor, boolean hasMore) {
+
+    // Decoded position: the (createdAt, id) of the last row already returned
+    public record Cursor(LocalDateTime createdAt, Long id) {
+
+        public String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.__NguyenHoangVi.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Immutable admin notification. JSON keeps the shape the app already reads
+ * (id, title, ..., sentAt as ISO string); seq is the store's monotonic
+ * sequence, usable as a resume cursor, and sentAtMicros is the parsed time
+ * used for indexing.
+ */
+public record Notification(
+        String id,
+        long seq,
+        String title,
+        String message,
+        String type, // promotion, update, alert, news
+        String targetUsers, // all or specific
+        List<String> targetUserIds, // phones when targetUsers = specific
+        String imageUrl,
+        String actionUrl,
+        String sentAt,
+        @JsonIgnore long sentAtMicros,
+        @JsonProperty("isActive") boolean isActive) {
+
+    @JsonIgnore
+    public boolean isBroadcast() {
+        return !"specific".equals(targetUsers);
+    }
+}
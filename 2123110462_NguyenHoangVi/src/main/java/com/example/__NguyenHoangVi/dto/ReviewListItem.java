@@ -0,0 +1,28 @@
+package com.example.__NguyenHoangVi.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lightweight review row for list views: content is cut to an excerpt in SQL,
+ * the full text is loaded on demand via GET /api/reviews/{id}.
+ */
+public record ReviewListItem(
+        Long id,
+        Long productId,
+        Long customerId,
+        Integer rating,
+        String title,
+        String excerpt,
+        Integer helpfulCount,
+        Integer unhelpfulCount,
+        Boolean verifiedPurchase,
+        String status,
+        LocalDateTime createdAt) {
+
+    public ReviewListItem withVoteDelta(long helpful, long unhelpful) {
+        return new ReviewListItem(id, productId, customerId, rating, title, excerpt,
+                (int) ((helpfulCount != null ? helpfulCount : 0) + helpful),
+                (int) ((unhelpfulCount != null ? unhelpfulCount : 0) + unhelpful),
+                verifiedPurchase, status, createdAt);
+    }
+}
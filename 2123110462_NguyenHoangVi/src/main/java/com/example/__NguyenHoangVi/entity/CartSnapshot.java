@@ -0,0 +1,25 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Persisted copy of a server-side cart. Only product ids and quantities are
+ * stored ("12:2,40:1"); prices are re-read when the cart is loaded.
+ */
+@Entity
+@Table(name = "cart_snapshots")
+@Data
+public class CartSnapshot {
+    @Id
+    @Column(name = "cart_key", length = 64)
+    private String cartKey; // "phone:0909123456" or "user:12"
+
+    @Column(columnDefinition = "TEXT")
+    private String items;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,34 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row for ClusterEventBus: a change other API nodes must apply
+ * (new notification, cache invalidation...). Written in the same
+ * transaction as the change, tailed by id, purged after a retention period.
+ */
+@Entity
+@Table(name = "cluster_events", indexes = {
+        @Index(name = "idx_cluster_events_created_at", columnList = "created_at")
+})
+@Data
+public class ClusterEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 32)
+    private String topic;
+
+    @Column(length = 1000)
+    private String payload;
+
+    @Column(nullable = false, length = 36)
+    private String origin; // node id of the publisher, which skips its own events
+
+    @Column(name = "created_at", nullable = false, columnDefinition = "DATETIME(6)")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,20 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Named counter shared by all API nodes, incremented with
+ * UPDATE ... SET current_value = LAST_INSERT_ID(current_value + 1).
+ */
+@Entity
+@Table(name = "cluster_sequences")
+@Data
+public class ClusterSequence {
+    @Id
+    @Column(length = 32)
+    private String name;
+
+    @Column(name = "current_value", nullable = false)
+    private Long currentValue;
+}
@@ -0,0 +1,62 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Purchase history of one customer (by phone) and its RFM scores, written
+ * by CustomerMetricsService. Cancelled orders are not counted. Scores are
+ * quintiles over all customers, 5 = best (most recent, most orders, most
+ * spent).
+ */
+@Entity
+@Table(name = "customer_metrics", uniqueConstraints = @UniqueConstraint(name = "uk_customer_metrics_phone", columnNames = "phone"),
+        indexes = {
+                @Index(name = "idx_customer_metrics_spend", columnList = "lifetime_spend, id"),
+                @Index(name = "idx_customer_metrics_segment_spend", columnList = "segment, lifetime_spend, id")
+        })
+@Data
+public class CustomerMetric {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 20)
+    private String phone;
+
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    @Column(name = "customer_name")
+    private String customerName;
+
+    @Column(name = "first_order_at")
+    private LocalDateTime firstOrderAt;
+
+    @Column(name = "last_order_at")
+    private LocalDateTime lastOrderAt;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    @Column(name = "lifetime_spend", nullable = false, precision = 19, scale = 2)
+    private BigDecimal lifetimeSpend = BigDecimal.ZERO;
+
+    @Column(name = "recency_score")
+    private Integer recencyScore;
+
+    @Column(name = "frequency_score")
+    private Integer frequencyScore;
+
+    @Column(name = "monetary_score")
+    private Integer monetaryScore;
+
+    @Column(length = 20)
+    private String segment; // champions, loyal, new, promising, at_risk, hibernating
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,56 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * One run of the customer metrics job: the order id range it covered and
+ * its throughput. The highest toOrderId of the completed runs is where the
+ * next incremental run starts.
+ */
+@Entity
+@Table(name = "customer_metrics_runs")
+@Data
+public class CustomerMetricsRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 12)
+    private String mode; // incremental, full
+
+    @Column(nullable = false, length = 12)
+    private String status; // completed, failed
+
+    @Column(name = "from_order_id")
+    private Long fromOrderId; // exclusive
+
+    @Column(name = "to_order_id")
+    private Long toOrderId; // inclusive
+
+    @Column(name = "orders_scanned")
+    private Long ordersScanned = 0L;
+
+    @Column(name = "customers_updated")
+    private Integer customersUpdated = 0;
+
+    @Column(name = "scores_changed")
+    private Integer scoresChanged = 0;
+
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
+    @Column(name = "orders_per_second")
+    private Double ordersPerSecond;
+
+    @Column(columnDefinition = "VARCHAR(1000)")
+    private String error;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,37 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Who received and who read one notification, as serialized RoaringBitmaps
+ * over notification_users ids. Counts are kept alongside for the admin
+ * stats so they don't need the blobs.
+ */
+@Entity
+@Table(name = "notification_read_state")
+@Data
+public class NotificationReadState {
+    @Id
+    @Column(name = "notification_seq")
+    private Long notificationSeq;
+
+    @Lob
+    @Column(columnDefinition = "LONGBLOB")
+    private byte[] delivered;
+
+    @Lob
+    @Column(name = "read_bits", columnDefinition = "LONGBLOB")
+    private byte[] readBits;
+
+    @Column(name = "delivered_count")
+    private Long deliveredCount;
+
+    @Column(name = "read_count")
+    private Long readCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
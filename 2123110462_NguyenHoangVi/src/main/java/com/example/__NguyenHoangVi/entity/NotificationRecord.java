@@ -0,0 +1,48 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A sent notification. seq is assigned by NotificationStore (not generated)
+ * so memory and table share one sequence; rows are written in batches by the
+ * store with JdbcTemplate, this entity only defines the table.
+ */
+@Entity
+@Table(name = "notifications", indexes = {
+        @Index(name = "idx_notifications_sent_at", columnList = "sent_at")
+})
+@Data
+public class NotificationRecord {
+    @Id
+    private Long seq;
+
+    @Column(name = "public_id", nullable = false, length = 36)
+    private String publicId; // the "id" the app sees
+
+    @Column(nullable = false)
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    @Column(length = 32)
+    private String type;
+
+    @Column(name = "target_users", nullable = false, length = 16)
+    private String targetUsers; // all or specific
+
+    @Column(name = "target_phones", columnDefinition = "TEXT")
+    private String targetPhones; // comma separated, lookups go through notification_targets
+
+    @Column(name = "image_url", length = 1000)
+    private String imageUrl;
+
+    @Column(name = "action_url", length = 1000)
+    private String actionUrl;
+
+    @Column(name = "sent_at", nullable = false, columnDefinition = "DATETIME(6)")
+    private LocalDateTime sentAt;
+}
@@ -0,0 +1,26 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Recipient of a targeted notification, so "notifications for this phone
+ * after seq" is an index range scan instead of a search in target_phones.
+ */
+@Entity
+@Table(name = "notification_targets", uniqueConstraints = @UniqueConstraint(name = "uk_notification_target", columnNames = {
+        "phone", "notification_seq" }), indexes = {
+                @Index(name = "idx_notification_targets_seq", columnList = "notification_seq")
+        })
+@Data
+public class NotificationTarget {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 32)
+    private String phone;
+
+    @Column(name = "notification_seq", nullable = false)
+    private Long notificationSeq;
+}
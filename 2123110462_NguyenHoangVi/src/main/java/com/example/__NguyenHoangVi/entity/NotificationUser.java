@@ -0,0 +1,20 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Dense int id per phone for notification bitmaps. Ids are handed out in
+ * order of first contact, so bitmap chunks fill up instead of spreading.
+ */
+@Entity
+@Table(name = "notification_users", uniqueConstraints = @UniqueConstraint(name = "uk_notification_user_phone", columnNames = "phone"))
+@Data
+public class NotificationUser {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, length = 32)
+    private String phone;
+}
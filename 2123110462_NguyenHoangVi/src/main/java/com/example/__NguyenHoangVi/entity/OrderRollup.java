@@ -0,0 +1,44 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Order count and revenue of one hour or day, overall (dimension "all") or
+ * for one payment method, channel or status. Maintained incrementally by
+ * OrderRollupService; the unique key doubles as the range index for
+ * dashboard queries.
+ */
+@Entity
+@Table(name = "order_rollups", uniqueConstraints = @UniqueConstraint(name = "uk_order_rollup", columnNames = {
+        "granularity", "bucket_start", "dimension", "dim_value" }))
+@Data
+public class OrderRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 8)
+    private String granularity; // hour, day
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(nullable = false, length = 16)
+    private String dimension; // all, payment, channel, status
+
+    @Column(name = "dim_value", nullable = false, length = 50)
+    private String dimValue = "";
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,45 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Materialized rating breakdown per product (approved reviews only).
+ * Maintained incrementally by RatingSummaryService on every moderation change.
+ */
+@Entity
+@Table(name = "product_rating_summary")
+@Data
+public class ProductRatingSummary {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "count_1", nullable = false)
+    private Long count1 = 0L;
+
+    @Column(name = "count_2", nullable = false)
+    private Long count2 = 0L;
+
+    @Column(name = "count_3", nullable = false)
+    private Long count3 = 0L;
+
+    @Column(name = "count_4", nullable = false)
+    private Long count4 = 0L;
+
+    @Column(name = "count_5", nullable = false)
+    private Long count5 = 0L;
+
+    @Column(name = "review_count", nullable = false)
+    private Long reviewCount = 0L;
+
+    @Column(name = "rating_sum", nullable = false)
+    private Long ratingSum = 0L;
+
+    @Column(name = "average_rating", nullable = false)
+    private Double averageRating = 0.0;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
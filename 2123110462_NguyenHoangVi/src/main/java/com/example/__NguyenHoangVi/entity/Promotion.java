@@ -44,9 +44,16 @@ public class Promotion {
     @Column(name = "usage_limit")
     private Integer usageLimit;
 
-    @Column(name = "usage_count")
+    @Column(name = "per_customer_limit") // null = unlimited
+    private Integer perCustomerLimit;
+
+    // usage_count and usage_shards are written only by PromotionUsageService
+    @Column(name = "usage_count", updatable = false)
     private Integer usageCount = 0;
 
+    @Column(name = "usage_shards", updatable = false) // > 1 = sharded counter mode
+    private Integer usageShards;
+
     @Column(name = "promotion_type") // flash_sale, seasonal, discount
     private String promotionType = "discount";
 
@@ -172,6 +179,22 @@ public class Promotion {
         this.usageCount = usageCount;
     }
 
+    public Integer getPerCustomerLimit() {
+        return perCustomerLimit;
+    }
+
+    public void setPerCustomerLimit(Integer perCustomerLimit) {
+        this.perCustomerLimit = perCustomerLimit;
+    }
+
+    public Integer getUsageShards() {
+        return usageShards;
+    }
+
+    public void setUsageShards(Integer usageShards) {
+        this.usageShards = usageShards;
+    }
+
     public String getPromotionType() {
         return promotionType;
     }
@@ -0,0 +1,31 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * One slice of a promotion's usage budget (sharded counter mode).
+ * Sum of budgets = usage_limit - promotions.usage_count at the time sharding
+ * was enabled; each shard is incremented with a conditional UPDATE.
+ */
+@Entity
+@Table(name = "promotion_usage_shards", uniqueConstraints = @UniqueConstraint(name = "uk_promotion_usage_shard", columnNames = {
+        "promotion_id", "shard_no" }))
+@Data
+public class PromotionUsageShard {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "promotion_id", nullable = false)
+    private Long promotionId;
+
+    @Column(name = "shard_no", nullable = false)
+    private Integer shardNo;
+
+    @Column(name = "budget", nullable = false)
+    private Integer budget;
+
+    @Column(name = "used", nullable = false)
+    private Integer used = 0;
+}
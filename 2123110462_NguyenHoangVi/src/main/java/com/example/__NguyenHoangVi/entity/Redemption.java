@@ -0,0 +1,42 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * One use of a promotion or voucher by a customer. use_no is 1..limit when
+ * the target has a per-customer limit, so the unique key makes the database
+ * refuse a use beyond the limit even under concurrent checkouts; it is null
+ * (not constrained) for unlimited targets.
+ */
+@Entity
+@Table(name = "redemptions", uniqueConstraints = @UniqueConstraint(name = "uk_redemption_use", columnNames = {
+        "kind", "target_id", "customer_id", "use_no" }), indexes = {
+                @Index(name = "idx_redemptions_customer", columnList = "customer_id")
+        })
+@Data
+public class Redemption {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 16)
+    private String kind; // promotion, voucher
+
+    @Column(name = "target_id", nullable = false)
+    private Long targetId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(name = "use_no")
+    private Integer useNo;
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,49 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * An admin report computed in the background by ReportService. The result
+ * is a gzipped CSV under reports.dir named after the job id.
+ */
+@Entity
+@Table(name = "report_jobs", indexes = @Index(name = "idx_report_jobs_created", columnList = "created_at"))
+@Data
+public class ReportJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 20)
+    private String type; // sales, inventory, reviews
+
+    @Column(nullable = false)
+    private String params; // canonical query string, e.g. from=2026-01-01&granularity=day&to=2026-02-01
+
+    @Column(nullable = false, length = 12)
+    private String status = "queued"; // queued, running, completed, failed
+
+    @Column(name = "row_count")
+    private Long rowCount;
+
+    @Column(name = "file_size")
+    private Long fileSize; // bytes, compressed
+
+    @Column(columnDefinition = "VARCHAR(1000)")
+    private String error;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @Column(name = "duration_ms")
+    private Long durationMs;
+}
@@ -4,7 +4,11 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "reviews")
+@Table(name = "reviews", indexes = {
+        @Index(name = "idx_reviews_product_status_created", columnList = "product_id, status, created_at"),
+        @Index(name = "idx_reviews_created", columnList = "created_at"),
+        @Index(name = "idx_reviews_status_created", columnList = "status, created_at")
+})
 public class Review {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -25,17 +29,28 @@ public class Review {
     @Column(name = "content", columnDefinition = "LONGTEXT")
     private String content;
 
-    @Column(name = "helpful_count")
+    // Only ReviewVoteService writes these (batched increments), JPA never overwrites them
+    @Column(name = "helpful_count", updatable = false)
     private Integer helpfulCount = 0;
 
-    @Column(name = "unhelpful_count")
+    @Column(name = "unhelpful_count", updatable = false)
     private Integer unhelpfulCount = 0;
 
     @Column(name = "verified_purchase")
     private Boolean verifiedPurchase = false;
 
     @Column(name = "status")
-    private String status = "pending"; // pending, approved, rejected
+    private String status = "pending"; // pending, approved, rejected, flagged
+
+    @Column(name = "duplicate_of_id")
+    private Long duplicateOfId; // set when auto-flagged as a near-duplicate
+
+    // Moderation queue lease (see ReviewModerationService)
+    @Column(name = "claimed_by")
+    private String claimedBy;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
 
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
@@ -150,4 +165,28 @@ public class Review {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Long getDuplicateOfId() {
+        return duplicateOfId;
+    }
+
+    public void setDuplicateOfId(Long duplicateOfId) {
+        this.duplicateOfId = duplicateOfId;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
 }
@@ -0,0 +1,31 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * One helpful/unhelpful vote per customer per review (written in batches by
+ * ReviewVoteService, used to rebuild the in-memory dedupe set on startup).
+ */
+@Entity
+@Table(name = "review_votes", uniqueConstraints = @UniqueConstraint(name = "uk_review_votes_review_customer", columnNames = {
+        "review_id", "customer_id" }))
+@Data
+public class ReviewVote {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "review_id", nullable = false)
+    private Long reviewId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(name = "helpful", nullable = false)
+    private Boolean helpful;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
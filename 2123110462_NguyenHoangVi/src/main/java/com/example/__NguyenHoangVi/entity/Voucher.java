@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "vouchers")
+@Table(name = "vouchers", indexes = {
+        @Index(name = "idx_vouchers_updated", columnList = "updated_at") // incremental index refresh
+})
 public class Voucher {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -28,7 +30,10 @@ public class Voucher {
     @Column
     private Integer maxUses;
 
-    @Column
+    @Column // null = unlimited
+    private Integer perCustomerLimit;
+
+    @Column(updatable = false) // incremented only by VoucherService's conditional UPDATE
     private Integer usedCount;
 
     @Column
@@ -145,6 +150,14 @@ public class Voucher {
         this.maxUses = maxUses;
     }
 
+    public Integer getPerCustomerLimit() {
+        return perCustomerLimit;
+    }
+
+    public void setPerCustomerLimit(Integer perCustomerLimit) {
+        this.perCustomerLimit = perCustomerLimit;
+    }
+
     public Integer getUsedCount() {
         return usedCount;
     }
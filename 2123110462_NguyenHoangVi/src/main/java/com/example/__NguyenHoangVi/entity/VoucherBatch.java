@@ -0,0 +1,52 @@
+package com.example.__NguyenHoangVi.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A bulk voucher code campaign. Codes are prefix + encode(permute(startIndex + i))
+ * for i in [0, quantity), so the batch row alone is enough to regenerate them.
+ */
+@Entity
+@Table(name = "voucher_batches")
+@Data
+public class VoucherBatch {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false, length = 20)
+    private String prefix;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(name = "start_index", nullable = false)
+    private Long startIndex; // reserved range of the global code sequence
+
+    @Column(name = "generated_count")
+    private Integer generatedCount = 0;
+
+    @Column(nullable = false)
+    private String status = "running"; // running, completed, failed
+
+    private String discountType;
+    private Double discountValue;
+    private Double minOrderAmount;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+
+    @Column(columnDefinition = "VARCHAR(1000)")
+    private String error;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,9 @@
+package com.example.__NguyenHoangVi.repository;
+
+import com.example.__NguyenHoangVi.entity.CartSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CartSnapshotRepository extends JpaRepository<CartSnapshot, String> {
+}
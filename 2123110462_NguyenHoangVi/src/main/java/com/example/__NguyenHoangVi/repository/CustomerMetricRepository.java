@@ -0,0 +1,39 @@
+package com.example.__NguyenHoangVi.repository;
+
+import com.example.__NguyenHoangVi.entity.CustomerMetric;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CustomerMetricRepository extends JpaRepository<CustomerMetric, Long> {
+
+    Optional<CustomerMetric> findByPhone(String phone);
+
+    // Keyset pagination over (lifetimeSpend, id), biggest spenders first - served by idx_customer_metrics_spend
+    @Query("SELECT m FROM CustomerMetric m ORDER BY m.lifetimeSpend DESC, m.id DESC")
+    List<CustomerMetric> findTopFirstPage(Pageable pageable);
+
+    @Query("SELECT m FROM CustomerMetric m WHERE m.lifetimeSpend < :spend OR (m.lifetimeSpend = :spend AND m.id < :id) " +
+            "ORDER BY m.lifetimeSpend DESC, m.id DESC")
+    List<CustomerMetric> findTopAfter(@Param("spend") BigDecimal spend, @Param("id") Long id, Pageable pageable);
+
+    // Same within one segment - served by idx_customer_metrics_segment_spend
+    @Query("SELECT m FROM CustomerMetric m WHERE m.segment = :segment ORDER BY m.lifetimeSpend DESC, m.id DESC")
+    List<CustomerMetric> findSegmentFirstPage(@Param("segment") String segment, Pageable pageable);
+
+    @Query("SELECT m FROM CustomerMetric m WHERE m.segment = :segment " +
+            "AND (m.lifetimeSpend < :spend OR (m.lifetimeSpend = :spend AND m.id < :id)) " +
+            "ORDER BY m.lifetimeSpend DESC, m.id DESC")
+    List<CustomerMetric> findSegmentAfter(@Param("segment") String segment, @Param("spend") BigDecimal spend,
+            @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT m.segment, COUNT(m), SUM(m.lifetimeSpend) FROM CustomerMetric m GROUP BY m.segment")
+    List<Object[]> countBySegment();
+}
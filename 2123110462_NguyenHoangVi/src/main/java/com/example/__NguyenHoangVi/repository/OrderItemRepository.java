@@ -0,0 +1,9 @@
+package com.example.__NguyenHoangVi.repository;
+
+import com.example.__NguyenHoangVi.entity.OrderItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+
+public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
+    List<OrderItem> findByOrderId(Long orderId);
+}
@@ -2,10 +2,24 @@ package com.example.__NguyenHoangVi.repository;
 
 import com.example.__NguyenHoangVi.entity.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.util.List;
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByStatus(String status);
 
     List<Order> findByPhone(String phone);
+
+    // Conditional status move: 0 rows when another request changed the status since it was read,
+    // so the rollups and the sales cube see each transition exactly once
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query(value = "UPDATE orders SET status = :status WHERE id = :id AND COALESCE(status, '') = :oldStatus",
+            nativeQuery = true)
+    int updateStatusIfUnchanged(@Param("id") Long id, @Param("oldStatus") String oldStatus,
+            @Param("status") String status);
 }
@@ -0,0 +1,7 @@
+package com.example.__NguyenHoangVi.repository;
+
+import com.example.__NguyenHoangVi.entity.ProductRatingSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ProductRatingSummaryRepository extends JpaRepository<ProductRatingSummary, Long> {
+}
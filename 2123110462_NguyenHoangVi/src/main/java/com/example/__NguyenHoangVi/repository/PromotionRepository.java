@@ -2,9 +2,11 @@ package com.example.__NguyenHoangVi.repository;
 
 import com.example.__NguyenHoangVi.entity.Promotion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -21,4 +23,13 @@ public interface PromotionRepository extends JpaRepository<Promotion, Long> {
 
     @Query("SELECT p FROM Promotion p WHERE p.promotionType = :type AND p.isActive = true")
     List<Promotion> findByPromotionType(@Param("type") String type);
+
+    // Atomic usage increment: never passes usage_limit, whatever the concurrency.
+    // Matches nothing in sharded mode, where the shards hold the rest of the budget.
+    @Modifying
+    @Transactional
+    @Query("UPDATE Promotion p SET p.usageCount = p.usageCount + 1, p.updatedAt = :now " +
+            "WHERE p.id = :id AND (p.usageLimit IS NULL OR p.usageCount < p.usageLimit) " +
+            "AND (p.usageShards IS NULL OR p.usageShards <= 1)")
+    int incrementUsage(@Param("id") Long id, @Param("now") LocalDateTime now);
 }
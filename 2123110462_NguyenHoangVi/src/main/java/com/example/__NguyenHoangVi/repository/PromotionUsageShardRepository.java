@@ -0,0 +1,32 @@
+package com.example.__NguyenHoangVi.repository;
+
+import com.example.__NguyenHoangVi.entity.PromotionUsageShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface PromotionUsageShardRepository extends JpaRepository<PromotionUsageShard, Long> {
+    List<PromotionUsageShard> findByPromotionIdOrderByShardNo(Long promotionId);
+
+    @Query("SELECT COALESCE(SUM(s.used), 0) FROM PromotionUsageShard s WHERE s.promotionId = :promotionId")
+    Long sumUsed(@Param("promotionId") Long promotionId);
+
+    // {promotionId, SUM(used)} for every sharded promotion
+    @Query("SELECT s.promotionId, SUM(s.used) FROM PromotionUsageShard s GROUP BY s.promotionId")
+    List<Object[]> sumUsedByPromotion();
+
+    // Atomic: only succeeds while this shard still has budget
+    @Modifying
+    @Transactional
+    @Query("UPDATE PromotionUsageShard s SET s.used = s.used + 1 " +
+            "WHERE s.promotionId = :promotionId AND s.shardNo = :shardNo AND s.used < s.budget")
+    int tryIncrement(@Param("promotionId") Long promotionId, @Param("shardNo") Integer shardNo);
+
+    @Modifying
+    @Transactional
+    void deleteByPromotionId(Long promotionId);
+}
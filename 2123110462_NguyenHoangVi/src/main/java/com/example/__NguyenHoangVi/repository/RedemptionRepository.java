@@ -0,0 +1,14 @@
+package com.example.__NguyenHoangVi.repository;
+
+import com.example.__NguyenHoangVi.entity.Redemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RedemptionRepository extends JpaRepository<Redemption, Long> {
+    long countByKindAndTargetIdAndCustomerId(String kind, Long targetId, Long customerId);
+
+    List<Redemption> findByCustomerIdOrderByCreatedAtDesc(Long customerId);
+}
@@ -1,15 +1,23 @@
 package com.example.__NguyenHoangVi.repository;
 
+import com.example.__NguyenHoangVi.dto.ReviewListItem;
 import com.example.__NguyenHoangVi.entity.Review;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Long> {
+    String LIST_ITEM = "SELECT new com.example.__NguyenHoangVi.dto.ReviewListItem(r.id, r.productId, r.customerId, " +
+            "r.rating, r.title, SUBSTRING(r.content, 1, 200), r.helpfulCount, r.unhelpfulCount, " +
+            "r.verifiedPurchase, r.status, r.createdAt) FROM Review r ";
+
     List<Review> findByProductId(Long productId);
 
     List<Review> findByStatus(String status);
@@ -22,4 +30,37 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
 
     @Query("SELECT COUNT(r) FROM Review r WHERE r.productId = :productId AND r.rating = :rating AND r.status = 'approved'")
     Long countReviewsByRating(@Param("productId") Long productId, @Param("rating") Integer rating);
+
+    // Keyset pagination over (createdAt, id) - served by idx_reviews_product_status_created
+    @Query(LIST_ITEM + "WHERE r.productId = :productId AND r.status = 'approved' " +
+            "ORDER BY r.createdAt DESC, r.id DESC")
+    List<ReviewListItem> findApprovedFeedFirstPage(@Param("productId") Long productId, Pageable pageable);
+
+    @Query(LIST_ITEM + "WHERE r.productId = :productId AND r.status = 'approved' " +
+            "AND (r.createdAt < :createdAt OR (r.createdAt = :createdAt AND r.id < :id)) " +
+            "ORDER BY r.createdAt DESC, r.id DESC")
+    List<ReviewListItem> findApprovedFeedAfter(@Param("productId") Long productId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query(LIST_ITEM + "ORDER BY r.createdAt DESC, r.id DESC")
+    List<ReviewListItem> findFeedFirstPage(Pageable pageable);
+
+    @Query(LIST_ITEM + "WHERE r.createdAt < :createdAt OR (r.createdAt = :createdAt AND r.id < :id) " +
+            "ORDER BY r.createdAt DESC, r.id DESC")
+    List<ReviewListItem> findFeedAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+            Pageable pageable);
+
+    // Conditional moderation writes: 0 rows when another request changed status/rating since it was read,
+    // so the rating summary delta is applied exactly once
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Review r SET r.title = :title, r.content = :content, r.rating = :rating, r.status = :status, " +
+            "r.updatedAt = :now WHERE r.id = :id AND COALESCE(r.status, '') = :oldStatus AND r.rating = :oldRating")
+    int updateIfUnchanged(@Param("id") Long id, @Param("oldStatus") String oldStatus,
+            @Param("oldRating") Integer oldRating, @Param("title") String title, @Param("content") String content,
+            @Param("rating") Integer rating, @Param("status") String status, @Param("now") LocalDateTime now);
+
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM Review r WHERE r.id = :id AND COALESCE(r.status, '') = :oldStatus AND r.rating = :oldRating")
+    int deleteIfUnchanged(@Param("id") Long id, @Param("oldStatus") String oldStatus,
+            @Param("oldRating") Integer oldRating);
 }
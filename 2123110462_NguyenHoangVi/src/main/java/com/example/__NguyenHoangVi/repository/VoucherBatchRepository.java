@@ -0,0 +1,12 @@
+package com.example.__NguyenHoangVi.repository;
+
+import com.example.__NguyenHoangVi.entity.VoucherBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface VoucherBatchRepository extends JpaRepository<VoucherBatch, Long> {
+    List<VoucherBatch> findAllByOrderByCreatedAtDesc();
+}
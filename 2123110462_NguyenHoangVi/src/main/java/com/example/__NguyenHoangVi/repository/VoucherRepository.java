@@ -2,10 +2,13 @@ package com.example.__NguyenHoangVi.repository;
 
 import com.example.__NguyenHoangVi.entity.Voucher;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,4 +23,11 @@ public interface VoucherRepository extends JpaRepository<Voucher, Long> {
 
     @Query("SELECT v FROM Voucher v WHERE v.code = :code AND v.isActive = true")
     Optional<Voucher> findByCodeAndActive(@Param("code") String code);
+
+    // Atomic redemption: succeeds only while the voucher is active and has uses left
+    @Modifying
+    @Transactional
+    @Query("UPDATE Voucher v SET v.usedCount = COALESCE(v.usedCount, 0) + 1, v.updatedAt = :now " +
+            "WHERE v.id = :id AND v.isActive = true AND (v.maxUses IS NULL OR COALESCE(v.usedCount, 0) < v.maxUses)")
+    int incrementUsage(@Param("id") Long id, @Param("now") LocalDateTime now);
 }
@@ -0,0 +1,457 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.CartSnapshot;
+import com.example.__NguyenHoangVi.entity.Product;
+import com.example.__NguyenHoangVi.repository.CartSnapshotRepository;
+import com.example.__NguyenHoangVi.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Server-side carts keyed by user or phone.
+ *
+ * Carts live in memory and keep a running subtotal (minor units): every
+ * add/update/remove adjusts it by the line delta instead of re-summing, and
+ * the promotion discount is only re-evaluated when the subtotal, the compiled
+ * rule set or the clock second changed. A reverse index product -> carts
+ * lets a price change reprice just the affected lines in place.
+ *
+ * Dirty carts are written to cart_snapshots (ids and quantities only) in one
+ * batched upsert per flush; idle carts are then dropped from memory and
+ * reloaded, repriced, on next access.
+ */
+@Service
+public class CartService {
+
+    public static final int MAX_LINES = CheckoutService.MAX_LINES;
+    public static final int MAX_QUANTITY_PER_LINE = CheckoutService.MAX_QUANTITY_PER_LINE;
+
+    // Consecutive failed writes of one cart (while others succeed) before its snapshot is given up
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+    private static final String DELETE_SQL = "DELETE FROM cart_snapshots WHERE cart_key = ?";
+
+    private static final String UPSERT_SQL = "INSERT INTO cart_snapshots (cart_key, items, updated_at) " +
+            "VALUES (?, ?, NOW()) ON DUPLICATE KEY UPDATE items = VALUES(items), updated_at = VALUES(updated_at)";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CartSnapshotRepository cartSnapshotRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PromotionPricingEngine pricingEngine;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Value("${carts.idle-eviction-minutes:30}")
+    private long idleEvictionMinutes;
+
+    private final Map<String, Cart> carts = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> cartsByProduct = new ConcurrentHashMap<>();
+
+    public record LineView(Long productId, String name, BigDecimal unitPrice, int quantity, BigDecimal lineTotal) {
+    }
+
+    public record CartView(String cartKey, List<LineView> items, int itemCount, BigDecimal subtotal,
+            BigDecimal discount, String promotionCode, BigDecimal total, long version, List<Long> repricedProductIds) {
+    }
+
+    private static final class Line {
+        final Long productId;
+        String name;
+        long unitPrice; // minor units
+        int quantity;
+
+        Line(Long productId, String name, long unitPrice, int quantity) {
+            this.productId = productId;
+            this.name = name;
+            this.unitPrice = unitPrice;
+            this.quantity = quantity;
+        }
+    }
+
+    // Guarded by its own monitor
+    private static final class Cart {
+        final String key;
+        final Map<Long, Line> lines = new LinkedHashMap<>();
+        long subtotal;
+        int itemCount;
+        long version;
+        boolean dirty;
+        boolean evicted;
+        int flushFailures;
+        long lastAccess = System.currentTimeMillis();
+        List<Long> repriced = new ArrayList<>();
+
+        // Last discount evaluation
+        PromotionRuleSet discountRules;
+        long discountSubtotal = -1;
+        long discountSecond;
+        PromotionRuleSet.Result discount;
+
+        Cart(String key) {
+            this.key = key;
+        }
+
+        void changed() {
+            version++;
+            dirty = true;
+        }
+    }
+
+    public CartView view(String cartKey) {
+        return withCart(cartKey, this::toView);
+    }
+
+    // Add quantity of a product (merges with an existing line)
+    public CartView addItem(String cartKey, Long productId, int quantity) {
+        if (quantity < 1) {
+            throw new IllegalArgumentException("quantity must be >= 1");
+        }
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new IllegalArgumentException("Sản phẩm " + productId + " không tồn tại"));
+        if (product.getPrice() == null) {
+            throw new IllegalArgumentException("Sản phẩm " + productId + " chưa có giá");
+        }
+        return withCart(cartKey, cart -> {
+            Line line = cart.lines.get(productId);
+            if (quantity > MAX_QUANTITY_PER_LINE - (line != null ? line.quantity : 0)) {
+                throw new IllegalArgumentException("Số lượng tối đa mỗi sản phẩm là " + MAX_QUANTITY_PER_LINE);
+            }
+            if (line == null) {
+                if (cart.lines.size() >= MAX_LINES) {
+                    throw new IllegalArgumentException("Tối đa " + MAX_LINES + " sản phẩm mỗi giỏ");
+                }
+                line = new Line(productId, product.getName(), toMinor(product.getPrice()), 0);
+                cart.lines.put(productId, line);
+                index(productId, cart.key);
+            }
+            line.quantity += quantity;
+            cart.subtotal += line.unitPrice * quantity;
+            cart.itemCount += quantity;
+            cart.changed();
+            return toView(cart);
+        });
+    }
+
+    // Set a line's quantity; 0 removes it
+    public CartView updateItem(String cartKey, Long productId, int quantity) {
+        if (quantity > MAX_QUANTITY_PER_LINE) {
+            throw new IllegalArgumentException("Số lượng tối đa mỗi sản phẩm là " + MAX_QUANTITY_PER_LINE);
+        }
+        return withCart(cartKey, cart -> {
+            Line line = cart.lines.get(productId);
+            if (line == null) {
+                throw new IllegalArgumentException("Sản phẩm " + productId + " không có trong giỏ");
+            }
+            if (quantity <= 0) {
+                removeLine(cart, line);
+            } else {
+                cart.subtotal += line.unitPrice * (quantity - line.quantity);
+                cart.itemCount += quantity - line.quantity;
+                line.quantity = quantity;
+            }
+            cart.changed();
+            return toView(cart);
+        });
+    }
+
+    public CartView removeItem(String cartKey, Long productId) {
+        return withCart(cartKey, cart -> {
+            Line line = cart.lines.get(productId);
+            if (line != null) {
+                removeLine(cart, line);
+                cart.changed();
+            }
+            return toView(cart);
+        });
+    }
+
+    public CartView clear(String cartKey) {
+        return withCart(cartKey, cart -> {
+            for (Line line : new ArrayList<>(cart.lines.values())) {
+                removeLine(cart, line);
+            }
+            cart.changed();
+            return toView(cart);
+        });
+    }
+
+    // A product saved on another node: reprice the carts held here
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(ClusterEventBus.PRODUCT, payload -> productRepository
+                .findById(Long.parseLong(payload))
+                .ifPresent(product -> onPriceChanged(product.getId(), product.getPrice(), product.getName())));
+    }
+
+    /**
+     * Reprice the product's line in every cart holding it (only those carts
+     * are touched). Called when a product is saved and by the reconcile job.
+     */
+    public void onPriceChanged(Long productId, Double newPrice, String name) {
+        Set<String> keys = cartsByProduct.get(productId);
+        if (keys == null || newPrice == null) {
+            return;
+        }
+        long price = toMinor(newPrice);
+        for (String key : keys) {
+            Cart cart = carts.get(key);
+            if (cart == null) {
+                continue;
+            }
+            synchronized (cart) {
+                Line line = cart.lines.get(productId);
+                if (line == null || cart.evicted) {
+                    continue;
+                }
+                if (name != null) {
+                    line.name = name;
+                }
+                if (line.unitPrice != price) {
+                    cart.subtotal += (price - line.unitPrice) * line.quantity;
+                    line.unitPrice = price;
+                    cart.repriced.add(productId);
+                    cart.version++;
+                }
+            }
+        }
+    }
+
+    // Catch price changes made outside the API (imports, direct SQL)
+    @Scheduled(fixedDelayString = "${carts.price-check-interval-ms:60000}")
+    public void reconcilePrices() {
+        List<Long> productIds = new ArrayList<>(cartsByProduct.keySet());
+        for (int from = 0; from < productIds.size(); from += 1000) {
+            List<Long> chunk = productIds.subList(from, Math.min(from + 1000, productIds.size()));
+            for (Product product : productRepository.findAllById(chunk)) {
+                onPriceChanged(product.getId(), product.getPrice(), product.getName());
+            }
+        }
+    }
+
+    /**
+     * Write dirty carts in one batched upsert (empty carts are deleted), then
+     * drop carts that have been idle longer than the eviction window. If a
+     * batch fails it is retried row by row, so one bad cart only holds back
+     * itself; idle eviction runs either way.
+     */
+    @Scheduled(fixedDelayString = "${carts.snapshot.flush-interval-ms:10000}")
+    public int flushSnapshots() {
+        List<Object[]> upserts = new ArrayList<>();
+        List<Cart> upserted = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        List<Cart> deleted = new ArrayList<>();
+        for (Cart cart : carts.values()) {
+            synchronized (cart) {
+                if (!cart.dirty) {
+                    continue;
+                }
+                cart.dirty = false;
+                if (cart.lines.isEmpty()) {
+                    deletes.add(new Object[] { cart.key });
+                    deleted.add(cart);
+                } else {
+                    upserts.add(new Object[] { cart.key, serialize(cart) });
+                    upserted.add(cart);
+                }
+            }
+        }
+        int written = write(UPSERT_SQL, upserts, upserted) + write(DELETE_SQL, deletes, deleted);
+        evictIdle();
+        return written;
+    }
+
+    // One batch, falling back to single rows; returns the number of carts written
+    private int write(String sql, List<Object[]> rows, List<Cart> rowCarts) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            jdbcTemplate.batchUpdate(sql, rows);
+            rowCarts.forEach(this::flushed);
+            return rows.size();
+        } catch (Exception e) {
+            System.err.println("⚠️ Cart snapshot batch failed, writing carts one by one: " + e.getMessage());
+        }
+        List<Cart> failed = new ArrayList<>();
+        Exception lastError = null;
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                jdbcTemplate.update(sql, rows.get(i));
+                flushed(rowCarts.get(i));
+            } catch (Exception e) {
+                failed.add(rowCarts.get(i));
+                lastError = e;
+            }
+        }
+        // Nothing went through: the database is the problem, not these carts, so don't count it against them
+        boolean outage = failed.size() == rows.size();
+        for (Cart cart : failed) {
+            synchronized (cart) {
+                if (outage || ++cart.flushFailures < MAX_FLUSH_ATTEMPTS) {
+                    cart.dirty = true;
+                } else {
+                    System.err.println("⚠️ Giving up on cart snapshot " + cart.key + ": " + lastError.getMessage());
+                }
+            }
+        }
+        return rows.size() - failed.size();
+    }
+
+    private void flushed(Cart cart) {
+        synchronized (cart) {
+            cart.flushFailures = 0;
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        int flushed = flushSnapshots();
+        System.out.println("🛒 Flushed " + flushed + " carts on shutdown");
+    }
+
+    // Run op on the live cart, loading it if needed and retrying if it was evicted meanwhile
+    private <T> T withCart(String cartKey, Function<Cart, T> op) {
+        while (true) {
+            Cart cart = carts.computeIfAbsent(cartKey, this::load);
+            synchronized (cart) {
+                if (!cart.evicted) {
+                    cart.lastAccess = System.currentTimeMillis();
+                    return op.apply(cart);
+                }
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleEvictionMinutes * 60_000L;
+        for (Cart cart : carts.values()) {
+            synchronized (cart) {
+                if (cart.dirty || cart.lastAccess >= cutoff) {
+                    continue;
+                }
+                cart.evicted = true;
+                // Unindex before removing so a reload of the same key can't be unindexed by us
+                for (Long productId : cart.lines.keySet()) {
+                    unindex(productId, cart.key);
+                }
+                carts.remove(cart.key, cart);
+            }
+        }
+    }
+
+    // Load a cart from its snapshot, repricing from current product prices
+    private Cart load(String cartKey) {
+        Cart cart = new Cart(cartKey);
+        Optional<CartSnapshot> snapshot = cartSnapshotRepository.findById(cartKey);
+        if (snapshot.isEmpty() || snapshot.get().getItems() == null || snapshot.get().getItems().isEmpty()) {
+            return cart;
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (String part : snapshot.get().getItems().split(",")) {
+            int colon = part.indexOf(':');
+            if (colon > 0) {
+                quantities.put(Long.valueOf(part.substring(0, colon)), Integer.valueOf(part.substring(colon + 1)));
+            }
+        }
+        Map<Long, Product> products = new LinkedHashMap<>();
+        for (Product p : productRepository.findAllById(quantities.keySet())) {
+            products.put(p.getId(), p);
+        }
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product == null || product.getPrice() == null) {
+                cart.dirty = true; // product is gone, drop the line from the snapshot too
+                continue;
+            }
+            int quantity = Math.max(1, Math.min(entry.getValue(), MAX_QUANTITY_PER_LINE));
+            Line line = new Line(product.getId(), product.getName(), toMinor(product.getPrice()), quantity);
+            cart.lines.put(line.productId, line);
+            cart.subtotal += line.unitPrice * line.quantity;
+            cart.itemCount += line.quantity;
+            index(line.productId, cartKey);
+        }
+        return cart;
+    }
+
+    private void removeLine(Cart cart, Line line) {
+        cart.lines.remove(line.productId);
+        cart.subtotal -= line.unitPrice * line.quantity;
+        cart.itemCount -= line.quantity;
+        unindex(line.productId, cart.key);
+    }
+
+    private CartView toView(Cart cart) {
+        PromotionRuleSet rules = pricingEngine.current();
+        long nowMillis = System.currentTimeMillis();
+        long second = nowMillis / 1000;
+        if (cart.discount == null || cart.discountRules != rules || cart.discountSubtotal != cart.subtotal
+                || cart.discountSecond != second) {
+            cart.discount = rules.best(fromMinor(cart.subtotal), nowMillis);
+            cart.discountRules = rules;
+            cart.discountSubtotal = cart.subtotal;
+            cart.discountSecond = second;
+        }
+        List<LineView> items = new ArrayList<>(cart.lines.size());
+        for (Line line : cart.lines.values()) {
+            items.add(new LineView(line.productId, line.name, fromMinor(line.unitPrice), line.quantity,
+                    fromMinor(line.unitPrice * line.quantity)));
+        }
+        List<Long> repriced = cart.repriced;
+        cart.repriced = new ArrayList<>();
+        return new CartView(cart.key, items, cart.itemCount, fromMinor(cart.subtotal), cart.discount.discount(),
+                cart.discount.code(), cart.discount.total(), cart.version, repriced);
+    }
+
+    private void index(Long productId, String cartKey) {
+        cartsByProduct.computeIfAbsent(productId, k -> ConcurrentHashMap.newKeySet()).add(cartKey);
+    }
+
+    private void unindex(Long productId, String cartKey) {
+        cartsByProduct.computeIfPresent(productId, (k, keys) -> {
+            keys.remove(cartKey);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String serialize(Cart cart) {
+        StringBuilder sb = new StringBuilder();
+        for (Line line : cart.lines.values()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(line.productId).append(':').append(line.quantity);
+        }
+        return sb.toString();
+    }
+
+    private static long toMinor(Double price) {
+        return BigDecimal.valueOf(price).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static BigDecimal fromMinor(long value) {
+        return BigDecimal.valueOf(value, 2);
+    }
+}
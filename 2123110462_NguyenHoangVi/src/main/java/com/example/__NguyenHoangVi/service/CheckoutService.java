@@ -0,0 +1,290 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.dto.CheckoutRequest;
+import com.example.__NguyenHoangVi.entity.Order;
+import com.example.__NguyenHoangVi.entity.OrderItem;
+import com.example.__NguyenHoangVi.entity.Product;
+import com.example.__NguyenHoangVi.entity.Promotion;
+import com.example.__NguyenHoangVi.repository.InventoryRepository;
+import com.example.__NguyenHoangVi.repository.OrderRepository;
+import com.example.__NguyenHoangVi.repository.ProductRepository;
+import com.example.__NguyenHoangVi.util.LatencyHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Server-side checkout in one transaction.
+ *
+ * The client sends only product ids and quantities. Lines are repriced from
+ * products (one query), the better of the best/requested promotion and the
+ * voucher is applied, stock is reserved with one batched conditional UPDATE
+ * on inventory (rows in product id order), the order and its items are inserted (items as one batch),
+ * and promotion/voucher usage is recorded with their conditional UPDATEs.
+ * Any failure rolls everything back, including usage and redemptions.
+ */
+@Service
+public class CheckoutService {
+
+    public static final int MAX_LINES = 100;
+    public static final int MAX_QUANTITY_PER_LINE = 1000;
+
+    // MySQL applies SET assignments left to right, so status sees the new quantity
+    private static final String RESERVE_SQL = "UPDATE inventory SET quantity_in_stock = quantity_in_stock - ?, " +
+            "status = CASE WHEN quantity_in_stock <= 0 THEN 'out_of_stock' " +
+            "WHEN quantity_in_stock < reorder_level THEN 'low_stock' ELSE 'in_stock' END, " +
+            "last_updated = NOW(), updated_reason = ? WHERE product_id = ? AND quantity_in_stock >= ?";
+
+    private static final String INSERT_ITEM_SQL = "INSERT INTO order_items " +
+            "(order_id, product_id, product_name, quantity, price) VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PromotionPricingEngine pricingEngine;
+
+    @Autowired
+    private PromotionUsageService promotionUsageService;
+
+    @Autowired
+    private PromotionScheduler promotionScheduler;
+
+    @Autowired
+    private VoucherService voucherService;
+
+    @Autowired
+    private CustomerRedemptionService redemptionService;
+
+    @Autowired
+    private SalesVelocityService salesVelocityService;
+
+    @Autowired
+    private OrderRollupService orderRollupService;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public static class CheckoutException extends RuntimeException {
+        private final int status;
+
+        public CheckoutException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    public record CheckoutResult(Order order, List<OrderItem> items, BigDecimal subtotal, BigDecimal discount,
+            BigDecimal total, String promotionCode, String voucherCode) {
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    @Transactional
+    public CheckoutResult checkout(CheckoutRequest request) {
+        Map<Long, Integer> quantities = mergeLines(request.getItems());
+
+        // 1. Reprice from server-side prices
+        Map<Long, Product> products = new LinkedHashMap<>();
+        for (Product p : productRepository.findAllById(quantities.keySet())) {
+            products.put(p.getId(), p);
+        }
+        BigDecimal subtotal = BigDecimal.ZERO;
+        List<OrderItem> items = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Product product = products.get(line.getKey());
+            if (product == null || product.getPrice() == null) {
+                throw new CheckoutException(400, "Sản phẩm " + line.getKey() + " không tồn tại");
+            }
+            OrderItem item = new OrderItem();
+            item.setProductId(product.getId());
+            item.setProductName(product.getName());
+            item.setQuantity(line.getValue());
+            item.setPrice(product.getPrice());
+            items.add(item);
+            subtotal = subtotal.add(
+                    BigDecimal.valueOf(product.getPrice()).multiply(BigDecimal.valueOf(line.getValue())));
+        }
+
+        // 2. Pick the better of promotion and voucher (they don't stack)
+        Long customerId = request.getCustomerId();
+        if (!CustomerRedemptionService.validCustomerId(customerId)) {
+            throw new CheckoutException(400, "customerId không hợp lệ");
+        }
+        PromotionRuleSet rules = pricingEngine.current();
+        long now = System.currentTimeMillis();
+        boolean explicitPromotion = hasText(request.getPromotionCode());
+        PromotionRuleSet.Result promo = explicitPromotion
+                ? rules.forCode(request.getPromotionCode().trim(), subtotal, now)
+                : rules.best(subtotal, now);
+        if (explicitPromotion && promo.promotionId() == null) {
+            throw new CheckoutException(400, "Mã khuyến mãi không hợp lệ hoặc chưa đạt giá trị tối thiểu");
+        }
+        Promotion promotion = promo.promotionId() != null ? rules.promotion(promo.code()) : null;
+        if (promotion != null && !redemptionService.canUse(CustomerRedemptionService.PROMOTION, promotion.getId(),
+                customerId, promotion.getPerCustomerLimit())) {
+            if (explicitPromotion) {
+                throw new CheckoutException(409, "Bạn đã dùng hết lượt cho khuyến mãi này");
+            }
+            promotion = null; // best automatic one is used up for this customer, go without
+        }
+        BigDecimal promoDiscount = promotion != null ? promo.discount() : BigDecimal.ZERO;
+
+        VoucherService.Check voucher = null;
+        if (hasText(request.getVoucherCode())) {
+            voucher = voucherService.validate(request.getVoucherCode(), subtotal.doubleValue(), customerId);
+            if (!voucher.valid()) {
+                throw new CheckoutException(400, voucher.reason());
+            }
+        }
+        boolean useVoucher = voucher != null && BigDecimal.valueOf(voucher.discount()).compareTo(promoDiscount) >= 0;
+        BigDecimal discount = useVoucher ? BigDecimal.valueOf(voucher.discount()) : promoDiscount;
+        BigDecimal total = subtotal.subtract(discount).max(BigDecimal.ZERO);
+
+        // 3. Reserve stock, one batched conditional UPDATE
+        reserveStock(quantities, products);
+
+        // 4. Persist order and items
+        Order order = new Order();
+        order.setCustomerId(customerId);
+        order.setCustomerName(request.getCustomerName());
+        order.setPhone(request.getPhone());
+        order.setAddress(request.getAddress());
+        order.setPaymentMethod(request.getPaymentMethod());
+        order.setTransactionCode(request.getTransactionCode());
+        order.setStatus("pending");
+        order.setOrderChannel("mobile");
+        order.setTotalAmount(total.doubleValue());
+        Order saved = orderRepository.save(order);
+        orderRollupService.orderCreated(saved);
+
+        List<Object[]> itemArgs = new ArrayList<>(items.size());
+        for (OrderItem item : items) {
+            item.setOrderId(saved.getId());
+            itemArgs.add(new Object[] { saved.getId(), item.getProductId(), item.getProductName(), item.getQuantity(),
+                    item.getPrice() });
+        }
+        jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, itemArgs);
+
+        // 5. Record usage (conditional UPDATEs; a lost race rolls the whole checkout back)
+        String promotionCode = null;
+        String voucherCode = null;
+        if (useVoucher) {
+            VoucherService.Check redeemed = voucherService.redeem(request.getVoucherCode(), subtotal.doubleValue(),
+                    customerId, saved.getId());
+            if (!redeemed.valid()) {
+                throw new CheckoutException(409, redeemed.reason());
+            }
+            voucherCode = redeemed.code();
+        } else if (promotion != null) {
+            CustomerRedemptionService.Claim claim = redemptionService.claim(CustomerRedemptionService.PROMOTION,
+                    promotion.getId(), customerId, promotion.getPerCustomerLimit(), saved.getId());
+            if (!claim.granted()) {
+                throw new CheckoutException(409, claim.reason());
+            }
+            if (!promotionUsageService.use(promotion)) {
+                throw new CheckoutException(409, "Khuyến mãi " + promotion.getCode() + " đã hết lượt sử dụng");
+            }
+            Promotion used = promotion;
+            afterCommit(() -> {
+                if (promotionUsageService.exhausted(used)) {
+                    promotionScheduler.promotionsChanged(); // last use taken, drop from rule set
+                }
+            });
+            promotionCode = promotion.getCode();
+        }
+
+        recordSalesAfterCommit(saved, items);
+        return new CheckoutResult(saved, items, subtotal, discount, total, promotionCode, voucherCode);
+    }
+
+    // Rows are locked in product id order, whatever the client's line order, so two checkouts can't deadlock here
+    private void reserveStock(Map<Long, Integer> quantities, Map<Long, Product> products) {
+        List<Object[]> args = new ArrayList<>(quantities.size());
+        List<Long> ids = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> line : new TreeMap<>(quantities).entrySet()) {
+            args.add(new Object[] { line.getValue(), "Checkout", line.getKey(), line.getValue() });
+            ids.add(line.getKey());
+        }
+        int[] updated = jdbcTemplate.batchUpdate(RESERVE_SQL, args);
+        for (int i = 0; i < updated.length; i++) {
+            // 0 rows: either not enough stock, or the product isn't tracked in inventory (allowed)
+            if (updated[i] == 0 && inventoryRepository.findByProductId(ids.get(i)).isPresent()) {
+                throw new CheckoutException(409,
+                        "Sản phẩm " + products.get(ids.get(i)).getName() + " không đủ hàng");
+            }
+        }
+    }
+
+    private void recordSalesAfterCommit(Order order, List<OrderItem> items) {
+        afterCommit(() -> {
+            for (OrderItem item : items) {
+                salesVelocityService.recordSale(item.getProductId(), item.getQuantity(), order.getCreatedAt());
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // Merge duplicate product lines and validate quantities
+    private static Map<Long, Integer> mergeLines(List<CheckoutRequest.Line> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new CheckoutException(400, "Giỏ hàng trống");
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (CheckoutRequest.Line line : lines) {
+            if (line.getProductId() == null || line.getQuantity() == null || line.getQuantity() < 1) {
+                throw new CheckoutException(400, "Mỗi sản phẩm cần productId và quantity >= 1");
+            }
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+        }
+        if (quantities.size() > MAX_LINES) {
+            throw new CheckoutException(400, "Tối đa " + MAX_LINES + " sản phẩm mỗi đơn");
+        }
+        for (Integer quantity : quantities.values()) {
+            if (quantity > MAX_QUANTITY_PER_LINE) {
+                throw new CheckoutException(400, "Số lượng tối đa mỗi sản phẩm là " + MAX_QUANTITY_PER_LINE);
+            }
+        }
+        return quantities;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+}
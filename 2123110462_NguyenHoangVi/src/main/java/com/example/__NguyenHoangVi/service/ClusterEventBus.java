@@ -0,0 +1,235 @@
+package com.example.__NguyenHoangVi.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Change propagation between API nodes through MySQL only.
+ *
+ * publish() inserts a row into cluster_events with the caller's JDBC
+ * connection, so inside a transaction the event commits (or rolls back)
+ * with the change it describes. Every node tails the table by primary key
+ * (WHERE id > last seen, a range scan) every cluster.poll-ms and hands
+ * other nodes' events to the handlers subscribed to the topic.
+ *
+ * AUTO_INCREMENT ids are handed out at insert but become visible at
+ * commit, so a smaller id can show up after a larger one. Skipped ids are
+ * kept as gaps and re-checked by id on every poll until they appear or
+ * cluster.gap-timeout-ms passes (a rolled back insert never appears). An
+ * event is therefore applied within poll-ms of its commit, or within
+ * gap-timeout-ms if its transaction ran that long after taking the id.
+ *
+ * Disabled (cluster.enabled=false, single node) publish() is a no-op.
+ */
+@Service
+public class ClusterEventBus {
+
+    public static final String NOTIFICATION = "notification"; // payload: seq
+    public static final String NOTIFICATION_READS = "notification-reads"; // payload: seq
+    public static final String PROMOTIONS = "promotions";
+    public static final String VOUCHER = "voucher"; // payload: voucher id, or * for a full rebuild
+    public static final String VOUCHER_USED = "voucher-used"; // payload: voucher code
+    public static final String REDEMPTION = "redemption"; // payload: kind:targetId:customerId
+    public static final String PRODUCT = "product"; // payload: product id
+    public static final String RATING_SUMMARY = "rating-summary"; // payload: comma separated product ids
+    public static final String ORDER_STATUS = "order-status"; // payload: orderId:changedAtMillis:from:to
+
+    private static final int BATCH = 1000;
+    private static final int MAX_GAP = 1000; // a larger jump is an auto-increment skip, not in-flight inserts
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cluster.gap-timeout-ms:10000}")
+    private long gapTimeoutMs;
+
+    @Value("${cluster.retention-minutes:60}")
+    private int retentionMinutes;
+
+    @Value("${cluster.replay-on-start-seconds:30}")
+    private int replayOnStartSeconds;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+
+    // Poller state, only touched by poll() (synchronized)
+    private long maxSeen = -1;
+    private final Map<Long, Long> gaps = new LinkedHashMap<>(); // id -> first noticed (ms)
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong expiredGaps = new AtomicLong();
+    private volatile long lastLagMicros;
+    private volatile long maxLagMicros;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public void subscribe(String topic, Consumer<String> handler) {
+        handlers.computeIfAbsent(topic, k -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    /**
+     * Record an event for the other nodes. Joins the current transaction if
+     * there is one (outbox), otherwise commits on its own.
+     */
+    public void publish(String topic, String payload) {
+        if (!enabled) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO cluster_events (topic, payload, origin, created_at) VALUES (?, ?, ?, NOW(6))",
+                topic, payload, nodeId);
+        published.incrementAndGet();
+    }
+
+    /**
+     * Start near the end of the table: older state is already in the
+     * database. The last cluster.replay-on-start-seconds are replayed to
+     * cover events committed while this node was loading its caches, so
+     * handlers must be idempotent.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled) {
+            return;
+        }
+        Long from = jdbcTemplate.queryForObject("SELECT COALESCE(MIN(id) - 1, " +
+                "(SELECT COALESCE(MAX(id), 0) FROM cluster_events)) FROM cluster_events " +
+                "WHERE created_at >= NOW(6) - INTERVAL ? SECOND", Long.class, replayOnStartSeconds);
+        maxSeen = from != null ? from : 0;
+        System.out.println("🔗 Cluster node " + nodeId + " tailing cluster_events from id " + maxSeen);
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.poll-ms:500}")
+    public synchronized void poll() {
+        if (!enabled || maxSeen < 0) {
+            return;
+        }
+        try {
+            recheckGaps();
+            List<Event> events;
+            do {
+                events = query("SELECT id, topic, payload, origin, TIMESTAMPDIFF(MICROSECOND, created_at, NOW(6)) " +
+                        "FROM cluster_events WHERE id > ? ORDER BY id LIMIT " + BATCH, maxSeen);
+                for (Event event : events) {
+                    if (event.id() - maxSeen - 1 <= MAX_GAP) {
+                        for (long missing = maxSeen + 1; missing < event.id(); missing++) {
+                            gaps.put(missing, System.currentTimeMillis());
+                        }
+                    }
+                    maxSeen = event.id();
+                    apply(event);
+                }
+            } while (events.size() == BATCH);
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning polling cluster events: " + e.getMessage());
+        }
+    }
+
+    // Delete events every node has long since applied
+    @Scheduled(fixedDelayString = "${cluster.purge-interval-ms:600000}", initialDelay = 60000)
+    public void purge() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusMinutes(retentionMinutes));
+            int deleted;
+            long total = 0;
+            do {
+                deleted = jdbcTemplate.update("DELETE FROM cluster_events WHERE created_at < ? LIMIT 10000", cutoff);
+                total += deleted;
+            } while (deleted == 10000);
+            if (total > 0) {
+                System.out.println("🧹 Purged " + total + " cluster events");
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning purging cluster events: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("nodeId", nodeId);
+        synchronized (this) {
+            stats.put("lastEventId", maxSeen);
+            stats.put("openGaps", gaps.size());
+        }
+        stats.put("published", published.get());
+        stats.put("applied", applied.get());
+        stats.put("expiredGaps", expiredGaps.get());
+        stats.put("lastLagMs", lastLagMicros / 1000.0);
+        stats.put("maxLagMs", maxLagMicros / 1000.0);
+        return stats;
+    }
+
+    private record Event(long id, String topic, String payload, String origin, long lagMicros) {
+    }
+
+    private void recheckGaps() {
+        if (gaps.isEmpty()) {
+            return;
+        }
+        String ids = String.join(",", gaps.keySet().stream().map(String::valueOf).toList());
+        for (Event event : query("SELECT id, topic, payload, origin, TIMESTAMPDIFF(MICROSECOND, created_at, NOW(6)) " +
+                "FROM cluster_events WHERE id IN (" + ids + ") ORDER BY id")) {
+            gaps.remove(event.id());
+            apply(event);
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Long> it = gaps.values().iterator(); it.hasNext();) {
+            if (now - it.next() > gapTimeoutMs) {
+                it.remove(); // rolled back, or a transaction too long to wait for
+                expiredGaps.incrementAndGet();
+            }
+        }
+    }
+
+    private List<Event> query(String sql, Object... args) {
+        return jdbcTemplate.query(sql, (rs, i) -> new Event(rs.getLong(1), rs.getString(2), rs.getString(3),
+                rs.getString(4), rs.getLong(5)), args);
+    }
+
+    private void apply(Event event) {
+        if (nodeId.equals(event.origin())) {
+            return; // applied locally when published
+        }
+        lastLagMicros = event.lagMicros();
+        maxLagMicros = Math.max(maxLagMicros, event.lagMicros());
+        for (Consumer<String> handler : handlers.getOrDefault(event.topic(), List.of())) {
+            try {
+                handler.accept(event.payload());
+            } catch (Exception e) {
+                System.err.println("⚠️ Warning applying cluster event " + event.id() + " (" + event.topic() + "): "
+                        + e.getMessage());
+            }
+        }
+        applied.incrementAndGet();
+    }
+}
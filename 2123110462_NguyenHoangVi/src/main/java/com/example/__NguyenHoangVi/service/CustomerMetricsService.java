@@ -0,0 +1,631 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.dto.CursorPage;
+import com.example.__NguyenHoangVi.entity.CustomerMetric;
+import com.example.__NguyenHoangVi.entity.CustomerMetricsRun;
+import com.example.__NguyenHoangVi.repository.CustomerMetricRepository;
+import com.example.__NguyenHoangVi.repository.CustomerMetricsRunRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Customer analytics: lifetime spend and RFM (recency, frequency,
+ * monetary) scores per phone number, kept in customer_metrics by a batch
+ * job instead of being computed over all orders on request.
+ *
+ * A run reads orders in primary-key chunks of customers.metrics.chunk-size
+ * past the last completed run (customer_metrics_runs), and aggregates each
+ * chunk per phone on a ForkJoinPool (split in halves down to a few
+ * thousand rows, merged back up) while the next chunk is being read. The
+ * per-customer deltas are upserted additively in batches, in the same
+ * transaction as the run row that moves the watermark, so a failed run
+ * leaves nothing behind and the next one covers the same orders again.
+ * Only customers with new orders are written.
+ *
+ * Scores are quintiles over all customers, so after the upserts every
+ * customer's recency, order count and spend are loaded into primitive
+ * arrays, sorted in parallel for the cut points and re-scored on the pool;
+ * only changed scores are written back.
+ *
+ * Incremental runs see an order's status when they read it: a later
+ * cancellation is picked up by the weekly full run (customers.metrics.
+ * full-cron), which recomputes the table from scratch.
+ */
+@Service
+public class CustomerMetricsService {
+
+    public static final String INCREMENTAL = "incremental";
+    public static final String FULL = "full";
+
+    private static final String CANCELLED = "cancelled";
+    private static final int SPLIT_THRESHOLD = 4096;
+    private static final int BATCH = 1000;
+
+    private static final String UPSERT_SQL = "INSERT INTO customer_metrics (phone, customer_id, customer_name, " +
+            "first_order_at, last_order_at, order_count, lifetime_spend, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, NOW()) " +
+            "ON DUPLICATE KEY UPDATE customer_id = COALESCE(VALUES(customer_id), customer_id), " +
+            "customer_name = COALESCE(VALUES(customer_name), customer_name), " +
+            "first_order_at = LEAST(first_order_at, VALUES(first_order_at)), " +
+            "last_order_at = GREATEST(last_order_at, VALUES(last_order_at)), " +
+            "order_count = order_count + VALUES(order_count), lifetime_spend = lifetime_spend + VALUES(lifetime_spend), " +
+            "updated_at = VALUES(updated_at)";
+    private static final String SCORE_SQL = "UPDATE customer_metrics SET recency_score = ?, frequency_score = ?, " +
+            "monetary_score = ?, segment = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private CustomerMetricRepository customerMetricRepository;
+
+    @Autowired
+    private CustomerMetricsRunRepository runRepository;
+
+    @Value("${customers.metrics.chunk-size:10000}")
+    private int chunkSize;
+
+    @Value("${customers.metrics.parallelism:0}")
+    private int parallelism;
+
+    @Value("${customers.metrics.settle-seconds:10}")
+    private int settleSeconds;
+
+    private ForkJoinPool pool;
+    private final ExecutorService jobRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "customer-metrics");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ReentrantLock running = new ReentrantLock();
+
+    // Live progress of the current run
+    private volatile String currentMode;
+    private volatile long currentStartedAt;
+    private final AtomicLong currentScanned = new AtomicLong();
+
+    // Orders of one chunk, column-wise
+    private static final class Chunk {
+        final int capacity;
+        final String[] phones;
+        final Long[] customerIds;
+        final String[] names;
+        final long[] spendMinor; // 1/100 of the currency unit
+        final LocalDateTime[] createdAt;
+        int size;
+        long lastId;
+
+        Chunk(int capacity) {
+            this.capacity = capacity;
+            phones = new String[capacity];
+            customerIds = new Long[capacity];
+            names = new String[capacity];
+            spendMinor = new long[capacity];
+            createdAt = new LocalDateTime[capacity];
+        }
+    }
+
+    // Running totals of one customer
+    private static final class Agg {
+        long orders;
+        long spendMinor;
+        LocalDateTime first;
+        LocalDateTime last;
+        Long customerId; // from the latest order that has one
+        String name;
+
+        void add(Long customerId, String name, long spendMinor, LocalDateTime at) {
+            orders++;
+            this.spendMinor += spendMinor;
+            first = first == null || at.isBefore(first) ? at : first;
+            last = last == null || at.isAfter(last) ? at : last;
+            this.customerId = customerId != null ? customerId : this.customerId;
+            this.name = name != null ? name : this.name;
+        }
+
+        // other covers later orders than this
+        void merge(Agg other) {
+            orders += other.orders;
+            spendMinor += other.spendMinor;
+            first = other.first.isBefore(first) ? other.first : first;
+            last = other.last.isAfter(last) ? other.last : last;
+            customerId = other.customerId != null ? other.customerId : customerId;
+            name = other.name != null ? other.name : name;
+        }
+    }
+
+    // Per-phone totals of rows [from, to) of a chunk
+    private static final class AggregateTask extends RecursiveTask<Map<String, Agg>> {
+        private final Chunk chunk;
+        private final int from;
+        private final int to;
+
+        AggregateTask(Chunk chunk, int from, int to) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<String, Agg> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Map<String, Agg> totals = new HashMap<>();
+                for (int i = from; i < to; i++) {
+                    totals.computeIfAbsent(chunk.phones[i], k -> new Agg())
+                            .add(chunk.customerIds[i], chunk.names[i], chunk.spendMinor[i], chunk.createdAt[i]);
+                }
+                return totals;
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(chunk, from, mid);
+            left.fork();
+            Map<String, Agg> right = new AggregateTask(chunk, mid, to).compute();
+            return mergeInto(left.join(), right);
+        }
+    }
+
+    // Scores of customers [from, to); changed[i] is set when they differ from the stored ones
+    private static final class ScoreTask extends RecursiveAction {
+        private final long[][] values; // recency, frequency, monetary
+        private final long[][] cuts;
+        private final int[] scores; // r * 100 + f * 10 + m, stored ones on input
+        private final boolean[] changed;
+        private final int from;
+        private final int to;
+
+        ScoreTask(long[][] values, long[][] cuts, int[] scores, boolean[] changed, int from, int to) {
+            this.values = values;
+            this.cuts = cuts;
+            this.scores = scores;
+            this.changed = changed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    int score = quintile(values[0][i], cuts[0]) * 100 + quintile(values[1][i], cuts[1]) * 10
+                            + quintile(values[2][i], cuts[2]);
+                    changed[i] = score != scores[i];
+                    scores[i] = score;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ScoreTask(values, cuts, scores, changed, from, mid),
+                    new ScoreTask(values, cuts, scores, changed, mid, to));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    // Both hand off to jobRunner so a long run never holds a scheduler thread
+    @Scheduled(cron = "${customers.metrics.cron:0 */15 * * * *}")
+    public void scheduledRun() {
+        start(INCREMENTAL);
+    }
+
+    @Scheduled(cron = "${customers.metrics.full-cron:0 0 4 * * SUN}")
+    public void scheduledFullRun() {
+        start(FULL);
+    }
+
+    // Start a run in the background; false if one is already running on this node
+    public boolean start(String mode) {
+        if (running.isLocked()) {
+            return false;
+        }
+        jobRunner.execute(() -> run(mode));
+        return true;
+    }
+
+    /**
+     * Run the job now (skipped if a run is in progress on this node).
+     *
+     * @return the run, or null if it was skipped or found no new orders
+     */
+    public CustomerMetricsRun run(String mode) {
+        if (!running.tryLock()) {
+            return null;
+        }
+        try {
+            return runLocked(FULL.equals(mode) ? FULL : INCREMENTAL);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private CustomerMetricsRun runLocked(String mode) {
+        long t0 = System.currentTimeMillis();
+        CustomerMetricsRun run = new CustomerMetricsRun();
+        run.setMode(mode);
+        run.setStartedAt(LocalDateTime.now());
+        currentMode = mode;
+        currentStartedAt = t0;
+        currentScanned.set(0);
+        try {
+            long watermark = watermark();
+            long from = FULL.equals(mode) ? 0 : watermark;
+            Long upper = jdbcTemplate.queryForObject("SELECT MAX(id) FROM orders WHERE id > ? " +
+                    "AND created_at < NOW() - INTERVAL ? SECOND", Long.class, from, settleSeconds);
+            if (upper == null && INCREMENTAL.equals(mode)) {
+                return null; // no new orders
+            }
+            run.setFromOrderId(from);
+            run.setToOrderId(upper != null ? upper : from);
+
+            Map<String, Agg> totals = scan(from, run.getToOrderId());
+            run.setOrdersScanned(currentScanned.get());
+            run.setCustomersUpdated(totals.size());
+            write(run, totals, watermark, t0);
+
+            run.setScoresChanged(rescore());
+            finish(run, t0);
+            runRepository.save(run);
+            System.out.println("👥 Customer metrics " + mode + " run: " + run.getOrdersScanned() + " orders, "
+                    + run.getCustomersUpdated() + " customers, " + run.getScoresChanged() + " scores changed in "
+                    + run.getDurationMs() + " ms (" + Math.round(run.getOrdersPerSecond()) + " orders/s)");
+            return run;
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            String error = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+            System.err.println("❌ Customer metrics " + mode + " run failed: " + error);
+            run.setId(null);
+            run.setStatus("failed");
+            run.setError(error.length() > 1000 ? error.substring(0, 1000) : error);
+            run.setOrdersScanned(currentScanned.get());
+            finish(run, t0);
+            try {
+                runRepository.save(run);
+            } catch (Exception ignored) {
+                // The database is what failed, the log line above is all we can do
+            }
+            return run;
+        } finally {
+            currentMode = null;
+        }
+    }
+
+    /**
+     * Read orders (from, to] chunk by chunk; each chunk is aggregated on the
+     * pool while the next one is read.
+     */
+    private Map<String, Agg> scan(long from, long to) {
+        Map<String, Agg> totals = new HashMap<>();
+        ForkJoinTask<Map<String, Agg>> inFlight = null;
+        long cursor = from;
+        while (cursor < to) {
+            Chunk chunk = readChunk(cursor, to);
+            if (inFlight != null) {
+                mergeInto(totals, inFlight.join());
+                inFlight = null;
+            }
+            if (chunk.lastId <= cursor) {
+                break; // nothing left in range
+            }
+            cursor = chunk.lastId;
+            if (chunk.size > 0) {
+                inFlight = pool.submit(new AggregateTask(chunk, 0, chunk.size));
+            }
+        }
+        if (inFlight != null) {
+            mergeInto(totals, inFlight.join());
+        }
+        return totals;
+    }
+
+    // Up to chunk-size orders after the cursor; cancelled and phoneless ones are read but not kept
+    private Chunk readChunk(long cursor, long to) {
+        Chunk chunk = new Chunk(Math.max(100, chunkSize));
+        chunk.lastId = cursor;
+        jdbcTemplate.query("SELECT id, phone, customer_id, customer_name, total_amount, status, created_at " +
+                "FROM orders WHERE id > ? AND id <= ? ORDER BY id LIMIT ?", rs -> {
+                    chunk.lastId = rs.getLong(1);
+                    currentScanned.incrementAndGet();
+                    String phone = phone(rs.getString(2));
+                    Timestamp createdAt = rs.getTimestamp(7);
+                    if (phone == null || createdAt == null || CANCELLED.equalsIgnoreCase(rs.getString(6))) {
+                        return;
+                    }
+                    int i = chunk.size++;
+                    chunk.phones[i] = phone;
+                    long customerId = rs.getLong(3);
+                    chunk.customerIds[i] = rs.wasNull() ? null : customerId;
+                    chunk.names[i] = rs.getString(4);
+                    chunk.spendMinor[i] = Math.round(rs.getDouble(5) * 100);
+                    chunk.createdAt[i] = createdAt.toLocalDateTime();
+                }, cursor, to, chunk.capacity);
+        return chunk;
+    }
+
+    /**
+     * Upsert the deltas and record the run in one transaction. The run row
+     * is the watermark: if another run (another node) moved it since this
+     * one started, nothing is written.
+     */
+    private void write(CustomerMetricsRun run, Map<String, Agg> totals, long watermark, long t0) {
+        List<Object[]> rows = new ArrayList<>(totals.size());
+        for (Map.Entry<String, Agg> entry : totals.entrySet()) {
+            Agg agg = entry.getValue();
+            rows.add(new Object[] { entry.getKey(), agg.customerId, agg.name, Timestamp.valueOf(agg.first),
+                    Timestamp.valueOf(agg.last), agg.orders, BigDecimal.valueOf(agg.spendMinor, 2) });
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            Long current = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(to_order_id), 0) FROM customer_metrics_runs " +
+                    "WHERE status = 'completed' FOR UPDATE", Long.class);
+            if (current == null || current != watermark) {
+                throw new IllegalStateException("Another run moved the watermark from #" + watermark + " to #" + current);
+            }
+            if (FULL.equals(run.getMode())) {
+                jdbcTemplate.update("DELETE FROM customer_metrics");
+            }
+            for (int from = 0; from < rows.size(); from += BATCH) {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, rows.subList(from, Math.min(from + BATCH, rows.size())));
+            }
+            run.setStatus("completed");
+            finish(run, t0);
+            runRepository.save(run);
+        });
+    }
+
+    /**
+     * Re-score every customer against the current quintile cut points and
+     * write the scores (and segment) that changed.
+     *
+     * @return number of customers whose scores changed
+     */
+    private int rescore() {
+        int[] size = { 0 };
+        long[][] columns = { new long[1024], new long[1024], new long[1024], new long[1024] }; // id, r, f, m
+        int[][] stored = { new int[1024] };
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        streaming.query("SELECT id, last_order_at, order_count, lifetime_spend, recency_score, frequency_score, " +
+                "monetary_score FROM customer_metrics", rs -> {
+                    int i = size[0]++;
+                    if (i == columns[0].length) {
+                        for (int c = 0; c < columns.length; c++) {
+                            columns[c] = Arrays.copyOf(columns[c], i * 2);
+                        }
+                        stored[0] = Arrays.copyOf(stored[0], i * 2);
+                    }
+                    columns[0][i] = rs.getLong(1);
+                    Timestamp last = rs.getTimestamp(2);
+                    columns[1][i] = last != null ? last.toLocalDateTime().toEpochSecond(ZoneOffset.UTC) : 0;
+                    columns[2][i] = rs.getLong(3);
+                    BigDecimal spend = rs.getBigDecimal(4);
+                    columns[3][i] = spend != null ? spend.movePointRight(2).longValue() : 0;
+                    int r = rs.getInt(5);
+                    stored[0][i] = rs.wasNull() ? -1 : r * 100 + rs.getInt(6) * 10 + rs.getInt(7);
+                });
+        int n = size[0];
+        if (n == 0) {
+            return 0;
+        }
+
+        long[][] values = { columns[1], columns[2], columns[3] };
+        long[][] cuts = new long[3][];
+        for (int c = 0; c < 3; c++) {
+            long[] sorted = Arrays.copyOf(values[c], n);
+            Arrays.parallelSort(sorted);
+            cuts[c] = new long[] { sorted[n / 5], sorted[2 * n / 5], sorted[3 * n / 5], sorted[4 * n / 5] };
+        }
+        int[] scores = stored[0];
+        boolean[] changed = new boolean[n];
+        pool.invoke(new ScoreTask(values, cuts, scores, changed, 0, n));
+
+        List<Object[]> updates = new ArrayList<>();
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!changed[i]) {
+                continue;
+            }
+            int r = scores[i] / 100;
+            int f = scores[i] / 10 % 10;
+            int m = scores[i] % 10;
+            updates.add(new Object[] { r, f, m, segment(r, f, m), columns[0][i] });
+            count++;
+        }
+        for (int from = 0; from < updates.size(); from += BATCH) {
+            jdbcTemplate.batchUpdate(SCORE_SQL, updates.subList(from, Math.min(from + BATCH, updates.size())));
+        }
+        return count;
+    }
+
+    /**
+     * Customers by lifetime spend, biggest first (keyset paginated),
+     * optionally within one segment.
+     */
+    public CursorPage<Map<String, Object>> page(String segment, String cursor, int limit) {
+        PageRequest page = PageRequest.of(0, limit + 1);
+        List<CustomerMetric> rows;
+        if (cursor == null || cursor.isEmpty()) {
+            rows = segment != null ? customerMetricRepository.findSegmentFirstPage(segment, page)
+                    : customerMetricRepository.findTopFirstPage(page);
+        } else {
+            String raw;
+            BigDecimal spend;
+            long id;
+            try {
+                raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                spend = new BigDecimal(raw.substring(0, sep));
+                id = Long.parseLong(raw.substring(sep + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            rows = segment != null ? customerMetricRepository.findSegmentAfter(segment, spend, id, page)
+                    : customerMetricRepository.findTopAfter(spend, id, page);
+        }
+        boolean hasMore = rows.size() > limit;
+        List<CustomerMetric> items = hasMore ? rows.subList(0, limit) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            CustomerMetric last = items.get(items.size() - 1);
+            String raw = last.getLifetimeSpend().toPlainString() + "|" + last.getId();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        return new CursorPage<>(items.stream().map(CustomerMetricsService::view).toList(), nextCursor, hasMore);
+    }
+
+    public Map<String, Object> get(String phone) {
+        String normalized = phone(phone);
+        return normalized != null ? customerMetricRepository.findByPhone(normalized).map(CustomerMetricsService::view)
+                .orElse(null) : null;
+    }
+
+    // Segments, the running job and the latest runs with their throughput
+    public Map<String, Object> overview() {
+        Map<String, Object> segments = new LinkedHashMap<>();
+        for (Object[] row : customerMetricRepository.countBySegment()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("customers", row[1]);
+            entry.put("lifetimeSpend", row[2] != null ? ((BigDecimal) row[2]).doubleValue() : 0.0);
+            segments.put(row[0] != null ? (String) row[0] : "unscored", entry);
+        }
+        Map<String, Object> overview = new LinkedHashMap<>();
+        overview.put("segments", segments);
+        String mode = currentMode;
+        if (mode != null) {
+            long elapsed = Math.max(1, System.currentTimeMillis() - currentStartedAt);
+            Map<String, Object> current = new LinkedHashMap<>();
+            current.put("mode", mode);
+            current.put("ordersScanned", currentScanned.get());
+            current.put("elapsedMs", elapsed);
+            current.put("ordersPerSecond", currentScanned.get() * 1000.0 / elapsed);
+            overview.put("running", current);
+        }
+        overview.put("runs", runRepository.findTop20ByOrderByIdDesc());
+        return overview;
+    }
+
+    private long watermark() {
+        Long watermark = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(to_order_id), 0) FROM customer_metrics_runs " +
+                "WHERE status = 'completed'", Long.class);
+        return watermark != null ? watermark : 0;
+    }
+
+    private static Map<String, Object> view(CustomerMetric metric) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        long orders = metric.getOrderCount() != null ? metric.getOrderCount() : 0;
+        BigDecimal spend = metric.getLifetimeSpend() != null ? metric.getLifetimeSpend() : BigDecimal.ZERO;
+        view.put("phone", metric.getPhone());
+        view.put("customerId", metric.getCustomerId());
+        view.put("customerName", metric.getCustomerName());
+        view.put("orderCount", orders);
+        view.put("lifetimeSpend", spend.doubleValue());
+        view.put("avgOrderValue", orders > 0 ? spend.doubleValue() / orders : 0.0);
+        view.put("firstOrderAt", metric.getFirstOrderAt());
+        view.put("lastOrderAt", metric.getLastOrderAt());
+        view.put("recencyDays", metric.getLastOrderAt() != null
+                ? ChronoUnit.DAYS.between(metric.getLastOrderAt(), LocalDateTime.now()) : null);
+        view.put("rfm", metric.getRecencyScore() != null
+                ? "" + metric.getRecencyScore() + metric.getFrequencyScore() + metric.getMonetaryScore() : null);
+        view.put("segment", metric.getSegment());
+        return view;
+    }
+
+    private static Map<String, Agg> mergeInto(Map<String, Agg> target, Map<String, Agg> later) {
+        for (Map.Entry<String, Agg> entry : later.entrySet()) {
+            Agg existing = target.get(entry.getKey());
+            if (existing == null) {
+                target.put(entry.getKey(), entry.getValue());
+            } else {
+                existing.merge(entry.getValue());
+            }
+        }
+        return target;
+    }
+
+    // 1-5: one more for every quintile cut point the value is above (ties stay low)
+    private static int quintile(long value, long[] cuts) {
+        int score = 1;
+        for (long cut : cuts) {
+            if (value > cut) {
+                score++;
+            }
+        }
+        return score;
+    }
+
+    private static String segment(int r, int f, int m) {
+        if (r >= 4 && f >= 4 && m >= 4) {
+            return "champions";
+        }
+        if (r >= 3 && f >= 4) {
+            return "loyal";
+        }
+        if (r >= 4 && f <= 2) {
+            return "new";
+        }
+        if (r >= 3) {
+            return "promising";
+        }
+        if (f >= 3 || m >= 4) {
+            return "at_risk";
+        }
+        return "hibernating";
+    }
+
+    private static void finish(CustomerMetricsRun run, long t0) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - t0);
+        run.setDurationMs(elapsed);
+        run.setOrdersPerSecond(run.getOrdersScanned() * 1000.0 / elapsed);
+        run.setFinishedAt(LocalDateTime.now());
+    }
+
+    // Phones as stored: digits and leading + only, null when there are none
+    private static String phone(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        String phone = raw.trim().replaceAll("[^0-9+]", "");
+        return phone.isEmpty() ? null : phone.length() > 20 ? phone.substring(0, 20) : phone;
+    }
+}
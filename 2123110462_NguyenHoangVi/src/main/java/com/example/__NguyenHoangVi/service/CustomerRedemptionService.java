@@ -0,0 +1,221 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.repository.RedemptionRepository;
+import com.example.__NguyenHoangVi.util.ConcurrentBitSet;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-customer usage limits for promotions and vouchers.
+ *
+ * Every use is a row in redemptions. For the hot path each promotion/voucher
+ * has a ConcurrentBitSet of customer ids that have used it at least once:
+ * a customer who never redeemed is answered with one bit lookup and no query.
+ * Only customers with the bit set (and a limit above 1) need a count query.
+ *
+ * Limits are enforced by the database: a limited use is inserted with
+ * use_no = n (1..limit) under a unique (kind, target_id, customer_id, use_no)
+ * key, so two concurrent checkouts cannot both take the last slot.
+ *
+ * A first use is also published on ClusterEventBus so the other nodes set
+ * the bit; until they do they just run the count query for that customer.
+ *
+ * Customer ids must be in 1..ConcurrentBitSet.MAX_ID; callers reject others
+ * with a 400 (see validCustomerId).
+ */
+@Service
+public class CustomerRedemptionService {
+
+    public static final String PROMOTION = "promotion";
+    public static final String VOUCHER = "voucher";
+
+    private static final String INSERT_SQL = "INSERT INTO redemptions " +
+            "(kind, target_id, customer_id, use_no, order_id, created_at) VALUES (?, ?, ?, ?, ?, NOW())";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RedemptionRepository redemptionRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    private volatile Map<Long, ConcurrentBitSet> promotionUsers = new ConcurrentHashMap<>();
+    private volatile Map<Long, ConcurrentBitSet> voucherUsers = new ConcurrentHashMap<>();
+
+    public record Claim(boolean granted, Integer useNo, String reason) {
+    }
+
+    // Null (no customer) or an id the bitmaps can hold
+    public static boolean validCustomerId(Long customerId) {
+        return customerId == null || (customerId > 0 && customerId <= ConcurrentBitSet.MAX_ID);
+    }
+
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(ClusterEventBus.REDEMPTION, payload -> {
+            String[] parts = payload.split(":");
+            set(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        });
+    }
+
+    // Rebuild the per-target bitmaps from the redemptions table
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            Map<Long, ConcurrentBitSet> promotions = new ConcurrentHashMap<>();
+            Map<Long, ConcurrentBitSet> vouchers = new ConcurrentHashMap<>();
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            long[] rows = { 0 };
+            streaming.query("SELECT kind, target_id, customer_id FROM redemptions", rs -> {
+                Map<Long, ConcurrentBitSet> target = PROMOTION.equals(rs.getString(1)) ? promotions : vouchers;
+                if (validCustomerId(rs.getLong(3))) {
+                    target.computeIfAbsent(rs.getLong(2), k -> new ConcurrentBitSet()).set(rs.getLong(3));
+                }
+                rows[0]++;
+            });
+            promotionUsers = promotions;
+            voucherUsers = vouchers;
+            System.out.println("🧾 Loaded " + rows[0] + " redemptions into per-customer bitmaps");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning loading redemptions: " + e.getMessage());
+        }
+    }
+
+    public boolean hasRedeemed(String kind, Long targetId, Long customerId) {
+        ConcurrentBitSet users = users(kind).get(targetId);
+        return users != null && customerId != null && users.get(customerId);
+    }
+
+    /**
+     * Whether the customer may use the target once more. O(1) and no query
+     * unless the customer has already redeemed it.
+     */
+    public boolean canUse(String kind, Long targetId, Long customerId, Integer limit) {
+        checkCustomerId(customerId);
+        if (limit == null) {
+            return true;
+        }
+        if (customerId == null) {
+            return false;
+        }
+        if (!hasRedeemed(kind, targetId, customerId)) {
+            return true;
+        }
+        return limit > 1 && redemptionRepository.countByKindAndTargetIdAndCustomerId(kind, targetId, customerId) < limit;
+    }
+
+    /**
+     * Record one use by the customer, refusing it if the per-customer limit
+     * is reached. Call release() if the use is later abandoned.
+     */
+    public Claim claim(String kind, Long targetId, Long customerId, Integer limit, Long orderId) {
+        checkCustomerId(customerId);
+        if (customerId == null) {
+            return limit == null
+                    ? new Claim(true, null, null)
+                    : new Claim(false, null, "customerId là bắt buộc cho ưu đãi giới hạn theo khách hàng");
+        }
+        if (limit == null) {
+            jdbcTemplate.update(INSERT_SQL, kind, targetId, customerId, null, orderId);
+            markUsed(kind, targetId, customerId);
+            return new Claim(true, null, null);
+        }
+
+        int useNo = hasRedeemed(kind, targetId, customerId)
+                ? (int) redemptionRepository.countByKindAndTargetIdAndCustomerId(kind, targetId, customerId) + 1
+                : 1;
+        for (; useNo <= limit; useNo++) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, kind, targetId, customerId, useNo, orderId);
+            } catch (DuplicateKeyException e) {
+                continue; // a concurrent checkout took this use_no; try the next (other errors propagate)
+            }
+            markUsed(kind, targetId, customerId);
+            return new Claim(true, useNo, null);
+        }
+        markUsed(kind, targetId, customerId);
+        return new Claim(false, null, "Bạn đã dùng hết lượt cho ưu đãi này");
+    }
+
+    /**
+     * Undo a granted claim (e.g. the global usage limit was hit afterwards).
+     * The claim set the customer's bit whatever its use_no, so the bit is
+     * cleared whenever no redemption of the target is left for the customer,
+     * after the surrounding transaction commits (the claim's own mark runs
+     * there too, and before this).
+     */
+    public void release(String kind, Long targetId, Long customerId, Claim claim) {
+        if (!claim.granted() || customerId == null) {
+            return;
+        }
+        if (claim.useNo() != null) {
+            jdbcTemplate.update("DELETE FROM redemptions WHERE kind = ? AND target_id = ? AND customer_id = ? " +
+                    "AND use_no = ?", kind, targetId, customerId, claim.useNo());
+        } else {
+            jdbcTemplate.update("DELETE FROM redemptions WHERE kind = ? AND target_id = ? AND customer_id = ? " +
+                    "AND use_no IS NULL ORDER BY id DESC LIMIT 1", kind, targetId, customerId);
+        }
+        if (redemptionRepository.countByKindAndTargetIdAndCustomerId(kind, targetId, customerId) == 0) {
+            afterCommit(() -> {
+                ConcurrentBitSet users = users(kind).get(targetId);
+                if (users != null) {
+                    users.clear(customerId);
+                }
+            });
+        }
+    }
+
+    // Inside a transaction (checkout) the bit is set only once the row is committed
+    private void markUsed(String kind, Long targetId, Long customerId) {
+        if (!hasRedeemed(kind, targetId, customerId)) {
+            clusterEventBus.publish(ClusterEventBus.REDEMPTION, kind + ":" + targetId + ":" + customerId);
+        }
+        afterCommit(() -> set(kind, targetId, customerId));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static void checkCustomerId(Long customerId) {
+        if (!validCustomerId(customerId)) {
+            throw new IllegalArgumentException("customerId không hợp lệ");
+        }
+    }
+
+    private void set(String kind, Long targetId, Long customerId) {
+        if (validCustomerId(customerId)) {
+            users(kind).computeIfAbsent(targetId, k -> new ConcurrentBitSet()).set(customerId);
+        }
+    }
+
+    private Map<Long, ConcurrentBitSet> users(String kind) {
+        return PROMOTION.equals(kind) ? promotionUsers : voucherUsers;
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.dto.Notification;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Events push for notifications.
+ *
+ * Publishing never touches a socket: the notification is stored, then one
+ * fan-out thread offers it to the bounded buffer of every matching
+ * subscriber (all of them for a broadcast, the phone's for a targeted one)
+ * and a small pool of sender threads drains the buffers to the emitters.
+ * The fan-out thread also registers new subscribers and replays what they
+ * missed (seq > Last-Event-ID) from the store, so replay and live events
+ * never overlap or leave a gap.
+ *
+ * A client too slow to keep up overflows its buffer: it gets what is
+ * buffered, then the stream is closed and the client resumes with its
+ * Last-Event-ID, so nothing is lost and memory per client stays bounded.
+ *
+ * In a cluster, notifications published on another node arrive through
+ * ClusterEventBus and are fanned out here like local ones, within
+ * cluster.poll-ms. Such a notification can have a lower seq than a local one
+ * already pushed; live subscribers still get it, only a client reconnecting
+ * in that window with the higher Last-Event-ID would skip it.
+ */
+@Service
+public class NotificationHub {
+
+    @Autowired
+    private NotificationStore notificationStore;
+
+    @Autowired
+    private NotificationReadService readService;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Value("${notifications.sse.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${notifications.sse.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    private final ExecutorService fanout = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notification-fanout");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService senders;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<Subscriber>> byPhone = new ConcurrentHashMap<>();
+    private long lastFannedOut; // seq of the last notification handed to subscribers, fan-out thread only
+    private volatile boolean seeded;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicInteger connected = new AtomicInteger();
+
+    public NotificationHub(@Value("${notifications.sse.sender-threads:4}") int senderThreads) {
+        AtomicInteger n = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "notification-sender-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(ClusterEventBus.NOTIFICATION, payload -> {
+            Notification notification = notificationStore.loadShared(Long.parseLong(payload));
+            if (notification != null) {
+                fanout.execute(() -> fanOut(notification));
+            }
+        });
+    }
+
+    // Before any reconnect is served, so a Last-Event-ID from before a restart replays from the store
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (seeded) {
+            return;
+        }
+        // Same lock as publish: every seq up to lastSeq has its fanOut queued ahead of this task
+        synchronized (this) {
+            if (seeded) {
+                return;
+            }
+            notificationStore.load();
+            long lastSeq = notificationStore.lastSeq();
+            fanout.execute(() -> lastFannedOut = Math.max(lastFannedOut, lastSeq));
+            seeded = true;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanout.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    /**
+     * Store the notification and push it to connected subscribers. Returns as
+     * soon as it is stored; delivery happens on the fan-out thread.
+     */
+    public Notification publish(String title, String message, String type, String targetUsers,
+            List<String> targetUserIds, String imageUrl, String actionUrl) {
+        // Under the lock so notifications reach the fan-out thread in seq order
+        synchronized (this) {
+            Notification notification = notificationStore.publish(title, message, type, targetUsers, targetUserIds,
+                    imageUrl, actionUrl);
+            fanout.execute(() -> fanOut(notification));
+            return notification;
+        }
+    }
+
+    /**
+     * Open a stream for the phone (null: broadcasts only), replaying
+     * everything after lastEventId first.
+     */
+    public SseEmitter subscribe(String phone, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(phone, emitter, bufferSize);
+        emitter.onCompletion(() -> unregister(subscriber));
+        emitter.onTimeout(() -> unregister(subscriber));
+        emitter.onError(e -> unregister(subscriber));
+        seed(); // the server can take requests before ApplicationReadyEvent
+        fanout.execute(() -> register(subscriber, lastEventId));
+        return emitter;
+    }
+
+    // Keep idle connections (and proxies in between) from timing out
+    @Scheduled(fixedRateString = "${notifications.sse.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue = true;
+            signal(subscriber);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "connected", connected.get(),
+                "phones", byPhone.size(),
+                "delivered", delivered.get(),
+                "overflows", overflows.get(),
+                "store", notificationStore.stats());
+    }
+
+    private void register(Subscriber subscriber, Long lastEventId) {
+        if (subscribers.add(subscriber)) {
+            connected.incrementAndGet();
+        }
+        if (subscriber.phone != null) {
+            byPhone.computeIfAbsent(subscriber.phone, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        if (subscriber.closed.get()) {
+            remove(subscriber); // client went away before we got to it
+            return;
+        }
+        if (lastEventId != null) {
+            // Everything up to lastFannedOut is in the store (paged when it comes from the table);
+            // later seqs arrive through fanOut
+            long cursor = lastEventId;
+            replay: while (cursor < lastFannedOut) {
+                List<Notification> page = notificationStore.afterSeq(cursor, subscriber.phone);
+                if (page.isEmpty()) {
+                    break;
+                }
+                for (Notification missed : page) {
+                    if (missed.seq() > lastFannedOut || !offer(subscriber, missed)) {
+                        break replay;
+                    }
+                    cursor = missed.seq();
+                }
+            }
+        }
+        subscriber.heartbeatDue = true; // flush headers right away so the client sees the stream open
+        signal(subscriber);
+    }
+
+    private void fanOut(Notification notification) {
+        lastFannedOut = Math.max(lastFannedOut, notification.seq());
+        if (notification.isBroadcast()) {
+            for (Subscriber subscriber : subscribers) {
+                offer(subscriber, notification);
+            }
+        } else {
+            for (String phone : notification.targetUserIds()) {
+                Set<Subscriber> targets = byPhone.get(phone);
+                if (targets != null) {
+                    for (Subscriber subscriber : targets) {
+                        offer(subscriber, notification);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean offer(Subscriber subscriber, Notification notification) {
+        if (subscriber.overflowed) {
+            return false;
+        }
+        if (!subscriber.buffer.offer(notification)) {
+            subscriber.overflowed = true; // drained, then closed; the client resumes from its last id
+            overflows.incrementAndGet();
+        }
+        signal(subscriber);
+        return !subscriber.overflowed;
+    }
+
+    private void signal(Subscriber subscriber) {
+        if (!subscriber.closed.get() && subscriber.scheduled.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    // Runs on a sender thread; at most one drain per subscriber at a time
+    private void drain(Subscriber subscriber) {
+        try {
+            Notification next;
+            boolean sent = false;
+            while ((next = subscriber.buffer.poll()) != null) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(Long.toString(next.seq()))
+                        .name("notification")
+                        .data(next));
+                delivered.incrementAndGet();
+                readService.markDelivered(next.seq(), subscriber.phone);
+                sent = true;
+            }
+            if (subscriber.heartbeatDue) {
+                subscriber.heartbeatDue = false;
+                if (!sent) {
+                    subscriber.emitter.send(SseEmitter.event().comment("ping"));
+                }
+            }
+            if (subscriber.overflowed) {
+                subscriber.emitter.complete();
+                unregister(subscriber);
+                return;
+            }
+        } catch (Exception e) {
+            // Client disconnected (broken pipe) or the emitter is already done
+            subscriber.emitter.completeWithError(e);
+            unregister(subscriber);
+            return;
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        if (!subscriber.buffer.isEmpty() || subscriber.overflowed) {
+            signal(subscriber); // something arrived after the last poll
+        }
+    }
+
+    private void unregister(Subscriber subscriber) {
+        subscriber.closed.set(true);
+        remove(subscriber);
+        subscriber.buffer.clear();
+    }
+
+    // Idempotent, so register() and unregister() can race
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            connected.decrementAndGet();
+        }
+        if (subscriber.phone != null) {
+            byPhone.computeIfPresent(subscriber.phone, (k, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private static final class Subscriber {
+        final String phone;
+        final SseEmitter emitter;
+        final Queue<Notification> buffer;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile boolean overflowed;
+        volatile boolean heartbeatDue;
+
+        Subscriber(String phone, SseEmitter emitter, int bufferSize) {
+            this.phone = phone;
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        }
+    }
+}
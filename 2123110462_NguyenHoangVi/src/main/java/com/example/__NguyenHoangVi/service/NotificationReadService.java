@@ -0,0 +1,340 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.dto.Notification;
+import com.example.__NguyenHoangVi.util.RoaringBitmap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Delivery and read state per notification, as two RoaringBitmaps over
+ * dense user ids (one per phone, from notification_users).
+ *
+ * Delivering or reading a broadcast sets one bit in memory; dirty bitmaps
+ * are written back as blobs by a scheduled flush (one batched upsert), so a
+ * campaign to 100k users is one row, not 100k. Bitmaps are loaded on first
+ * use and at most notifications.reads.max-cached are kept, oldest clean ones
+ * evicted first.
+ *
+ * In a cluster every node holds its own copy, so a flush first locks the
+ * stored rows (SELECT ... FOR UPDATE), ORs them into memory and writes the
+ * union: bits only get set, so the merge never loses another node's reads.
+ * Other nodes drop their clean copy on the NOTIFICATION_READS event and
+ * reload it on next use.
+ */
+@Service
+public class NotificationReadService {
+
+    private static final String UPSERT_SQL = "INSERT INTO notification_read_state " +
+            "(notification_seq, delivered, read_bits, delivered_count, read_count, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, NOW()) ON DUPLICATE KEY UPDATE delivered = VALUES(delivered), " +
+            "read_bits = VALUES(read_bits), delivered_count = VALUES(delivered_count), " +
+            "read_count = VALUES(read_count), updated_at = VALUES(updated_at)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NotificationStore notificationStore;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${notifications.reads.max-cached:2000}")
+    private int maxCached;
+
+    @Value("${notifications.reads.unread-limit:100}")
+    private int unreadLimit;
+
+    private final Map<String, Integer> userIds = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, State> states = new ConcurrentSkipListMap<>();
+
+    // Guarded by itself
+    private static final class State {
+        final RoaringBitmap delivered;
+        final RoaringBitmap read;
+        boolean dirty;
+        boolean evicted;
+
+        State(RoaringBitmap delivered, RoaringBitmap read) {
+            this.delivered = delivered;
+            this.read = read;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(ClusterEventBus.NOTIFICATION_READS, payload -> {
+            long seq = Long.parseLong(payload);
+            State state = states.get(seq);
+            if (state != null) {
+                synchronized (state) {
+                    if (!state.dirty) {
+                        state.evicted = true; // reloaded with the other node's bits on next use
+                        states.remove(seq, state);
+                    }
+                    // dirty: the next flush merges the stored bits anyway
+                }
+            }
+        });
+    }
+
+    public void markDelivered(long seq, String phone) {
+        if (phone == null) {
+            return;
+        }
+        int user = userId(phone);
+        update(seq, state -> state.delivered.add(user));
+    }
+
+    /**
+     * @return true if this marked it read (false if it already was)
+     */
+    public boolean markRead(long seq, String phone) {
+        int user = userId(phone);
+        boolean[] changed = { false };
+        update(seq, state -> {
+            state.delivered.add(user); // read through a path we didn't see (e.g. an old poll)
+            changed[0] = state.read.add(user);
+            return changed[0];
+        });
+        return changed[0];
+    }
+
+    // Mark everything the user can see in the unread window as read
+    public int markAllRead(String phone) {
+        int marked = 0;
+        for (Notification notification : notificationStore.latest(phone, unreadLimit)) {
+            if (markRead(notification.seq(), phone)) {
+                marked++;
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * Unread notifications among the newest notifications.reads.unread-limit
+     * the user can see (the app shows "99+" beyond that anyway).
+     */
+    public int unreadCount(String phone) {
+        Integer user = knownUserId(phone);
+        List<Notification> visible = notificationStore.latest(phone, unreadLimit);
+        if (user == null) {
+            return visible.size(); // never read anything
+        }
+        int unread = 0;
+        for (Notification notification : visible) {
+            State state = state(notification.seq());
+            synchronized (state) {
+                if (!state.read.contains(user)) {
+                    unread++;
+                }
+            }
+        }
+        return unread;
+    }
+
+    public Map<String, Object> stats(long seq) {
+        State state = state(seq);
+        long delivered;
+        long read;
+        synchronized (state) {
+            delivered = state.delivered.cardinality();
+            read = state.read.cardinality();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("seq", seq);
+        stats.put("delivered", delivered);
+        stats.put("read", read);
+        stats.put("readRate", delivered == 0 ? 0.0 : (double) read / delivered);
+        return stats;
+    }
+
+    // Per-notification stats for the newest broadcasts plus the overall read rate
+    public Map<String, Object> recentStats(int limit) {
+        List<Map<String, Object>> notifications = new ArrayList<>();
+        long delivered = 0;
+        long read = 0;
+        for (Notification notification : notificationStore.latest(null, limit)) {
+            Map<String, Object> stats = stats(notification.seq());
+            stats.put("title", notification.title());
+            stats.put("sentAt", notification.sentAt());
+            delivered += (Long) stats.get("delivered");
+            read += (Long) stats.get("read");
+            notifications.add(stats);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("notifications", notifications);
+        result.put("delivered", delivered);
+        result.put("read", read);
+        result.put("readRate", delivered == 0 ? 0.0 : (double) read / delivered);
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.reads.flush-ms:5000}")
+    public synchronized int flush() {
+        Map<Long, State> flushed = new LinkedHashMap<>();
+        for (Map.Entry<Long, State> entry : states.entrySet()) {
+            State state = entry.getValue();
+            synchronized (state) {
+                if (state.dirty) {
+                    state.dirty = false; // a bit set from here on marks it dirty again
+                    flushed.put(entry.getKey(), state);
+                }
+            }
+        }
+        if (!flushed.isEmpty()) {
+            try {
+                if (clusterEventBus.isEnabled()) {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        merge(flushed);
+                        jdbcTemplate.batchUpdate(UPSERT_SQL, rows(flushed));
+                        for (Long seq : flushed.keySet()) {
+                            clusterEventBus.publish(ClusterEventBus.NOTIFICATION_READS, Long.toString(seq));
+                        }
+                    });
+                } else {
+                    jdbcTemplate.batchUpdate(UPSERT_SQL, rows(flushed));
+                }
+            } catch (Exception e) {
+                System.err.println("⚠️ Warning saving notification read state: " + e.getMessage());
+                for (State state : flushed.values()) {
+                    synchronized (state) {
+                        state.dirty = true;
+                    }
+                }
+            }
+        }
+        trimCache();
+        return flushed.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int flushed = flush();
+        System.out.println("📖 Flushed read state of " + flushed + " notifications on shutdown");
+    }
+
+    private static List<Object[]> rows(Map<Long, State> flushed) {
+        List<Object[]> rows = new ArrayList<>(flushed.size());
+        for (Map.Entry<Long, State> entry : flushed.entrySet()) {
+            State state = entry.getValue();
+            synchronized (state) {
+                rows.add(new Object[] { entry.getKey(), state.delivered.serialize(), state.read.serialize(),
+                        state.delivered.cardinality(), state.read.cardinality() });
+            }
+        }
+        return rows;
+    }
+
+    // OR what other nodes stored into memory; the rows stay locked until the upsert commits
+    private void merge(Map<Long, State> flushed) {
+        String seqs = String.join(",", flushed.keySet().stream().map(String::valueOf).toList());
+        Map<Long, State> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT notification_seq, delivered, read_bits FROM notification_read_state " +
+                "WHERE notification_seq IN (" + seqs + ") FOR UPDATE", rs -> {
+                    stored.put(rs.getLong(1), new State(RoaringBitmap.deserialize(rs.getBytes(2)),
+                            RoaringBitmap.deserialize(rs.getBytes(3))));
+                });
+        for (Map.Entry<Long, State> entry : stored.entrySet()) {
+            State state = flushed.get(entry.getKey());
+            synchronized (state) {
+                state.delivered.or(entry.getValue().delivered);
+                state.read.or(entry.getValue().read);
+            }
+        }
+    }
+
+    private interface Change {
+        boolean apply(State state);
+    }
+
+    private void update(long seq, Change change) {
+        while (true) {
+            State state = state(seq);
+            synchronized (state) {
+                if (state.evicted) {
+                    continue; // evicted between lookup and lock, load it again
+                }
+                if (change.apply(state)) {
+                    state.dirty = true;
+                }
+                return;
+            }
+        }
+    }
+
+    private State state(long seq) {
+        State state = states.get(seq);
+        if (state != null) {
+            return state;
+        }
+        State loaded = load(seq);
+        State existing = states.putIfAbsent(seq, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private State load(long seq) {
+        List<State> rows = jdbcTemplate.query(
+                "SELECT delivered, read_bits FROM notification_read_state WHERE notification_seq = ?",
+                (rs, i) -> new State(RoaringBitmap.deserialize(rs.getBytes(1)), RoaringBitmap.deserialize(rs.getBytes(2))),
+                seq);
+        return rows.isEmpty() ? new State(new RoaringBitmap(), new RoaringBitmap()) : rows.get(0);
+    }
+
+    // Drop the oldest clean bitmaps beyond the cache size
+    private void trimCache() {
+        for (Map.Entry<Long, State> entry : states.entrySet()) {
+            if (states.size() <= maxCached) {
+                return;
+            }
+            State state = entry.getValue();
+            synchronized (state) {
+                if (!state.dirty) {
+                    state.evicted = true;
+                    states.remove(entry.getKey(), state);
+                }
+            }
+        }
+    }
+
+    private Integer knownUserId(String phone) {
+        Integer id = userIds.get(phone);
+        if (id != null) {
+            return id;
+        }
+        List<Integer> ids = jdbcTemplate.queryForList("SELECT id FROM notification_users WHERE phone = ?",
+                Integer.class, phone);
+        if (ids.isEmpty()) {
+            return null;
+        }
+        userIds.put(phone, ids.get(0));
+        return ids.get(0);
+    }
+
+    private int userId(String phone) {
+        Integer id = knownUserId(phone);
+        if (id != null) {
+            return id;
+        }
+        jdbcTemplate.update("INSERT IGNORE INTO notification_users (phone) VALUES (?)", phone);
+        return knownUserId(phone);
+    }
+}
@@ -0,0 +1,563 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.dto.Notification;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent, time-indexed notification store.
+ *
+ * Every notification gets a monotonic seq and a strictly increasing
+ * timestamp (epoch micros) assigned together, so both orders agree. Indexes, all skip lists:
+ * seq -> notification for broadcasts, phone -> (seq -> notification) for
+ * targeted ones, and time -> first seq at that time. A "since" read is one
+ * floor/ceiling lookup plus two tail-map walks merged by seq: O(log n + k),
+ * lock-free for readers and with no per-notification parsing.
+ *
+ * Memory only holds a hot window (notifications.store.hot-max-count newest,
+ * none older than hot-max-age-minutes). Every notification is written to
+ * the notifications table in batches (notifications.store.flush-ms) and is
+ * evicted only once written, so a read older than the window is answered
+ * from the table (at most max-page rows per call) and the rest from memory.
+ * A purge job deletes rows older than retention-days.
+ *
+ * With cluster.enabled the seq comes from the shared cluster_sequences row
+ * and the notification is written at once, with its ClusterEventBus event,
+ * in one transaction; other nodes load it by seq when the event arrives.
+ */
+@Service
+public class NotificationStore {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int PURGE_CHUNK = 10_000;
+
+    private static final String INSERT_SQL = "INSERT IGNORE INTO notifications (seq, public_id, title, message, " +
+            "type, target_users, target_phones, image_url, action_url, sent_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TARGET_SQL = "INSERT IGNORE INTO notification_targets (phone, notification_seq) " +
+            "VALUES (?, ?)";
+    private static final String SELECT_COLUMNS = "SELECT n.seq, n.public_id, n.title, n.message, n.type, " +
+            "n.target_users, n.target_phones, n.image_url, n.action_url, n.sent_at FROM notifications n ";
+    private static final String BROADCASTS_BETWEEN = SELECT_COLUMNS +
+            "WHERE n.seq > ? AND n.seq <= ? AND n.target_users <> 'specific'";
+    private static final String TARGETED_BETWEEN = SELECT_COLUMNS +
+            "JOIN notification_targets t ON t.notification_seq = n.seq " +
+            "WHERE t.phone = ? AND t.notification_seq > ? AND t.notification_seq <= ?";
+
+    // LAST_INSERT_ID(expr) hands the new value back on this connection only
+    private static final String NEXT_SEQ_SQL = "UPDATE cluster_sequences " +
+            "SET current_value = LAST_INSERT_ID(current_value + 1) WHERE name = 'notification'";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Value("${notifications.store.hot-max-count:10000}")
+    private int hotMaxCount;
+
+    @Value("${notifications.store.hot-max-age-minutes:1440}")
+    private long hotMaxAgeMinutes;
+
+    @Value("${notifications.store.max-page:500}")
+    private int maxPage;
+
+    @Value("${notifications.store.max-pending:50000}")
+    private int maxPending;
+
+    @Value("${notifications.store.retention-days:90}")
+    private int retentionDays;
+
+    private final NavigableMap<Long, Notification> all = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, Notification> broadcasts = new ConcurrentSkipListMap<>();
+    private final Map<String, NavigableMap<Long, Notification>> byPhone = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Long> firstSeqAtMicros = new ConcurrentSkipListMap<>();
+
+    private long lastSeq; // guarded by this
+    private long lastMicros; // guarded by this
+    private volatile boolean loaded;
+
+    // Write-behind: published, not yet in the table
+    private final Queue<Notification> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final List<Notification> retry = new ArrayList<>(); // guarded by writeLock
+    private final Object writeLock = new Object();
+    private volatile long writtenSeq; // every seq <= this is in the table (or was dropped)
+    private volatile long evictedSeq; // every seq <= this has left memory
+    private volatile long evictedMicros; // sent time of evictedSeq
+
+    // Continue the sequence and warm the hot window from the table
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        ensureLoaded();
+    }
+
+    public Notification publish(String title, String message, String type, String targetUsers,
+            List<String> targetUserIds, String imageUrl, String actionUrl) {
+        checkTarget(targetUsers, targetUserIds);
+        ensureLoaded();
+        if (clusterEventBus.isEnabled()) {
+            return publishShared(title, message, type, targetUsers, targetUserIds, imageUrl, actionUrl);
+        }
+        Notification notification;
+        synchronized (this) {
+            long micros = nextMicros();
+            long seq = ++lastSeq;
+            LocalDateTime sentAt = toLocalDateTime(micros);
+            notification = new Notification(UUID.randomUUID().toString(), seq, title, message,
+                    type != null ? type : "news",
+                    targetUsers != null ? targetUsers : "all",
+                    targetUserIds != null ? List.copyOf(targetUserIds) : List.of(),
+                    imageUrl, actionUrl, sentAt.format(DateTimeFormatter.ISO_DATE_TIME), micros, true);
+            index(notification);
+            pending.add(notification);
+        }
+        if (pendingCount.incrementAndGet() >= maxPage) {
+            flush(); // a burst; don't wait for the timer
+        }
+        return notification;
+    }
+
+    private Notification publishShared(String title, String message, String type, String targetUsers,
+            List<String> targetUserIds, String imageUrl, String actionUrl) {
+        Notification notification = transactionTemplate.execute(status -> {
+            // The row lock on the sequence is held to commit, so seqs commit in order across nodes
+            if (jdbcTemplate.update(NEXT_SEQ_SQL) != 1) {
+                // The row was not created at load (database was down then)
+                initSequence(jdbcTemplate.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM notifications", Long.class));
+                jdbcTemplate.update(NEXT_SEQ_SQL);
+            }
+            Long seq = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
+            long micros;
+            synchronized (this) {
+                micros = nextMicros();
+            }
+            Notification created = new Notification(UUID.randomUUID().toString(), seq, title, message,
+                    type != null ? type : "news",
+                    targetUsers != null ? targetUsers : "all",
+                    targetUserIds != null ? List.copyOf(targetUserIds) : List.of(),
+                    imageUrl, actionUrl, toLocalDateTime(micros).format(DateTimeFormatter.ISO_DATE_TIME), micros, true);
+            write(List.of(created));
+            clusterEventBus.publish(ClusterEventBus.NOTIFICATION, Long.toString(seq));
+            return created;
+        });
+        accept(notification);
+        return notification;
+    }
+
+    /**
+     * Load a notification another node published (idempotent). Returns null
+     * if it is already here or no longer in the table.
+     */
+    public Notification loadShared(long seq) {
+        ensureLoaded();
+        if (all.containsKey(seq) || seq <= evictedSeq) {
+            return null;
+        }
+        List<Notification> rows = jdbcTemplate.query(SELECT_COLUMNS + "WHERE n.seq = ?", (rs, i) -> toNotification(rs),
+                seq);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        accept(rows.get(0));
+        return rows.get(0);
+    }
+
+    // Only all and specific; anything else would silently become a broadcast
+    private static void checkTarget(String targetUsers, List<String> targetUserIds) {
+        if (targetUsers == null || "all".equals(targetUsers)) {
+            return;
+        }
+        if (!"specific".equals(targetUsers)) {
+            throw new IllegalArgumentException("targetUsers phải là all hoặc specific");
+        }
+        if (targetUserIds == null || targetUserIds.isEmpty()) {
+            throw new IllegalArgumentException("Cần ít nhất một số điện thoại khi targetUsers là specific");
+        }
+    }
+
+    // Strictly increasing, so no two local notifications share a time key; caller holds this
+    private long nextMicros() {
+        lastMicros = Math.max(lastMicros + 1, ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now()));
+        return lastMicros;
+    }
+
+    // Index a notification that is already in the table
+    private synchronized void accept(Notification notification) {
+        lastSeq = Math.max(lastSeq, notification.seq());
+        lastMicros = Math.max(lastMicros, notification.sentAtMicros());
+        index(notification);
+    }
+
+    /**
+     * Notifications for this phone (broadcasts + targeted) sent strictly
+     * after since, oldest first.
+     */
+    public List<Notification> since(LocalDateTime since, String phone) {
+        ensureLoaded();
+        long micros = ChronoUnit.MICROS.between(Instant.EPOCH, since.atZone(ZONE).toInstant());
+        if (micros < evictedMicros) {
+            // Older than the hot window: find the first seq after since in the table
+            List<Long> first = jdbcTemplate.queryForList(
+                    "SELECT seq FROM notifications WHERE sent_at > ? ORDER BY sent_at, seq LIMIT 1", Long.class,
+                    Timestamp.valueOf(since));
+            // Nothing newer in the table (purged): all of memory is after since
+            return first.isEmpty() ? afterSeq(evictedSeq, phone) : afterSeq(first.get(0) - 1, phone);
+        }
+        Map.Entry<Long, Long> first = firstSeqAtMicros.higherEntry(micros);
+        if (micros < evictedMicros) {
+            return since(since, phone); // the window moved past since while we looked, go to the table
+        }
+        if (first == null) {
+            return List.of();
+        }
+        return afterSeq(first.getValue() - 1, phone);
+    }
+
+    /**
+     * Notifications for this phone with seq > afterSeq, oldest first. When
+     * the start is older than the hot window, returns at most max-page rows
+     * from the table; the caller continues from the last seq.
+     */
+    public List<Notification> afterSeq(long afterSeq, String phone) {
+        ensureLoaded();
+        while (true) {
+            long evicted = evictedSeq;
+            if (afterSeq >= evicted) {
+                List<Notification> hot = fromMemory(afterSeq, phone);
+                if (evictedSeq <= afterSeq) {
+                    return hot;
+                }
+                continue; // evicted while reading, the start is in the table now
+            }
+            List<Notification> result = fromTable(afterSeq, evicted, phone, maxPage);
+            if (result.size() >= maxPage) {
+                return result;
+            }
+            List<Notification> hot = fromMemory(evicted, phone);
+            if (evictedSeq != evicted) {
+                continue; // entries between evicted and the new evictedSeq may be missing from hot
+            }
+            result.addAll(hot);
+            return result;
+        }
+    }
+
+    // Newest notifications for this phone in the hot window (broadcasts only when phone is null), newest first
+    public List<Notification> latest(String phone, int limit) {
+        ensureLoaded();
+        Iterator<Notification> b = broadcasts.descendingMap().values().iterator();
+        NavigableMap<Long, Notification> targeted = phone != null ? byPhone.get(phone) : null;
+        Iterator<Notification> t = targeted != null
+                ? targeted.descendingMap().values().iterator()
+                : List.<Notification>of().iterator();
+
+        List<Notification> result = new ArrayList<>(Math.min(limit, 256));
+        Notification nb = b.hasNext() ? b.next() : null;
+        Notification nt = t.hasNext() ? t.next() : null;
+        while ((nb != null || nt != null) && result.size() < limit) {
+            if (nt == null || (nb != null && nb.seq() > nt.seq())) {
+                result.add(nb);
+                nb = b.hasNext() ? b.next() : null;
+            } else {
+                result.add(nt);
+                nt = t.hasNext() ? t.next() : null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the notification exists and this phone is among its readers
+     * (a broadcast, or the phone is one of its targets).
+     */
+    public boolean isVisibleTo(long seq, String phone) {
+        ensureLoaded();
+        Notification notification = all.get(seq);
+        if (notification != null) {
+            return notification.isBroadcast() || notification.targetUserIds().contains(phone);
+        }
+        // Evicted from the hot window (or not loaded here yet): ask the table
+        List<Integer> rows = jdbcTemplate.queryForList("SELECT 1 FROM notifications n WHERE n.seq = ? AND " +
+                "(n.target_users <> 'specific' OR EXISTS (SELECT 1 FROM notification_targets t " +
+                "WHERE t.notification_seq = n.seq AND t.phone = ?))", Integer.class, seq, phone);
+        return !rows.isEmpty();
+    }
+
+    public long lastSeq() {
+        synchronized (this) {
+            return lastSeq;
+        }
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hot", all.size());
+        stats.put("hotPhones", byPhone.size());
+        stats.put("pendingWrites", pendingCount.get());
+        stats.put("writtenSeq", writtenSeq);
+        stats.put("evictedSeq", evictedSeq);
+        stats.put("lastSeq", lastSeq());
+        return stats;
+    }
+
+    /**
+     * Write pending notifications (two batched INSERT IGNOREs, so a retried
+     * batch is harmless), then evict what falls outside the hot window.
+     */
+    @Scheduled(fixedDelayString = "${notifications.store.flush-ms:200}")
+    public void flush() {
+        synchronized (writeLock) {
+            List<Notification> batch = new ArrayList<>(retry);
+            retry.clear();
+            Notification next;
+            while ((next = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                batch.add(next);
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    write(batch);
+                } catch (Exception e) {
+                    System.err.println("⚠️ Warning writing " + batch.size() + " notifications: " + e.getMessage());
+                    int drop = Math.max(0, batch.size() - maxPending);
+                    if (drop > 0) {
+                        System.err.println("❌ Dropping " + drop + " unwritten notifications (database unavailable)");
+                    }
+                    retry.addAll(batch.subList(drop, batch.size()));
+                }
+            }
+            // Everything below the oldest unwritten notification is in the table
+            Notification unwritten = !retry.isEmpty() ? retry.get(0) : pending.peek();
+            long written = unwritten != null ? unwritten.seq() - 1 : lastSeq();
+            writtenSeq = Math.max(writtenSeq, written);
+            evict();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // Delete notifications older than the retention period, in chunks
+    @Scheduled(fixedDelayString = "${notifications.store.purge-interval-ms:3600000}", initialDelay = 60000)
+    public void purge() {
+        try {
+            Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays));
+            Long upTo = jdbcTemplate.queryForObject("SELECT MAX(seq) FROM notifications WHERE sent_at < ?",
+                    Long.class, cutoff);
+            if (upTo == null) {
+                return;
+            }
+            long targets = deleteInChunks("DELETE FROM notification_targets WHERE notification_seq <= ? LIMIT "
+                    + PURGE_CHUNK, upTo);
+            long rows = deleteInChunks("DELETE FROM notifications WHERE seq <= ? LIMIT " + PURGE_CHUNK, upTo);
+            System.out.println("🧹 Purged " + rows + " notifications (" + targets + " targets) older than "
+                    + retentionDays + " days");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning purging notifications: " + e.getMessage());
+        }
+    }
+
+    private long deleteInChunks(String sql, long upTo) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sql, upTo);
+            total += deleted;
+        } while (deleted == PURGE_CHUNK);
+        return total;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            try {
+                Long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM notifications", Long.class);
+                long maxSeq = max != null ? max : 0;
+                Timestamp oldest = Timestamp.valueOf(LocalDateTime.now().minusMinutes(hotMaxAgeMinutes));
+                List<Notification> hot = jdbcTemplate.query(SELECT_COLUMNS + "WHERE n.seq > ? AND n.sent_at >= ? " +
+                        "ORDER BY n.seq", (rs, i) -> toNotification(rs), maxSeq - hotMaxCount, oldest);
+                long firstHot = hot.isEmpty() ? maxSeq + 1 : hot.get(0).seq();
+                List<Timestamp> evictedAt = jdbcTemplate.queryForList(
+                        "SELECT sent_at FROM notifications WHERE seq < ? ORDER BY seq DESC LIMIT 1", Timestamp.class,
+                        firstHot);
+                evictedSeq = firstHot - 1;
+                evictedMicros = evictedAt.isEmpty() ? 0 : micros(evictedAt.get(0).toLocalDateTime());
+                for (Notification notification : hot) {
+                    index(notification);
+                }
+                lastSeq = maxSeq;
+                lastMicros = hot.isEmpty() ? 0 : hot.get(hot.size() - 1).sentAtMicros();
+                writtenSeq = maxSeq;
+                if (clusterEventBus.isEnabled()) {
+                    initSequence(maxSeq);
+                }
+                System.out.println("🔔 Notification store: seq " + maxSeq + ", " + hot.size() + " hot notifications");
+            } catch (Exception e) {
+                // No table yet (first start) or database down. Seed the sequence from the clock so it
+                // stays above any seq already in the table and INSERT IGNORE can't swallow new rows.
+                lastSeq = Math.max(lastSeq, System.currentTimeMillis());
+                System.err.println("⚠️ Warning loading notifications, seq starts at " + lastSeq + ": "
+                        + e.getMessage());
+            }
+            loaded = true;
+        }
+    }
+
+    // Never hand out a seq below what the table already holds
+    private void initSequence(long maxSeq) {
+        jdbcTemplate.update("INSERT INTO cluster_sequences (name, current_value) VALUES ('notification', ?) " +
+                "ON DUPLICATE KEY UPDATE current_value = GREATEST(current_value, VALUES(current_value))", maxSeq);
+    }
+
+    private void write(List<Notification> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        List<Object[]> targets = new ArrayList<>();
+        for (Notification n : batch) {
+            rows.add(new Object[] { n.seq(), n.id(), n.title(), n.message(), n.type(), n.targetUsers(),
+                    n.targetUserIds().isEmpty() ? null : String.join(",", n.targetUserIds()), n.imageUrl(),
+                    n.actionUrl(), Timestamp.valueOf(toLocalDateTime(n.sentAtMicros())) });
+            if (!n.isBroadcast()) {
+                for (String phone : n.targetUserIds()) {
+                    targets.add(new Object[] { phone, n.seq() });
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        if (!targets.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_TARGET_SQL, targets);
+        }
+    }
+
+    // Drop the oldest written notifications until the window fits its count and age
+    private void evict() {
+        long cutoffMicros = micros(LocalDateTime.now().minusMinutes(hotMaxAgeMinutes));
+        Map.Entry<Long, Notification> oldest;
+        while ((oldest = all.firstEntry()) != null && oldest.getKey() <= writtenSeq
+                && (all.size() > hotMaxCount || oldest.getValue().sentAtMicros() < cutoffMicros)) {
+            Notification notification = oldest.getValue();
+            // Publish the new bound before removing, so readers never see a gap
+            evictedMicros = notification.sentAtMicros();
+            evictedSeq = notification.seq();
+            firstSeqAtMicros.headMap(notification.sentAtMicros(), true).clear();
+            if (notification.isBroadcast()) {
+                broadcasts.remove(notification.seq());
+            } else {
+                for (String phone : notification.targetUserIds()) {
+                    byPhone.computeIfPresent(phone, (k, map) -> {
+                        map.remove(notification.seq());
+                        return map.isEmpty() ? null : map;
+                    });
+                }
+            }
+            all.remove(notification.seq());
+        }
+    }
+
+    private List<Notification> fromMemory(long afterSeq, String phone) {
+        Iterator<Notification> b = broadcasts.tailMap(afterSeq, false).values().iterator();
+        NavigableMap<Long, Notification> targeted = phone != null ? byPhone.get(phone) : null;
+        Iterator<Notification> t = targeted != null
+                ? targeted.tailMap(afterSeq, false).values().iterator()
+                : List.<Notification>of().iterator();
+
+        List<Notification> result = new ArrayList<>();
+        Notification nb = b.hasNext() ? b.next() : null;
+        Notification nt = t.hasNext() ? t.next() : null;
+        while (nb != null || nt != null) {
+            if (nt == null || (nb != null && nb.seq() < nt.seq())) {
+                result.add(nb);
+                nb = b.hasNext() ? b.next() : null;
+            } else {
+                result.add(nt);
+                nt = t.hasNext() ? t.next() : null;
+            }
+        }
+        return result;
+    }
+
+    private List<Notification> fromTable(long afterSeq, long upToSeq, String phone, int limit) {
+        if (phone == null) {
+            return jdbcTemplate.query(BROADCASTS_BETWEEN + " ORDER BY n.seq LIMIT ?", (rs, i) -> toNotification(rs),
+                    afterSeq, upToSeq, limit);
+        }
+        return jdbcTemplate.query("(" + BROADCASTS_BETWEEN + ") UNION ALL (" + TARGETED_BETWEEN + ") " +
+                "ORDER BY seq LIMIT ?", (rs, i) -> toNotification(rs),
+                afterSeq, upToSeq, phone, afterSeq, upToSeq, limit);
+    }
+
+    // Time index last, so a reader that finds the timestamp also finds the notification
+    private void index(Notification notification) {
+        all.put(notification.seq(), notification);
+        if (notification.isBroadcast()) {
+            broadcasts.put(notification.seq(), notification);
+        } else {
+            for (String phone : notification.targetUserIds()) {
+                byPhone.computeIfAbsent(phone, k -> new ConcurrentSkipListMap<>())
+                        .put(notification.seq(), notification);
+            }
+        }
+        // Nodes can still collide on a time; keep the lowest seq so "since" never skips one
+        firstSeqAtMicros.merge(notification.sentAtMicros(), notification.seq(), Math::min);
+    }
+
+    private static Notification toNotification(ResultSet rs) throws SQLException {
+        LocalDateTime sentAt = rs.getTimestamp(10).toLocalDateTime();
+        String phones = rs.getString(7);
+        return new Notification(rs.getString(2), rs.getLong(1), rs.getString(3), rs.getString(4), rs.getString(5),
+                rs.getString(6), phones == null || phones.isEmpty() ? List.of() : Arrays.asList(phones.split(",")),
+                rs.getString(8), rs.getString(9), sentAt.format(DateTimeFormatter.ISO_DATE_TIME), micros(sentAt),
+                true);
+    }
+
+    private static long micros(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, time.atZone(ZONE).toInstant());
+    }
+
+    private static LocalDateTime toLocalDateTime(long micros) {
+        return LocalDateTime.ofInstant(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), ZONE);
+    }
+}
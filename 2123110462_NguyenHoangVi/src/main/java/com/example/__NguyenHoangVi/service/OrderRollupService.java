@@ -0,0 +1,567 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Order;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hourly and daily order rollups for the admin dashboard.
+ *
+ * Every order adds one to the count and its totalAmount to the revenue of
+ * its hour and its day, overall and per payment method, channel and status;
+ * a status change moves it from one status row to the other. The deltas are
+ * summed in memory once the order commits and written by a scheduled flush
+ * with one batched INSERT ... ON DUPLICATE KEY UPDATE (additive, so several
+ * nodes can flush into the same rows).
+ *
+ * A dashboard over a year reads ~365 day rows (plus the hour rows of the
+ * partial days at the edges) instead of scanning orders. The table is
+ * backfilled once, from one GROUP BY pass over orders, when it is empty at
+ * startup; rebuild() redoes that after manual edits to orders.
+ *
+ * The pass reads one REPEATABLE READ snapshot, up to the highest order id
+ * in it. Changes recorded while it runs stay pending, except those the
+ * snapshot already has: an order creation is in it if the order is, a
+ * status move if the snapshot's status is past the move. Other nodes'
+ * unflushed deltas cannot be matched against that snapshot, so with
+ * cluster.enabled the rebuild is refused; run it (or the first backfill)
+ * on a single node.
+ */
+@Service
+public class OrderRollupService {
+
+    public static final String HOUR = "hour";
+    public static final String DAY = "day";
+
+    private static final String ALL = "all";
+    private static final String PAYMENT = "payment";
+    private static final String CHANNEL = "channel";
+    private static final String STATUS = "status";
+    private static final String CANCELLED = "cancelled";
+    private static final String[] GRANULARITIES = { HOUR, DAY };
+    private static final int MAX_POINTS = 5000;
+    private static final int BATCH = 1000;
+
+    private static final String UPSERT_SQL = "INSERT INTO order_rollups " +
+            "(granularity, bucket_start, dimension, dim_value, order_count, revenue, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, NOW()) ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), " +
+            "revenue = revenue + VALUES(revenue), updated_at = VALUES(updated_at)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Value("${orders.rollups.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    private record Key(String granularity, LocalDateTime bucket, String dimension, String value) {
+    }
+
+    private static final class Delta {
+        final LongAdder orders = new LongAdder();
+        final LongAdder revenueMinor = new LongAdder(); // 1/100 of the currency unit
+    }
+
+    // One committed change of one order; from is null for its creation
+    private record Change(long orderId, String from, String to, Map<Key, long[]> deltas) {
+    }
+
+    // Recorders take the read lock, flush swaps the map under the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile ConcurrentHashMap<Key, Delta> pending = new ConcurrentHashMap<>();
+    private volatile ConcurrentLinkedQueue<Change> duringRebuild; // changes recorded during a pass, null otherwise
+    private TransactionTemplate snapshotRead;
+
+    @PostConstruct
+    public void init() {
+        snapshotRead = new TransactionTemplate(transactionManager);
+        snapshotRead.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        snapshotRead.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        try {
+            List<Integer> any = jdbcTemplate.queryForList("SELECT 1 FROM order_rollups LIMIT 1", Integer.class);
+            if (any.isEmpty()) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning backfilling order rollups: " + e.getMessage());
+        }
+    }
+
+    // Count a new order once its transaction commits
+    public void orderCreated(Order order) {
+        LocalDateTime createdAt = order.getCreatedAt();
+        if (createdAt == null) {
+            return;
+        }
+        long minor = toMinor(order.getTotalAmount());
+        String payment = value(order.getPaymentMethod());
+        String channel = value(order.getOrderChannel());
+        String status = value(order.getStatus());
+        Map<Key, long[]> deltas = new HashMap<>();
+        for (String granularity : GRANULARITIES) {
+            LocalDateTime bucket = bucket(granularity, createdAt);
+            sum(deltas, new Key(granularity, bucket, ALL, ""), 1, minor);
+            sum(deltas, new Key(granularity, bucket, PAYMENT, payment), 1, minor);
+            sum(deltas, new Key(granularity, bucket, CHANNEL, channel), 1, minor);
+            sum(deltas, new Key(granularity, bucket, STATUS, status), 1, minor);
+        }
+        Long orderId = order.getId();
+        afterCommit(() -> record(orderId, null, status, deltas));
+    }
+
+    // Move the order from its old status row to the new one (in its creation hour/day)
+    public void statusChanged(Order order, String oldStatus) {
+        LocalDateTime createdAt = order.getCreatedAt();
+        String from = value(oldStatus);
+        String to = value(order.getStatus());
+        if (createdAt == null || from.equals(to)) {
+            return;
+        }
+        long minor = toMinor(order.getTotalAmount());
+        Map<Key, long[]> deltas = new HashMap<>();
+        for (String granularity : GRANULARITIES) {
+            LocalDateTime bucket = bucket(granularity, createdAt);
+            sum(deltas, new Key(granularity, bucket, STATUS, from), -1, -minor);
+            sum(deltas, new Key(granularity, bucket, STATUS, to), 1, minor);
+        }
+        Long orderId = order.getId();
+        afterCommit(() -> record(orderId, from, to, deltas));
+    }
+
+    @Scheduled(fixedDelayString = "${orders.rollups.flush-ms:2000}")
+    public synchronized int flush() {
+        Map<Key, Delta> batch = swap();
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (Map.Entry<Key, Delta> entry : batch.entrySet()) {
+            long orders = entry.getValue().orders.sum();
+            long minor = entry.getValue().revenueMinor.sum();
+            if (orders != 0 || minor != 0) {
+                rows.add(row(entry.getKey(), orders, minor));
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning saving order rollups: " + e.getMessage());
+            requeue(batch);
+        }
+        return rows.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Recompute every rollup row from orders: one GROUP BY pass (streamed)
+     * by hour, payment method, channel and status over a snapshot, expanded
+     * into the rollup rows and swapped in within one transaction. Deltas
+     * recorded before the pass are dropped (the snapshot includes them);
+     * later ones are kept unless the snapshot already has them.
+     *
+     * @return number of rollup rows written
+     */
+    public synchronized int rebuild() {
+        if (clusterEventBus.isEnabled()) {
+            throw new IllegalStateException("Không thể tính lại bảng tổng hợp khi chạy nhiều node (cluster.enabled=true)");
+        }
+        long t0 = System.currentTimeMillis();
+        Map<Key, Delta> dropped;
+        lock.writeLock().lock();
+        try {
+            dropped = pending;
+            pending = new ConcurrentHashMap<>();
+            duringRebuild = new ConcurrentLinkedQueue<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            Map<Key, long[]> totals = new HashMap<>();
+            Map<Key, long[]> counted = new HashMap<>();
+            long[] stats = snapshotRead.execute(status -> scanOrders(totals, counted));
+            int rows = replaceAll(totals);
+            for (Map.Entry<Key, long[]> entry : counted.entrySet()) {
+                add(entry.getKey(), -entry.getValue()[0], -entry.getValue()[1]);
+            }
+            System.out.println("📊 Order rollups rebuilt from " + stats[0] + " orders up to #" + stats[1] + ": "
+                    + rows + " rows, " + stats[2] + " concurrent changes already counted, in "
+                    + (System.currentTimeMillis() - t0) + " ms");
+            return rows;
+        } catch (RuntimeException e) {
+            duringRebuild = null;
+            requeue(dropped); // the old rows stay, so they still need these
+            throw e;
+        }
+    }
+
+    /**
+     * GROUP BY pass into totals, then the deltas of changes recorded since
+     * the swap that the same snapshot already has into counted.
+     *
+     * @return orders read, watermark (highest order id), changes counted
+     */
+    private long[] scanOrders(Map<Key, long[]> totals, Map<Key, long[]> counted) {
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        Long max = streaming.queryForObject("SELECT COALESCE(MAX(id), 0) FROM orders", Long.class);
+        long watermark = max != null ? max : 0;
+        long[] orders = { 0 };
+        streaming.query("SELECT DATE_FORMAT(created_at, '%Y-%m-%d %H:00:00'), payment_method, order_channel, status, " +
+                "COUNT(*), ROUND(SUM(COALESCE(total_amount, 0)) * 100) FROM orders WHERE created_at IS NOT NULL " +
+                "AND id <= ? GROUP BY 1, 2, 3, 4", rs -> {
+                    LocalDateTime hour = Timestamp.valueOf(rs.getString(1)).toLocalDateTime();
+                    String payment = value(rs.getString(2));
+                    String channel = value(rs.getString(3));
+                    String status = value(rs.getString(4));
+                    long count = rs.getLong(5);
+                    long minor = rs.getLong(6);
+                    for (String granularity : GRANULARITIES) {
+                        LocalDateTime bucket = bucket(granularity, hour);
+                        sum(totals, new Key(granularity, bucket, ALL, ""), count, minor);
+                        sum(totals, new Key(granularity, bucket, PAYMENT, payment), count, minor);
+                        sum(totals, new Key(granularity, bucket, CHANNEL, channel), count, minor);
+                        sum(totals, new Key(granularity, bucket, STATUS, status), count, minor);
+                    }
+                    orders[0] += count;
+                }, watermark);
+
+        // Stop recording; anything committing from here on is past the snapshot
+        List<Change> changes;
+        lock.writeLock().lock();
+        try {
+            changes = new ArrayList<>(duringRebuild);
+            duringRebuild = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Long, List<Change>> byOrder = new LinkedHashMap<>();
+        for (Change change : changes) {
+            if (change.orderId() <= watermark) {
+                byOrder.computeIfAbsent(change.orderId(), k -> new ArrayList<>()).add(change);
+            }
+        }
+        Map<Long, String> statuses = snapshotStatuses(jdbcTemplate, byOrder.keySet());
+        long included = 0;
+        for (Map.Entry<Long, List<Change>> entry : byOrder.entrySet()) {
+            String status = statuses.get(entry.getKey());
+            int k = countedPrefix(entry.getValue(), status);
+            for (int i = 0; i < k; i++) {
+                entry.getValue().get(i).deltas().forEach((key, d) -> sum(counted, key, d[0], d[1]));
+            }
+            included += k;
+        }
+        return new long[] { orders[0], watermark, included };
+    }
+
+    private int replaceAll(Map<Key, long[]> totals) {
+        List<Object[]> rows = new ArrayList<>(totals.size());
+        for (Map.Entry<Key, long[]> entry : totals.entrySet()) {
+            rows.add(row(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM order_rollups");
+            for (int from = 0; from < rows.size(); from += BATCH) {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, rows.subList(from, Math.min(from + BATCH, rows.size())));
+            }
+        });
+        return rows.size();
+    }
+
+    // Status of each order as the snapshot has it; orders it doesn't have are absent
+    private static Map<Long, String> snapshotStatuses(JdbcTemplate template, Set<Long> orderIds) {
+        Map<Long, String> statuses = new HashMap<>();
+        List<Long> ids = new ArrayList<>(orderIds);
+        for (int from = 0; from < ids.size(); from += BATCH) {
+            List<Long> chunk = ids.subList(from, Math.min(from + BATCH, ids.size()));
+            String in = String.join(",", chunk.stream().map(String::valueOf).toList());
+            template.query("SELECT id, status FROM orders WHERE created_at IS NOT NULL AND id IN (" + in + ")", rs -> {
+                statuses.put(rs.getLong(1), value(rs.getString(2)));
+            });
+        }
+        return statuses;
+    }
+
+    /**
+     * How many of an order's changes (in commit order) the snapshot already
+     * has: the shortest prefix that leaves the order in the snapshot's
+     * status. Any prefix that does gives the same totals.
+     */
+    private static int countedPrefix(List<Change> changes, String snapshotStatus) {
+        if (snapshotStatus == null) {
+            return 0; // not in the snapshot at all
+        }
+        String state = changes.get(0).from(); // null: the order did not exist yet
+        for (int k = 0; k <= changes.size(); k++) {
+            if (snapshotStatus.equals(state)) {
+                return k;
+            }
+            if (k < changes.size()) {
+                state = changes.get(k).to();
+            }
+        }
+        return changes.size(); // status changed outside this node, e.g. a manual edit
+    }
+
+    /**
+     * Orders and revenue in [from, to) (hour precision, null = unbounded),
+     * overall and per status, payment method and channel. Whole days come
+     * from day rows, the partial days at the edges from hour rows.
+     * netRevenue leaves out cancelled orders.
+     */
+    public Map<String, Object> summary(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from != null ? from.truncatedTo(ChronoUnit.HOURS) : null;
+        LocalDateTime end = to != null ? ceil(to, ChronoUnit.HOURS) : null;
+        LocalDateTime dayStart = start != null ? ceil(start, ChronoUnit.DAYS) : null;
+        LocalDateTime dayEnd = end != null ? end.truncatedTo(ChronoUnit.DAYS) : null;
+
+        List<String> ranges = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (dayStart == null || dayEnd == null || dayStart.isBefore(dayEnd)) {
+            range(ranges, args, DAY, dayStart, dayEnd);
+            if (start != null && start.isBefore(dayStart)) {
+                range(ranges, args, HOUR, start, dayStart);
+            }
+            if (end != null && dayEnd.isBefore(end)) {
+                range(ranges, args, HOUR, dayEnd, end);
+            }
+        } else {
+            range(ranges, args, HOUR, start, end); // within one day
+        }
+
+        Map<String, Map<String, Object>> byStatus = new TreeMap<>();
+        Map<String, Map<String, Object>> byPayment = new TreeMap<>();
+        Map<String, Map<String, Object>> byChannel = new TreeMap<>();
+        long[] orders = { 0 };
+        BigDecimal[] revenue = { BigDecimal.ZERO };
+        BigDecimal[] cancelled = { BigDecimal.ZERO };
+        jdbcTemplate.query("SELECT dimension, dim_value, SUM(order_count), SUM(revenue) FROM order_rollups WHERE "
+                + String.join(" OR ", ranges) + " GROUP BY dimension, dim_value", rs -> {
+                    String dimension = rs.getString(1);
+                    String value = rs.getString(2);
+                    long count = rs.getLong(3);
+                    BigDecimal amount = rs.getBigDecimal(4) != null ? rs.getBigDecimal(4) : BigDecimal.ZERO;
+                    switch (dimension) {
+                        case ALL -> {
+                            orders[0] = count;
+                            revenue[0] = amount;
+                        }
+                        case STATUS -> {
+                            byStatus.put(value, entry(count, amount));
+                            if (CANCELLED.equals(value)) {
+                                cancelled[0] = amount;
+                            }
+                        }
+                        case PAYMENT -> byPayment.put(value, entry(count, amount));
+                        case CHANNEL -> byChannel.put(value, entry(count, amount));
+                        default -> {
+                        }
+                    }
+                }, args.toArray());
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("from", start);
+        summary.put("to", end);
+        summary.put("orders", orders[0]);
+        summary.put("revenue", revenue[0].doubleValue());
+        summary.put("netRevenue", revenue[0].subtract(cancelled[0]).doubleValue());
+        summary.put("byStatus", byStatus);
+        summary.put("byPaymentMethod", byPayment);
+        summary.put("byChannel", byChannel);
+        return summary;
+    }
+
+    /**
+     * One point per hour or day in [from, to), empty buckets included, from
+     * the overall rollup rows.
+     */
+    public List<Map<String, Object>> series(String granularity, LocalDateTime from, LocalDateTime to) {
+        ChronoUnit unit = DAY.equals(granularity) ? ChronoUnit.DAYS : ChronoUnit.HOURS;
+        LocalDateTime start = from.truncatedTo(unit);
+        LocalDateTime end = ceil(to, unit);
+        if (unit.between(start, end) > MAX_POINTS) {
+            throw new IllegalArgumentException("Tối đa " + MAX_POINTS + " điểm dữ liệu mỗi lần truy vấn");
+        }
+        Map<LocalDateTime, Object[]> points = new HashMap<>();
+        jdbcTemplate.query("SELECT bucket_start, order_count, revenue FROM order_rollups WHERE granularity = ? " +
+                "AND bucket_start >= ? AND bucket_start < ? AND dimension = 'all' AND dim_value = ''", rs -> {
+                    points.put(rs.getTimestamp(1).toLocalDateTime(),
+                            new Object[] { rs.getLong(2), rs.getBigDecimal(3).doubleValue() });
+                }, unit == ChronoUnit.DAYS ? DAY : HOUR, Timestamp.valueOf(start), Timestamp.valueOf(end));
+
+        List<Map<String, Object>> series = new ArrayList<>();
+        for (LocalDateTime bucket = start; bucket.isBefore(end); bucket = bucket.plus(1, unit)) {
+            Object[] point = points.getOrDefault(bucket, new Object[] { 0L, 0.0 });
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("date", unit == ChronoUnit.DAYS ? bucket.toLocalDate().toString() : bucket.toString());
+            entry.put("orders", point[0]);
+            entry.put("revenue", point[1]);
+            series.add(entry);
+        }
+        return series;
+    }
+
+    private Map<Key, Delta> swap() {
+        lock.writeLock().lock();
+        try {
+            Map<Key, Delta> batch = pending;
+            pending = new ConcurrentHashMap<>();
+            return batch;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void requeue(Map<Key, Delta> batch) {
+        for (Map.Entry<Key, Delta> entry : batch.entrySet()) {
+            add(entry.getKey(), entry.getValue().orders.sum(), entry.getValue().revenueMinor.sum());
+        }
+    }
+
+    // Add a committed change, and keep it for the rebuild pass running meanwhile (if any)
+    private void record(Long orderId, String from, String to, Map<Key, long[]> deltas) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Key, long[]> entry : deltas.entrySet()) {
+                add(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            }
+            ConcurrentLinkedQueue<Change> recording = duringRebuild;
+            if (recording != null && orderId != null) {
+                recording.add(new Change(orderId, from, to, deltas));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(Key key, long orders, long minor) {
+        lock.readLock().lock();
+        try {
+            Delta delta = pending.computeIfAbsent(key, k -> new Delta());
+            delta.orders.add(orders);
+            delta.revenueMinor.add(minor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    private static void sum(Map<Key, long[]> totals, Key key, long orders, long minor) {
+        long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+        total[0] += orders;
+        total[1] += minor;
+    }
+
+    private static void range(List<String> ranges, List<Object> args, String granularity, LocalDateTime from,
+            LocalDateTime to) {
+        StringBuilder sql = new StringBuilder("(granularity = ?");
+        args.add(granularity);
+        if (from != null) {
+            sql.append(" AND bucket_start >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND bucket_start < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        ranges.add(sql.append(")").toString());
+    }
+
+    private static Object[] row(Key key, long orders, long minor) {
+        return new Object[] { key.granularity(), Timestamp.valueOf(key.bucket()), key.dimension(), key.value(),
+                orders, BigDecimal.valueOf(minor, 2) };
+    }
+
+    private static Map<String, Object> entry(long orders, BigDecimal revenue) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("orders", orders);
+        entry.put("revenue", revenue.doubleValue());
+        return entry;
+    }
+
+    private static LocalDateTime bucket(String granularity, LocalDateTime time) {
+        return time.truncatedTo(DAY.equals(granularity) ? ChronoUnit.DAYS : ChronoUnit.HOURS);
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime floor = time.truncatedTo(unit);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+
+    private static long toMinor(Double amount) {
+        return amount != null ? Math.round(amount * 100) : 0;
+    }
+
+    // Dimension values as stored: lower case, "unknown" when missing
+    private static String value(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return "unknown";
+        }
+        String value = raw.trim().toLowerCase(Locale.ROOT);
+        return value.length() > 50 ? value.substring(0, 50) : value;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Promotion;
+
+/**
+ * Hook for caches that depend on promotion windows. PromotionScheduler calls
+ * prewarm a configurable lead time before startDate, then onActivated at
+ * startDate and onExpired at endDate.
+ */
+public interface PromotionLifecycleListener {
+
+    default void prewarm(Promotion promotion) {
+    }
+
+    default void onActivated(Promotion promotion) {
+    }
+
+    default void onExpired(Promotion promotion) {
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Promotion;
+import com.example.__NguyenHoangVi.repository.PromotionRepository;
+import com.example.__NguyenHoangVi.repository.PromotionUsageShardRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current compiled PromotionRuleSet and the list of promotions live
+ * right now. Readers never lock or query; writers rebuild and swap the
+ * references atomically. PromotionScheduler drives recompiles and flips the
+ * active list exactly at window boundaries.
+ */
+@Service
+public class PromotionPricingEngine implements PromotionLifecycleListener {
+
+    @Autowired
+    private PromotionRepository promotionRepository;
+
+    @Autowired
+    private PromotionUsageShardRepository shardRepository;
+
+    private final AtomicReference<PromotionRuleSet> ruleSet = new AtomicReference<>(PromotionRuleSet.EMPTY);
+    private volatile List<Promotion> activeSnapshot = List.of();
+
+    /**
+     * Rebuild from the database and publish; concurrent calls serialize so
+     * the latest load wins. Returns the promotions that were compiled.
+     */
+    public synchronized List<Promotion> recompile() {
+        List<Promotion> active = promotionRepository.findByIsActive(true);
+        addShardUsage(active);
+        PromotionRuleSet compiled = PromotionRuleSet.compile(active);
+        ruleSet.set(compiled);
+        activeSnapshot = compiled.activeAt(System.currentTimeMillis());
+        return active;
+    }
+
+    // Sharded promotions keep live usage in promotion_usage_shards; fold it in so exhausted ones drop out
+    private void addShardUsage(List<Promotion> promotions) {
+        if (promotions.stream().noneMatch(p -> p.getUsageShards() != null && p.getUsageShards() > 1)) {
+            return;
+        }
+        Map<Long, Long> used = new HashMap<>();
+        for (Object[] row : shardRepository.sumUsedByPromotion()) {
+            used.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+        for (Promotion p : promotions) {
+            Long shardUsed = used.get(p.getId());
+            if (shardUsed != null && p.getUsageShards() != null && p.getUsageShards() > 1) {
+                int base = p.getUsageCount() != null ? p.getUsageCount() : 0;
+                p.setUsageCount(base + shardUsed.intValue());
+            }
+        }
+    }
+
+    // Recompute which promotions are live without touching the database
+    public void refreshActive() {
+        activeSnapshot = ruleSet.get().activeAt(System.currentTimeMillis());
+    }
+
+    public PromotionRuleSet current() {
+        return ruleSet.get();
+    }
+
+    public PromotionRuleSet.Result best(BigDecimal subtotal) {
+        return ruleSet.get().best(subtotal, System.currentTimeMillis());
+    }
+
+    public PromotionRuleSet.Result forCode(String code, BigDecimal subtotal) {
+        return ruleSet.get().forCode(code, subtotal, System.currentTimeMillis());
+    }
+
+    public List<Promotion> activePromotions() {
+        return activeSnapshot;
+    }
+
+    // Load fresh rows before the start instant so the flip itself is a pointer swap
+    @Override
+    public void prewarm(Promotion promotion) {
+        recompile();
+    }
+
+    @Override
+    public void onActivated(Promotion promotion) {
+        refreshActive();
+    }
+
+    @Override
+    public void onExpired(Promotion promotion) {
+        refreshActive();
+    }
+}
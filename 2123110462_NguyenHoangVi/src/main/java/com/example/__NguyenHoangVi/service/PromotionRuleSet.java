@@ -0,0 +1,190 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Promotion;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, compiled form of the promotions table used for cart pricing.
+ *
+ * Rules are stored column-wise in primitive arrays sorted by minPurchase, so
+ * "which rules does this subtotal qualify for" is a binary search giving a
+ * prefix, and evaluation is a tight loop over that prefix with no boxing,
+ * BigDecimal or database access. Money is kept in minor units (x100).
+ */
+public final class PromotionRuleSet {
+
+    public static final PromotionRuleSet EMPTY = compile(List.of());
+
+    private static final byte PERCENTAGE = 0;
+    private static final byte FIXED = 1;
+
+    // Column arrays, index = rule, sorted by minPurchase ascending
+    private final long[] ids;
+    private final byte[] types;
+    private final long[] values; // percentage x100 (10.5% -> 1050) or fixed amount in minor units
+    private final long[] maxDiscounts; // minor units, Long.MAX_VALUE = uncapped
+    private final long[] minPurchases; // minor units
+    private final long[] startMillis;
+    private final long[] endMillis;
+    private final String[] codes;
+    private final Map<String, Integer> indexByCode;
+    private final List<Promotion> promotions; // detached snapshots, same order
+
+    public record Result(Long promotionId, String code, BigDecimal discount, BigDecimal total) {
+    }
+
+    private PromotionRuleSet(List<Promotion> sorted) {
+        int n = sorted.size();
+        ids = new long[n];
+        types = new byte[n];
+        values = new long[n];
+        maxDiscounts = new long[n];
+        minPurchases = new long[n];
+        startMillis = new long[n];
+        endMillis = new long[n];
+        codes = new String[n];
+        indexByCode = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            Promotion p = sorted.get(i);
+            ids[i] = p.getId() != null ? p.getId() : 0L;
+            types[i] = "fixed".equalsIgnoreCase(p.getDiscountType()) ? FIXED : PERCENTAGE;
+            values[i] = toMinor(p.getDiscountValue());
+            maxDiscounts[i] = p.getMaxDiscount() != null && p.getMaxDiscount().signum() > 0
+                    ? toMinor(p.getMaxDiscount())
+                    : Long.MAX_VALUE;
+            minPurchases[i] = toMinor(p.getMinPurchase());
+            startMillis[i] = p.getStartDate() != null ? toMillis(p.getStartDate()) : Long.MIN_VALUE;
+            endMillis[i] = p.getEndDate() != null ? toMillis(p.getEndDate()) : Long.MAX_VALUE;
+            codes[i] = p.getCode();
+            if (p.getCode() != null) {
+                indexByCode.put(p.getCode(), i);
+            }
+        }
+        promotions = Collections.unmodifiableList(new ArrayList<>(sorted));
+    }
+
+    /**
+     * Compile active promotions that still have usage left. Validity windows
+     * are checked at evaluation time so upcoming promotions can be included.
+     */
+    public static PromotionRuleSet compile(List<Promotion> promotions) {
+        List<Promotion> eligible = new ArrayList<>();
+        for (Promotion p : promotions) {
+            if (!Boolean.TRUE.equals(p.getIsActive()) || p.getDiscountValue() == null) {
+                continue;
+            }
+            if (p.getUsageLimit() != null && p.getUsageCount() != null && p.getUsageCount() >= p.getUsageLimit()) {
+                continue;
+            }
+            eligible.add(p);
+        }
+        eligible.sort(Comparator.comparing(p -> p.getMinPurchase() != null ? p.getMinPurchase() : BigDecimal.ZERO));
+        return new PromotionRuleSet(eligible);
+    }
+
+    /**
+     * Best discount over all rules valid at nowMillis for this subtotal.
+     */
+    public Result best(BigDecimal subtotal, long nowMillis) {
+        long amount = toMinor(subtotal);
+        int eligible = upperBound(amount);
+        int bestIdx = -1;
+        long bestDiscount = 0;
+        for (int i = 0; i < eligible; i++) {
+            if (nowMillis < startMillis[i] || nowMillis > endMillis[i]) {
+                continue;
+            }
+            long discount = discount(i, amount);
+            if (discount > bestDiscount) {
+                bestDiscount = discount;
+                bestIdx = i;
+            }
+        }
+        return toResult(bestIdx, amount, bestDiscount);
+    }
+
+    /**
+     * Discount for one promotion code, or a zero-discount result when the code
+     * is unknown, out of its window or below its minimum purchase.
+     */
+    public Result forCode(String code, BigDecimal subtotal, long nowMillis) {
+        long amount = toMinor(subtotal);
+        Integer idx = code != null ? indexByCode.get(code) : null;
+        if (idx == null || amount < minPurchases[idx] || nowMillis < startMillis[idx] || nowMillis > endMillis[idx]) {
+            return toResult(-1, amount, 0);
+        }
+        return toResult(idx, amount, discount(idx, amount));
+    }
+
+    // Compiled snapshot of the promotion with this code, or null
+    public Promotion promotion(String code) {
+        Integer idx = code != null ? indexByCode.get(code) : null;
+        return idx != null ? promotions.get(idx) : null;
+    }
+
+    // Promotions whose window contains nowMillis
+    public List<Promotion> activeAt(long nowMillis) {
+        List<Promotion> active = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (nowMillis >= startMillis[i] && nowMillis <= endMillis[i]) {
+                active.add(promotions.get(i));
+            }
+        }
+        return active;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    private long discount(int i, long amount) {
+        long discount = types[i] == FIXED ? values[i] : amount * values[i] / 10_000L;
+        return Math.min(Math.min(discount, maxDiscounts[i]), amount);
+    }
+
+    // Number of rules with minPurchase <= amount
+    private int upperBound(long amount) {
+        int lo = 0;
+        int hi = minPurchases.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minPurchases[mid] <= amount) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private Result toResult(int idx, long amount, long discount) {
+        BigDecimal discountValue = fromMinor(discount);
+        BigDecimal total = fromMinor(amount - discount);
+        if (idx < 0) {
+            return new Result(null, null, discountValue, total);
+        }
+        return new Result(ids[idx], codes[idx], discountValue, total);
+    }
+
+    public static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static long toMinor(BigDecimal value) {
+        return value == null ? 0L : value.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static BigDecimal fromMinor(long value) {
+        return BigDecimal.valueOf(value, 2);
+    }
+}
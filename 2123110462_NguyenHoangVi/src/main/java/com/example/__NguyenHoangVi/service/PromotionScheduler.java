@@ -0,0 +1,132 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Promotion;
+import com.example.__NguyenHoangVi.util.HierarchicalTimerWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Flips promotions live/expired at the exact start/end instant with a
+ * hierarchical timer wheel, and pre-warms dependent caches a lead time
+ * before each start so the first request of a flash sale hits warm data.
+ *
+ * Call promotionsChanged() after any promotion write: it recompiles the
+ * pricing rules and reschedules all timers, here and (through
+ * ClusterEventBus) on the other nodes.
+ */
+@Service
+public class PromotionScheduler {
+
+    @Autowired
+    private PromotionPricingEngine pricingEngine;
+
+    @Autowired
+    private List<PromotionLifecycleListener> listeners;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Value("${promotions.scheduler.prewarm-lead-ms:30000}")
+    private long prewarmLeadMs;
+
+    @Value("${promotions.scheduler.tick-ms:10}")
+    private long tickMs;
+
+    private HierarchicalTimerWheel wheel;
+    private ExecutorService worker;
+    private final List<HierarchicalTimerWheel.Timeout> scheduled = new ArrayList<>();
+
+    @PostConstruct
+    public void start() {
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "promotion-scheduler-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        wheel = new HierarchicalTimerWheel(tickMs, 512, worker, "promotion-timer-wheel");
+        clusterEventBus.subscribe(ClusterEventBus.PROMOTIONS, payload -> reschedule());
+    }
+
+    @PreDestroy
+    public void stop() {
+        wheel.close();
+        worker.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        try {
+            reschedule();
+            System.out.println("⏰ Promotion scheduler armed with " + scheduledCount() + " timers");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning scheduling promotions: " + e.getMessage());
+        }
+    }
+
+    public void promotionsChanged() {
+        reschedule();
+        clusterEventBus.publish(ClusterEventBus.PROMOTIONS, "");
+    }
+
+    private synchronized void reschedule() {
+        List<Promotion> promotions = pricingEngine.recompile();
+
+        scheduled.forEach(HierarchicalTimerWheel.Timeout::cancel);
+        scheduled.clear();
+
+        long now = System.currentTimeMillis();
+        for (Promotion p : promotions) {
+            if (p.getStartDate() != null) {
+                long start = PromotionRuleSet.toMillis(p.getStartDate());
+                if (start > now) {
+                    scheduled.add(wheel.schedule(Math.max(now, start - prewarmLeadMs),
+                            () -> notify(p, Phase.PREWARM)));
+                    scheduled.add(wheel.schedule(start, () -> notify(p, Phase.ACTIVATED)));
+                }
+            }
+            if (p.getEndDate() != null) {
+                long end = PromotionRuleSet.toMillis(p.getEndDate());
+                if (end > now) {
+                    // Window is inclusive of endDate, so flip just after it
+                    scheduled.add(wheel.schedule(end + 1, () -> notify(p, Phase.EXPIRED)));
+                }
+            }
+        }
+    }
+
+    public synchronized int scheduledCount() {
+        return scheduled.size();
+    }
+
+    private enum Phase {
+        PREWARM, ACTIVATED, EXPIRED
+    }
+
+    private void notify(Promotion p, Phase phase) {
+        for (PromotionLifecycleListener listener : listeners) {
+            try {
+                switch (phase) {
+                    case PREWARM -> listener.prewarm(p);
+                    case ACTIVATED -> listener.onActivated(p);
+                    case EXPIRED -> listener.onExpired(p);
+                }
+            } catch (Exception e) {
+                System.err.println("⚠️ Promotion " + phase + " listener failed for " + p.getCode() + ": "
+                        + e.getMessage());
+            }
+        }
+        if (phase != Phase.PREWARM) {
+            System.out.println("🏷️ Promotion " + p.getCode() + " " + phase.name().toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Promotion;
+import com.example.__NguyenHoangVi.repository.PromotionRepository;
+import com.example.__NguyenHoangVi.repository.PromotionUsageShardRepository;
+import com.example.__NguyenHoangVi.util.ShardedCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Promotion usage accounting that can never pass usage_limit.
+ *
+ * Default mode is a single conditional
+ * UPDATE promotions SET usage_count = usage_count + 1 WHERE ... usage_count < usage_limit,
+ * so the check and the increment are one atomic statement. For flash sales,
+ * where every checkout hits the same row, the promotion can be switched to
+ * sharded mode: the remaining budget is split over N promotion_usage_shards
+ * rows and each use increments one of them conditionally (see
+ * ShardedCounter). promotions.usage_count then holds the usage folded in
+ * before sharding and the live total is usage_count + SUM(shards.used).
+ *
+ * Flash sales with a usage limit are switched to
+ * promotions.flash-sale.usage-shards shards on pre-warm, and their counter
+ * rows are read once so the first checkouts don't start on cold pages.
+ */
+@Service
+public class PromotionUsageService implements PromotionLifecycleListener {
+
+    public static final int MAX_SHARDS = 64;
+
+    @Autowired
+    private PromotionRepository promotionRepository;
+
+    @Autowired
+    private PromotionUsageShardRepository shardRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${promotions.flash-sale.usage-shards:8}")
+    private int flashSaleShards;
+
+    /**
+     * Record one use. Returns false when the usage limit has been reached.
+     */
+    public boolean use(Promotion promotion) {
+        if (tryUse(promotion.getId(), promotion.getUsageShards())) {
+            return true;
+        }
+        // The mode may have been switched under us; retry once with the current one
+        Optional<Promotion> current = promotionRepository.findById(promotion.getId());
+        if (current.isEmpty() || sameMode(promotion.getUsageShards(), current.get().getUsageShards())) {
+            return false;
+        }
+        return tryUse(promotion.getId(), current.get().getUsageShards());
+    }
+
+    /**
+     * Is the whole budget used, in either mode? Callers check this after a
+     * granted use has committed, so the use that takes the last unit drops
+     * the promotion from the rule set once, instead of every rejected attempt
+     * triggering a recompile. One primary-key read, skipped without a limit.
+     */
+    public boolean exhausted(Promotion promotion) {
+        if (promotion.getUsageLimit() == null) {
+            return false;
+        }
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT p.usage_limit IS NOT NULL AND COALESCE(p.usage_count, 0) + " +
+                        "(SELECT COALESCE(SUM(s.used), 0) FROM promotion_usage_shards s WHERE s.promotion_id = p.id) " +
+                        ">= p.usage_limit FROM promotions p WHERE p.id = ?",
+                Boolean.class, promotion.getId()));
+    }
+
+    // Live usage, including uses recorded in shards
+    public int totalUsage(Promotion promotion) {
+        int base = promotion.getUsageCount() != null ? promotion.getUsageCount() : 0;
+        if (!isSharded(promotion.getUsageShards())) {
+            return base;
+        }
+        return base + shardRepository.sumUsed(promotion.getId()).intValue();
+    }
+
+    /**
+     * Switch to sharded mode (shards > 1) or back to the single counter
+     * (shards <= 1). Existing shard usage is folded into usage_count first and
+     * the remaining budget is re-split, so the limit stays exact across the switch.
+     * Returns the usage count after folding.
+     */
+    @Transactional
+    public int setShards(Long promotionId, int shards) {
+        int slotCount = Math.max(1, Math.min(shards, MAX_SHARDS));
+        // Lock the promotion row and its shards so no use lands between the fold and the delete
+        Integer limit = jdbcTemplate.queryForObject(
+                "SELECT usage_limit FROM promotions WHERE id = ? FOR UPDATE", Integer.class, promotionId);
+        List<Integer> used = jdbcTemplate.queryForList(
+                "SELECT used FROM promotion_usage_shards WHERE promotion_id = ? FOR UPDATE", Integer.class, promotionId);
+        int folded = used.stream().mapToInt(Integer::intValue).sum();
+        jdbcTemplate.update("DELETE FROM promotion_usage_shards WHERE promotion_id = ?", promotionId);
+
+        if (slotCount > 1 && limit == null) {
+            throw new IllegalArgumentException("Sharded mode needs a usage limit");
+        }
+        jdbcTemplate.update(
+                "UPDATE promotions SET usage_count = COALESCE(usage_count, 0) + ?, usage_shards = ?, updated_at = ? WHERE id = ?",
+                folded, slotCount > 1 ? slotCount : null, LocalDateTime.now(), promotionId);
+        Integer usageCount = jdbcTemplate.queryForObject(
+                "SELECT usage_count FROM promotions WHERE id = ?", Integer.class, promotionId);
+        if (slotCount == 1) {
+            return usageCount;
+        }
+
+        int[] budgets = ShardedCounter.splitBudget(limit - usageCount, slotCount);
+        List<Object[]> rows = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            rows.add(new Object[] { promotionId, i, budgets[i] });
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO promotion_usage_shards (promotion_id, shard_no, budget, used) VALUES (?, ?, ?, 0)", rows);
+        return usageCount;
+    }
+
+    // Shard the flash sale's usage counter ahead of the rush (once, whichever node gets here first)
+    @Override
+    public void prewarm(Promotion promotion) {
+        if (!"flash_sale".equals(promotion.getPromotionType()) || promotion.getUsageLimit() == null) {
+            return;
+        }
+        Long id = promotion.getId();
+        if (flashSaleShards > 1) {
+            Boolean switched = transactionTemplate.execute(status -> {
+                Integer shards = jdbcTemplate.query("SELECT usage_shards FROM promotions WHERE id = ? FOR UPDATE",
+                        rs -> rs.next() ? (Integer) rs.getObject(1) : null, id);
+                if (isSharded(shards)) {
+                    return false;
+                }
+                setShards(id, flashSaleShards); // joins this transaction
+                return true;
+            });
+            if (Boolean.TRUE.equals(switched)) {
+                System.out.println("🔥 Flash sale " + promotion.getCode() + ": usage counter split into "
+                        + Math.min(flashSaleShards, MAX_SHARDS) + " shards");
+            }
+        }
+        // Pull the counter rows into the buffer pool before the first checkout
+        promotionRepository.findById(id).ifPresent(this::totalUsage);
+    }
+
+    @Transactional
+    public void deleteShards(Long promotionId) {
+        shardRepository.deleteByPromotionId(promotionId);
+    }
+
+    private boolean tryUse(Long promotionId, Integer shards) {
+        if (!isSharded(shards)) {
+            return promotionRepository.incrementUsage(promotionId, LocalDateTime.now()) == 1;
+        }
+        return ShardedCounter.acquire(slot -> shardRepository.tryIncrement(promotionId, slot) == 1, shards);
+    }
+
+    private static boolean isSharded(Integer shards) {
+        return shards != null && shards > 1;
+    }
+
+    private static boolean sameMode(Integer a, Integer b) {
+        return isSharded(a) ? a.equals(b) : !isSharded(b);
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.ProductRatingSummary;
+import com.example.__NguyenHoangVi.repository.ProductRatingSummaryRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rating breakdown per product backed by the product_rating_summary table and
+ * an in-memory cache.
+ *
+ * Writers never recount: each moderation change is turned into a per-star
+ * delta (e.g. approved 4* -> rejected = count_4 - 1) and applied with one
+ * INSERT ... ON DUPLICATE KEY UPDATE. Readers hit the cache, or a single
+ * primary-key lookup on a miss.
+ */
+@Service
+public class RatingSummaryService {
+
+    private static final String UPSERT_DELTA_SQL = "INSERT INTO product_rating_summary " +
+            "(product_id, count_1, count_2, count_3, count_4, count_5, review_count, rating_sum, average_rating, updated_at) "
+            +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, IF(? > 0, ? / ?, 0), NOW()) ON DUPLICATE KEY UPDATE " +
+            "count_1 = count_1 + VALUES(count_1), count_2 = count_2 + VALUES(count_2), " +
+            "count_3 = count_3 + VALUES(count_3), count_4 = count_4 + VALUES(count_4), " +
+            "count_5 = count_5 + VALUES(count_5), review_count = review_count + VALUES(review_count), " +
+            "rating_sum = rating_sum + VALUES(rating_sum), " +
+            "average_rating = IF(review_count > 0, rating_sum / review_count, 0), updated_at = NOW()";
+
+    @Autowired
+    private ProductRatingSummaryRepository summaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Value("${reviews.rating-summary.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    // Only products that have a summary row, so its size is bounded by the catalogue
+    private final Map<Long, RatingSummary> cache = new ConcurrentHashMap<>();
+    // Bumped on every eviction; a load only fills the cache if nothing was evicted while it read
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(ClusterEventBus.RATING_SUMMARY, payload -> {
+            List<Long> ids = new ArrayList<>();
+            for (String id : payload.split(",")) {
+                ids.add(Long.parseLong(id));
+            }
+            evict(ids);
+        });
+    }
+
+    /**
+     * Immutable snapshot; counts[0] is the number of 1-star reviews.
+     */
+    public record RatingSummary(Long productId, long[] counts, long reviewCount, double averageRating) {
+
+        public static RatingSummary empty(Long productId) {
+            return new RatingSummary(productId, new long[5], 0, 0.0);
+        }
+
+        public Map<Integer, Long> breakdown() {
+            Map<Integer, Long> breakdown = new LinkedHashMap<>();
+            for (int i = 1; i <= 5; i++) {
+                breakdown.put(i, counts[i - 1]);
+            }
+            return breakdown;
+        }
+    }
+
+    // Rebuild the table from reviews once at startup (also repairs any drift)
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM product_rating_summary");
+                jdbcTemplate.update("INSERT INTO product_rating_summary " +
+                        "(product_id, count_1, count_2, count_3, count_4, count_5, review_count, rating_sum, average_rating, updated_at) "
+                        +
+                        "SELECT product_id, SUM(rating = 1), SUM(rating = 2), SUM(rating = 3), SUM(rating = 4), " +
+                        "SUM(rating = 5), COUNT(*), SUM(rating), AVG(rating), NOW() " +
+                        "FROM reviews WHERE status = 'approved' AND rating BETWEEN 1 AND 5 GROUP BY product_id");
+            });
+            invalidations.incrementAndGet();
+            cache.clear();
+            System.out.println("⭐ Product rating summaries rebuilt");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning rebuilding rating summaries: " + e.getMessage());
+        }
+    }
+
+    // Cache first, then one primary-key lookup
+    public RatingSummary getSummary(Long productId) {
+        RatingSummary cached = cache.get(productId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = invalidations.get();
+        Optional<ProductRatingSummary> row = summaryRepository.findById(productId);
+        if (row.isEmpty()) {
+            return RatingSummary.empty(productId); // misses are not cached (any id can be asked for)
+        }
+        RatingSummary loaded = toSummary(row.get());
+        fill(stamp, productId, loaded);
+        return loaded;
+    }
+
+    /**
+     * Summaries for many products: cache hits cost nothing, all misses are
+     * loaded with one findAllById (IN query). Products without approved
+     * reviews get an empty summary, which is not cached. Result keeps the
+     * requested order.
+     */
+    public Map<Long, RatingSummary> getSummaries(Collection<Long> productIds) {
+        Map<Long, RatingSummary> result = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long productId : productIds) {
+            RatingSummary cached = cache.get(productId);
+            result.put(productId, cached);
+            if (cached == null) {
+                missing.add(productId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long stamp = invalidations.get();
+            for (ProductRatingSummary row : summaryRepository.findAllById(missing)) {
+                RatingSummary loaded = toSummary(row);
+                fill(stamp, row.getProductId(), loaded);
+                result.put(row.getProductId(), loaded);
+            }
+            for (Long productId : missing) {
+                if (result.get(productId) == null) {
+                    result.put(productId, RatingSummary.empty(productId));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Record that a review moved from one "approved rating" to another.
+     * Pass null for "not approved / not existing". No-op when nothing changed.
+     */
+    public void recordTransition(Long productId, Integer oldApprovedRating, Integer newApprovedRating) {
+        if (productId == null) {
+            return;
+        }
+        long[] delta = new long[5];
+        if (isValidRating(oldApprovedRating)) {
+            delta[oldApprovedRating - 1]--;
+        }
+        if (isValidRating(newApprovedRating)) {
+            delta[newApprovedRating - 1]++;
+        }
+        Map<Long, long[]> deltas = new HashMap<>();
+        deltas.put(productId, delta);
+        applyDeltas(deltas);
+    }
+
+    /**
+     * Apply per-star deltas for many products in one JDBC batch. Cache entries
+     * are evicted after the surrounding transaction commits (immediately when
+     * there is none), so readers never cache a pre-commit row.
+     */
+    public void applyDeltas(Map<Long, long[]> deltas) {
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<Long, long[]> entry : deltas.entrySet()) {
+            long[] d = entry.getValue();
+            long count = 0;
+            long sum = 0;
+            boolean changed = false;
+            for (int i = 0; i < 5; i++) {
+                count += d[i];
+                sum += d[i] * (i + 1);
+                changed |= d[i] != 0;
+            }
+            if (!changed) {
+                continue;
+            }
+            batch.add(new Object[] { entry.getKey(), d[0], d[1], d[2], d[3], d[4], count, sum, count, sum, count });
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPSERT_DELTA_SQL, batch);
+        evictAfterCommit(deltas.keySet());
+    }
+
+    private void evictAfterCommit(Set<Long> productIds) {
+        List<Long> ids = new ArrayList<>(productIds);
+        if (ids.isEmpty()) {
+            return;
+        }
+        // Other nodes evict when the events commit with the counters (50 ids fit in a payload)
+        for (int from = 0; from < ids.size(); from += 50) {
+            clusterEventBus.publish(ClusterEventBus.RATING_SUMMARY, String.join(",",
+                    ids.subList(from, Math.min(from + 50, ids.size())).stream().map(String::valueOf).toList()));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(ids);
+                }
+            });
+        } else {
+            evict(ids);
+        }
+    }
+
+    private void evict(List<Long> ids) {
+        invalidations.incrementAndGet();
+        ids.forEach(cache::remove);
+    }
+
+    // Cache a row read after stamp was taken, unless an eviction happened since (it may predate the change)
+    private void fill(long stamp, Long productId, RatingSummary loaded) {
+        if (invalidations.get() == stamp) {
+            cache.put(productId, loaded);
+            if (invalidations.get() != stamp) {
+                cache.remove(productId, loaded);
+            }
+        }
+    }
+
+    private static boolean isValidRating(Integer rating) {
+        return rating != null && rating >= 1 && rating <= 5;
+    }
+
+    private static RatingSummary toSummary(ProductRatingSummary row) {
+        long[] counts = {
+                row.getCount1(), row.getCount2(), row.getCount3(), row.getCount4(), row.getCount5()
+        };
+        return new RatingSummary(row.getProductId(), counts, row.getReviewCount(), row.getAverageRating());
+    }
+}
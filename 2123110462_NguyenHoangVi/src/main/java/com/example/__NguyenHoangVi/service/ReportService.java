@@ -0,0 +1,416 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.ReportJob;
+import com.example.__NguyenHoangVi.repository.ReportJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Heavy admin reports (sales by period, inventory valuation, review stats)
+ * computed off the request threads.
+ *
+ * submit() saves a job and hands it to a fixed pool of reports.workers
+ * threads with a bounded queue; when the queue is full the request is
+ * refused instead of piling up. Each worker streams its query on its own
+ * connection (so at most reports.workers connections go to reports) and
+ * writes a gzipped CSV to reports.dir, renamed into place when complete.
+ *
+ * A request identical to a job still queued or running on this node (same
+ * type and parameters) gets that job back instead of a new one. Files and
+ * job rows are removed after reports.retention-hours.
+ */
+@Service
+public class ReportService {
+
+    public static final String SALES = "sales";
+    public static final String INVENTORY = "inventory";
+    public static final String REVIEWS = "reviews";
+    public static final Set<String> TYPES = Set.of(SALES, INVENTORY, REVIEWS);
+
+    private static final int MAX_DAYS = 5 * 366;
+
+    @Autowired
+    private ReportJobRepository reportJobRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${reports.dir:data/reports}")
+    private String reportsDir;
+
+    @Value("${reports.workers:2}")
+    private int workerCount;
+
+    @Value("${reports.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${reports.query-timeout-seconds:300}")
+    private int queryTimeoutSeconds;
+
+    @Value("${reports.retention-hours:24}")
+    private int retentionHours;
+
+    @Value("${reports.max-runtime-minutes:60}")
+    private int maxRuntimeMinutes;
+
+    public record Submission(ReportJob job, boolean coalesced) {
+    }
+
+    private ThreadPoolExecutor workers;
+    private final Map<String, Long> inFlight = new ConcurrentHashMap<>(); // type?params -> job id
+    private final Map<Long, AtomicLong> progress = new ConcurrentHashMap<>(); // rows written so far
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threads = new AtomicInteger();
+        int size = Math.max(1, workerCount);
+        workers = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "report-worker-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queue a report, or return the identical one already queued or
+     * running.
+     *
+     * @throws IllegalArgumentException   unknown type or bad parameters
+     * @throws RejectedExecutionException the queue is full
+     */
+    public synchronized Submission submit(String type, Map<String, String> rawParams) {
+        if (type == null || !TYPES.contains(type)) {
+            throw new IllegalArgumentException("type phải là sales, inventory hoặc reviews");
+        }
+        Map<String, String> params = normalize(type, rawParams);
+        String canonical = canonical(params);
+        String key = type + "?" + canonical;
+
+        Long existing = inFlight.get(key);
+        if (existing != null) {
+            ReportJob job = reportJobRepository.findById(existing).orElse(null);
+            if (job != null && ("queued".equals(job.getStatus()) || "running".equals(job.getStatus()))) {
+                return new Submission(job, true);
+            }
+        }
+        if (workers.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Hàng đợi báo cáo đang đầy, vui lòng thử lại sau");
+        }
+
+        ReportJob job = new ReportJob();
+        job.setType(type);
+        job.setParams(canonical);
+        job.setStatus("queued");
+        job.setCreatedAt(LocalDateTime.now());
+        ReportJob saved = reportJobRepository.save(job);
+        inFlight.put(key, saved.getId());
+        try {
+            workers.execute(() -> run(saved, params, key));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, saved.getId());
+            saved.setStatus("failed");
+            saved.setError("Hàng đợi báo cáo đang đầy");
+            reportJobRepository.save(saved);
+            throw e;
+        }
+        System.out.println("📑 Report job " + saved.getId() + " queued: " + key);
+        return new Submission(saved, false);
+    }
+
+    // The finished file of a job, null if it isn't here (expired or made on another node)
+    public Path file(ReportJob job) {
+        Path path = path(job.getId());
+        return Files.isReadable(path) ? path : null;
+    }
+
+    // Rows written so far by a running job, else the final count
+    public long rows(ReportJob job) {
+        AtomicLong live = progress.get(job.getId());
+        return live != null ? live.get() : (job.getRowCount() != null ? job.getRowCount() : 0);
+    }
+
+    public List<ReportJob> recent() {
+        return reportJobRepository.findTop50ByOrderByIdDesc();
+    }
+
+    public Map<String, Object> poolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers.getMaximumPoolSize());
+        stats.put("active", workers.getActiveCount());
+        stats.put("queued", workers.getQueue().size());
+        stats.put("queueCapacity", workers.getQueue().size() + workers.getQueue().remainingCapacity());
+        stats.put("completed", workers.getCompletedTaskCount());
+        return stats;
+    }
+
+    private void run(ReportJob job, Map<String, String> params, String key) {
+        long t0 = System.currentTimeMillis();
+        AtomicLong rows = new AtomicLong();
+        progress.put(job.getId(), rows);
+        Path target = path(job.getId());
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            job.setStatus("running");
+            job.setStartedAt(LocalDateTime.now());
+            reportJobRepository.save(job);
+
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            streaming.setQueryTimeout(queryTimeoutSeconds);
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024), StandardCharsets.UTF_8))) {
+                out.write('\uFEFF'); // BOM so Excel reads the Vietnamese names as UTF-8
+                switch (job.getType()) {
+                    case SALES -> writeSales(streaming, params, out, rows);
+                    case INVENTORY -> writeInventory(streaming, out, rows);
+                    default -> writeReviews(streaming, params, out, rows);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            job.setStatus("completed");
+            job.setFileSize(Files.size(target));
+        } catch (Exception e) {
+            Throwable cause = e instanceof UncheckedIOException && e.getCause() != null ? e.getCause() : e;
+            String error = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+            System.err.println("❌ Report job " + job.getId() + " failed: " + error);
+            job.setStatus("failed");
+            job.setError(error.length() > 1000 ? error.substring(0, 1000) : error);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // Removed by the purge later
+            }
+        } finally {
+            job.setRowCount(rows.get());
+            job.setCompletedAt(LocalDateTime.now());
+            job.setDurationMs(System.currentTimeMillis() - t0);
+            try {
+                reportJobRepository.save(job);
+            } catch (Exception e) {
+                System.err.println("⚠️ Warning saving report job " + job.getId() + ": " + e.getMessage());
+            }
+            inFlight.remove(key, job.getId());
+            progress.remove(job.getId());
+        }
+        if ("completed".equals(job.getStatus())) {
+            System.out.println("📑 Report job " + job.getId() + " completed: " + job.getRowCount() + " rows, "
+                    + job.getFileSize() + " bytes in " + job.getDurationMs() + " ms");
+        }
+    }
+
+    // Orders and revenue per period, channel and payment method
+    private void writeSales(JdbcTemplate streaming, Map<String, String> params, Writer out, AtomicLong rows) {
+        String format = "month".equals(params.get("granularity")) ? "%Y-%m" : "%Y-%m-%d";
+        csv(out, "period", "channel", "payment_method", "orders", "revenue", "cancelled_orders", "net_revenue");
+        long[] orders = { 0, 0 };
+        double[] revenue = { 0, 0 };
+        streaming.query("SELECT DATE_FORMAT(created_at, ?), order_channel, payment_method, COUNT(*), " +
+                "SUM(COALESCE(total_amount, 0)), SUM(LOWER(status) = 'cancelled'), " +
+                "SUM(CASE WHEN LOWER(status) = 'cancelled' THEN 0 ELSE COALESCE(total_amount, 0) END) " +
+                "FROM orders WHERE created_at >= ? AND created_at < ? GROUP BY 1, 2, 3 ORDER BY 1, 2, 3", rs -> {
+                    csv(out, rs.getString(1), rs.getString(2), rs.getString(3), rs.getLong(4), money(rs.getDouble(5)),
+                            rs.getLong(6), money(rs.getDouble(7)));
+                    orders[0] += rs.getLong(4);
+                    orders[1] += rs.getLong(6);
+                    revenue[0] += rs.getDouble(5);
+                    revenue[1] += rs.getDouble(7);
+                    rows.incrementAndGet();
+                }, format, start(params), end(params));
+        csv(out, "TOTAL", "", "", orders[0], money(revenue[0]), orders[1], money(revenue[1]));
+    }
+
+    // Stock value per product at current prices
+    private void writeInventory(JdbcTemplate streaming, Writer out, AtomicLong rows) {
+        csv(out, "product_id", "product", "category", "stock", "unit_price", "stock_value", "stock_status");
+        long[] units = { 0 };
+        double[] value = { 0 };
+        streaming.query("SELECT p.id, p.name, c.name, COALESCE(i.quantity_in_stock, p.stock_quantity, 0), " +
+                "COALESCE(p.price, 0), i.status FROM products p LEFT JOIN categories c ON c.id = p.category_id " +
+                "LEFT JOIN inventory i ON i.product_id = p.id ORDER BY p.id", rs -> {
+                    long stock = rs.getLong(4);
+                    double price = rs.getDouble(5);
+                    csv(out, rs.getLong(1), rs.getString(2), rs.getString(3), stock, money(price),
+                            money(stock * price), rs.getString(6));
+                    units[0] += stock;
+                    value[0] += stock * price;
+                    rows.incrementAndGet();
+                });
+        csv(out, "TOTAL", "", "", units[0], "", money(value[0]), "");
+    }
+
+    // Review counts by status and approved rating distribution per product
+    private void writeReviews(JdbcTemplate streaming, Map<String, String> params, Writer out, AtomicLong rows) {
+        csv(out, "product_id", "product", "reviews", "approved", "pending", "flagged", "rejected", "avg_rating",
+                "stars_5", "stars_4", "stars_3", "stars_2", "stars_1", "last_review_at");
+        streaming.query("SELECT r.product_id, p.name, COUNT(*), SUM(r.status = 'approved'), SUM(r.status = 'pending'), " +
+                "SUM(r.status = 'flagged'), SUM(r.status = 'rejected'), " +
+                "AVG(CASE WHEN r.status = 'approved' THEN r.rating END), " +
+                "SUM(r.status = 'approved' AND r.rating = 5), SUM(r.status = 'approved' AND r.rating = 4), " +
+                "SUM(r.status = 'approved' AND r.rating = 3), SUM(r.status = 'approved' AND r.rating = 2), " +
+                "SUM(r.status = 'approved' AND r.rating = 1), MAX(r.created_at) " +
+                "FROM reviews r LEFT JOIN products p ON p.id = r.product_id " +
+                "WHERE r.created_at >= ? AND r.created_at < ? GROUP BY r.product_id, p.name ORDER BY r.product_id", rs -> {
+                    double avg = rs.getDouble(8);
+                    boolean rated = !rs.wasNull();
+                    Timestamp last = rs.getTimestamp(14);
+                    csv(out, rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getLong(4), rs.getLong(5),
+                            rs.getLong(6), rs.getLong(7), rated ? String.format(Locale.ROOT, "%.2f", avg) : "",
+                            rs.getLong(9), rs.getLong(10), rs.getLong(11), rs.getLong(12), rs.getLong(13),
+                            last != null ? last.toLocalDateTime().toString() : "");
+                    rows.incrementAndGet();
+                }, start(params), end(params));
+    }
+
+    // Fail jobs left queued/running by a node that died, drop expired files and rows
+    @Scheduled(fixedDelayString = "${reports.purge-interval-ms:600000}", initialDelay = 60000)
+    public void purge() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            int stuck = jdbc.update("UPDATE report_jobs SET status = 'failed', error = ?, completed_at = NOW() " +
+                    "WHERE status IN ('queued', 'running') AND created_at < ?",
+                    "Quá thời gian chạy tối đa (máy chủ đã khởi động lại?)",
+                    Timestamp.valueOf(now.minusMinutes(maxRuntimeMinutes)));
+            int expired = jdbc.update("DELETE FROM report_jobs WHERE status IN ('completed', 'failed') AND created_at < ?",
+                    Timestamp.valueOf(now.minusHours(retentionHours)));
+            int files = 0;
+            Path dir = Paths.get(reportsDir);
+            if (Files.isDirectory(dir)) {
+                long cutoff = System.currentTimeMillis() - retentionHours * 3_600_000L;
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "report-*")) {
+                    for (Path entry : entries) {
+                        if (Files.getLastModifiedTime(entry).toMillis() < cutoff && Files.deleteIfExists(entry)) {
+                            files++;
+                        }
+                    }
+                }
+            }
+            if (stuck + expired + files > 0) {
+                System.out.println("🧹 Reports purge: " + stuck + " stuck jobs failed, " + expired + " jobs and "
+                        + files + " files removed");
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning purging reports: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validated parameters with defaults filled in, so identical requests
+     * compare equal: sales takes from/to (dates, to exclusive, last 30 days
+     * by default) and granularity day|month; reviews takes from/to (all
+     * time by default); inventory takes none.
+     */
+    private static Map<String, String> normalize(String type, Map<String, String> raw) {
+        Map<String, String> params = new TreeMap<>();
+        if (INVENTORY.equals(type)) {
+            return params;
+        }
+        LocalDate today = LocalDate.now();
+        String from = raw != null ? raw.get("from") : null;
+        String to = raw != null ? raw.get("to") : null;
+        LocalDate end = to != null && !to.isBlank() ? LocalDate.parse(to.trim()) : today.plusDays(1);
+        LocalDate start = from != null && !from.isBlank() ? LocalDate.parse(from.trim())
+                : SALES.equals(type) ? end.minusDays(30) : LocalDate.of(2000, 1, 1);
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("from phải trước to");
+        }
+        if (SALES.equals(type)) {
+            if (start.plusDays(MAX_DAYS).isBefore(end)) {
+                throw new IllegalArgumentException("Khoảng thời gian tối đa 5 năm");
+            }
+            String granularity = raw != null && raw.get("granularity") != null ? raw.get("granularity").trim() : "day";
+            if (!"day".equals(granularity) && !"month".equals(granularity)) {
+                throw new IllegalArgumentException("granularity phải là day hoặc month");
+            }
+            params.put("granularity", granularity);
+        }
+        params.put("from", start.toString());
+        params.put("to", end.toString());
+        return params;
+    }
+
+    private static String canonical(Map<String, String> params) {
+        StringBuilder sb = new StringBuilder();
+        params.forEach((name, value) -> sb.append(sb.length() > 0 ? "&" : "").append(name).append('=').append(value));
+        return sb.toString();
+    }
+
+    private static Timestamp start(Map<String, String> params) {
+        return Timestamp.valueOf(LocalDate.parse(params.get("from")).atStartOfDay());
+    }
+
+    private static Timestamp end(Map<String, String> params) {
+        return Timestamp.valueOf(LocalDate.parse(params.get("to")).atStartOfDay());
+    }
+
+    private Path path(Long jobId) {
+        return Paths.get(reportsDir, "report-" + jobId + ".csv.gz");
+    }
+
+    private static String money(double amount) {
+        return String.format(Locale.ROOT, "%.2f", amount);
+    }
+
+    // One CSV line; values with separators, quotes or line breaks are quoted
+    private static void csv(Writer out, Object... values) {
+        try {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                String value = values[i] != null ? values[i].toString() : "";
+                if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                        || value.indexOf('\r') >= 0) {
+                    value = '"' + value.replace("\"", "\"\"") + '"';
+                }
+                out.write(value);
+            }
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.util.MinHashLshIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Near-duplicate (spam) detection for new reviews using MinHash over word
+ * 3-shingles and an in-memory LSH index of every stored review that is not
+ * rejected. Reviews under MIN_WORDS words are never flagged or indexed:
+ * short genuine reviews ("Giao hàng nhanh, sản phẩm tốt") repeat verbatim.
+ */
+@Service
+public class ReviewDuplicateDetector {
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final int MIN_WORDS = 8;
+    private static final long SEED = 0x5EED_2024L;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${reviews.duplicates.similarity-threshold:0.7}")
+    private double similarityThreshold;
+
+    private final MinHashLshIndex index = new MinHashLshIndex(SHINGLE_SIZE, MIN_WORDS, SEED);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Stream existing reviews into the index
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        try {
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            streaming.query("SELECT id, content FROM reviews WHERE content IS NOT NULL " +
+                    "AND (status IS NULL OR status <> 'rejected')", rs -> {
+                register(rs.getLong(1), signature(rs.getString(2)));
+            });
+            System.out.println("🔍 Duplicate review index built with " + size() + " reviews");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning building duplicate review index: " + e.getMessage());
+        }
+    }
+
+    // Null when the text is too short to compare
+    public int[] signature(String content) {
+        return index.signature(content);
+    }
+
+    /**
+     * Most similar indexed review above the configured threshold, or null.
+     */
+    public MinHashLshIndex.Match findDuplicate(int[] signature) {
+        if (signature == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return index.findNearDuplicate(signature, similarityThreshold);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void register(long reviewId, int[] signature) {
+        if (signature == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            index.add(reviewId, signature);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index the review's current content, replacing what was indexed for it;
+     * rejected reviews (or content too short to judge) leave the index.
+     */
+    public void reindex(long reviewId, String content, String status) {
+        int[] signature = "rejected".equals(status) ? null : signature(content);
+        lock.writeLock().lock();
+        try {
+            if (signature == null) {
+                index.remove(reviewId);
+            } else {
+                index.add(reviewId, signature);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long reviewId) {
+        lock.writeLock().lock();
+        try {
+            index.remove(reviewId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Review;
+import com.example.__NguyenHoangVi.repository.ReviewRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lease-based moderation queue for pending reviews.
+ *
+ * A moderator claims a batch with SELECT ... FOR UPDATE SKIP LOCKED, so
+ * concurrent claimers never block on or receive each other's rows, and the
+ * batch is stamped with claimed_by + lease_expires_at. Decisions for the whole
+ * batch are applied with one UPDATE per outcome and one batched rating summary
+ * delta; rows whose lease expired or belong to someone else are skipped.
+ */
+@Service
+public class ReviewModerationService {
+
+    public static final int MAX_BATCH_SIZE = 100;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private ReviewDuplicateDetector reviewDuplicateDetector;
+
+    @Value("${reviews.moderation.lease-seconds:300}")
+    private long leaseSeconds;
+
+    public record DecisionResult(List<Long> approved, List<Long> rejected, List<Long> skipped) {
+    }
+
+    /**
+     * Claim up to batchSize pending reviews that are unclaimed or whose lease
+     * has expired. Returns the claimed reviews (full content, for moderation).
+     */
+    @Transactional
+    public List<Review> claim(String moderator, int batchSize) {
+        int limit = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM reviews WHERE status = 'pending' " +
+                        "AND (lease_expires_at IS NULL OR lease_expires_at < ?) " +
+                        "ORDER BY created_at, id LIMIT ? FOR UPDATE SKIP LOCKED",
+                Long.class, Timestamp.valueOf(now), limit);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        namedJdbcTemplate.update(
+                "UPDATE reviews SET claimed_by = :moderator, lease_expires_at = :expires WHERE id IN (:ids)",
+                new MapSqlParameterSource()
+                        .addValue("moderator", moderator)
+                        .addValue("expires", Timestamp.valueOf(now.plusSeconds(leaseSeconds)))
+                        .addValue("ids", ids));
+
+        return reviewRepository.findAllById(ids);
+    }
+
+    /**
+     * Apply approve/reject decisions for reviews this moderator still holds a
+     * valid lease on. decisions maps review id -> "approve" | "reject".
+     */
+    @Transactional
+    public DecisionResult decide(String moderator, Map<Long, String> decisions) {
+        List<Long> approved = new ArrayList<>();
+        List<Long> rejected = new ArrayList<>();
+        List<Long> skipped = new ArrayList<>();
+        if (decisions.isEmpty()) {
+            return new DecisionResult(approved, rejected, skipped);
+        }
+
+        // Lock the rows we may still decide on; anything else is skipped
+        Map<Long, long[]> owned = new HashMap<>(); // id -> {productId, rating}
+        namedJdbcTemplate.query(
+                "SELECT id, product_id, rating FROM reviews WHERE id IN (:ids) AND status = 'pending' " +
+                        "AND claimed_by = :moderator AND lease_expires_at >= :now FOR UPDATE",
+                new MapSqlParameterSource()
+                        .addValue("ids", decisions.keySet())
+                        .addValue("moderator", moderator)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now())),
+                rs -> {
+                    owned.put(rs.getLong(1), new long[] { rs.getLong(2), rs.getInt(3) });
+                });
+
+        Map<Long, long[]> ratingDeltas = new HashMap<>();
+        for (Map.Entry<Long, String> entry : decisions.entrySet()) {
+            long[] row = owned.get(entry.getKey());
+            if (row == null) {
+                skipped.add(entry.getKey());
+            } else if ("approve".equalsIgnoreCase(entry.getValue())) {
+                approved.add(entry.getKey());
+                if (row[1] >= 1 && row[1] <= 5) {
+                    ratingDeltas.computeIfAbsent(row[0], k -> new long[5])[(int) row[1] - 1]++;
+                }
+            } else if ("reject".equalsIgnoreCase(entry.getValue())) {
+                rejected.add(entry.getKey());
+            } else {
+                skipped.add(entry.getKey());
+            }
+        }
+
+        setStatus(approved, "approved");
+        setStatus(rejected, "rejected");
+        ratingSummaryService.applyDeltas(ratingDeltas);
+        rejected.forEach(reviewDuplicateDetector::remove);
+
+        return new DecisionResult(approved, rejected, skipped);
+    }
+
+    // Give unfinished reviews back to the queue
+    @Transactional
+    public int release(String moderator, Set<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return namedJdbcTemplate.update(
+                "UPDATE reviews SET claimed_by = NULL, lease_expires_at = NULL " +
+                        "WHERE id IN (:ids) AND claimed_by = :moderator AND status = 'pending'",
+                new MapSqlParameterSource()
+                        .addValue("ids", new HashSet<>(ids))
+                        .addValue("moderator", moderator));
+    }
+
+    private void setStatus(List<Long> ids, String status) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        namedJdbcTemplate.update(
+                "UPDATE reviews SET status = :status, updated_at = :now, claimed_by = NULL, " +
+                        "lease_expires_at = NULL WHERE id IN (:ids)",
+                new MapSqlParameterSource()
+                        .addValue("status", status)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now()))
+                        .addValue("ids", ids));
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.util.LongHashSet;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Helpful/unhelpful vote counting without touching the reviews row per vote.
+ *
+ * Votes land in LongAdder accumulators inside one of 16 stripes (by review
+ * id). A scheduled flush swaps each stripe's pending map under the stripe's
+ * write lock and writes the deltas with one batched
+ * UPDATE reviews SET helpful_count = helpful_count + ? ... per flush, so a
+ * viral review costs one row update per interval instead of one per vote.
+ * Reads add the pending (and in-flight) deltas to the persisted counts.
+ *
+ * Per-customer dedupe uses a primitive LongHashSet of (reviewId, customerId)
+ * pairs packed into one long; the pairs are also persisted to review_votes
+ * in the same flush and reloaded at startup. A pair that doesn't fit the
+ * packing (review id above 2^31 - 1 or customer id above 2^32 - 1) is
+ * deduplicated by the table's unique key instead: its row is inserted
+ * right away.
+ */
+@Service
+public class ReviewVoteService {
+
+    private static final int STRIPES = 16;
+
+    private static final String UPDATE_COUNTS_SQL = "UPDATE reviews SET helpful_count = helpful_count + ?, " +
+            "unhelpful_count = unhelpful_count + ? WHERE id = ?";
+
+    private static final String INSERT_VOTE_SQL = "INSERT IGNORE INTO review_votes " +
+            "(review_id, customer_id, helpful, created_at) VALUES (?, ?, ?, NOW())";
+
+    private static final String INSERT_UNPACKED_VOTE_SQL = "INSERT INTO review_votes " +
+            "(review_id, customer_id, helpful, created_at) VALUES (?, ?, ?, NOW())";
+
+    private static final long MAX_REVIEW_ID = 0x7FFFFFFFL; // 31 bits, so keys stay positive
+    private static final long MAX_CUSTOMER_ID = 0xFFFFFFFFL;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public ReviewVoteService() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static final class Counts {
+        final LongAdder helpful = new LongAdder();
+        final LongAdder unhelpful = new LongAdder();
+    }
+
+    private static final class Stripe {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        volatile ConcurrentHashMap<Long, Counts> pending = new ConcurrentHashMap<>();
+        volatile Map<Long, Counts> flushing = Map.of();
+        volatile Queue<long[]> newVotes = new ConcurrentLinkedQueue<>(); // {reviewId, customerId, helpful}
+        final LongHashSet voted = new LongHashSet(); // guarded by itself
+    }
+
+    // Load persisted votes into the dedupe sets
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadVotes() {
+        try {
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            long[] rows = { 0 };
+            streaming.query("SELECT review_id, customer_id FROM review_votes", rs -> {
+                long reviewId = rs.getLong(1);
+                long customerId = rs.getLong(2);
+                if (!packable(reviewId, customerId)) {
+                    return; // checked against the table on every vote
+                }
+                Stripe s = stripeFor(reviewId);
+                synchronized (s.voted) {
+                    s.voted.add(voteKey(reviewId, customerId));
+                }
+                rows[0]++;
+            });
+            System.out.println("👍 Loaded " + rows[0] + " review votes for dedupe");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning loading review votes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Count one vote. Returns false if this customer already voted on the
+     * review (anonymous votes, customerId == null, are not deduplicated).
+     */
+    public boolean vote(Long reviewId, Long customerId, boolean helpful) {
+        Stripe s = stripeFor(reviewId);
+        boolean persisted = false;
+        if (customerId != null && !packable(reviewId, customerId)) {
+            try {
+                jdbcTemplate.update(INSERT_UNPACKED_VOTE_SQL, reviewId, customerId, helpful);
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+            persisted = true;
+        } else if (customerId != null) {
+            synchronized (s.voted) {
+                if (!s.voted.add(voteKey(reviewId, customerId))) {
+                    return false;
+                }
+            }
+        }
+        s.lock.readLock().lock();
+        try {
+            Counts counts = s.pending.computeIfAbsent(reviewId, k -> new Counts());
+            (helpful ? counts.helpful : counts.unhelpful).increment();
+            if (customerId != null && !persisted) {
+                s.newVotes.add(new long[] { reviewId, customerId, helpful ? 1 : 0 });
+            }
+        } finally {
+            s.lock.readLock().unlock();
+        }
+        return true;
+    }
+
+    // {helpful, unhelpful} not yet visible in the reviews table
+    public long[] pendingDelta(Long reviewId) {
+        Stripe s = stripeFor(reviewId);
+        long[] delta = new long[2];
+        addTo(delta, s.pending.get(reviewId));
+        addTo(delta, s.flushing.get(reviewId));
+        return delta;
+    }
+
+    @Scheduled(fixedDelayString = "${reviews.votes.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        int flushed = flush();
+        System.out.println("👍 Flushed " + flushed + " review vote counters on shutdown");
+    }
+
+    /**
+     * Swap out every stripe and write all deltas + vote rows in one
+     * transaction. On failure the deltas are merged back for the next run.
+     * Returns the number of reviews updated.
+     */
+    public synchronized int flush() {
+        List<Object[]> countArgs = new ArrayList<>();
+        List<Object[]> voteArgs = new ArrayList<>();
+        List<Map<Long, Counts>> snapshots = new ArrayList<>(STRIPES);
+        List<Queue<long[]>> voteSnapshots = new ArrayList<>(STRIPES);
+
+        for (Stripe s : stripes) {
+            Map<Long, Counts> snapshot;
+            Queue<long[]> votes;
+            s.lock.writeLock().lock();
+            try {
+                snapshot = s.pending;
+                votes = s.newVotes;
+                s.flushing = snapshot;
+                s.pending = new ConcurrentHashMap<>();
+                s.newVotes = new ConcurrentLinkedQueue<>();
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+            snapshots.add(snapshot);
+            voteSnapshots.add(votes);
+            for (Map.Entry<Long, Counts> entry : snapshot.entrySet()) {
+                long helpful = entry.getValue().helpful.sum();
+                long unhelpful = entry.getValue().unhelpful.sum();
+                if (helpful != 0 || unhelpful != 0) {
+                    countArgs.add(new Object[] { helpful, unhelpful, entry.getKey() });
+                }
+            }
+            for (long[] v : votes) {
+                voteArgs.add(new Object[] { v[0], v[1], v[2] == 1 });
+            }
+        }
+
+        try {
+            if (!countArgs.isEmpty() || !voteArgs.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (!countArgs.isEmpty()) {
+                        jdbcTemplate.batchUpdate(UPDATE_COUNTS_SQL, countArgs);
+                    }
+                    if (!voteArgs.isEmpty()) {
+                        jdbcTemplate.batchUpdate(INSERT_VOTE_SQL, voteArgs);
+                    }
+                });
+            }
+            return countArgs.size();
+        } catch (Exception e) {
+            System.err.println("⚠️ Review vote flush failed, retrying next run: " + e.getMessage());
+            for (int i = 0; i < STRIPES; i++) {
+                requeue(stripes[i], snapshots.get(i), voteSnapshots.get(i));
+            }
+            return 0;
+        } finally {
+            for (Stripe s : stripes) {
+                s.flushing = Map.of();
+            }
+        }
+    }
+
+    private void requeue(Stripe s, Map<Long, Counts> snapshot, Queue<long[]> votes) {
+        s.lock.readLock().lock();
+        try {
+            for (Map.Entry<Long, Counts> entry : snapshot.entrySet()) {
+                Counts counts = s.pending.computeIfAbsent(entry.getKey(), k -> new Counts());
+                counts.helpful.add(entry.getValue().helpful.sum());
+                counts.unhelpful.add(entry.getValue().unhelpful.sum());
+            }
+            s.newVotes.addAll(votes);
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    private static void addTo(long[] delta, Counts counts) {
+        if (counts != null) {
+            delta[0] += counts.helpful.sum();
+            delta[1] += counts.unhelpful.sum();
+        }
+    }
+
+    private Stripe stripeFor(long reviewId) {
+        return stripes[(int) (reviewId ^ (reviewId >>> 32)) & (STRIPES - 1)];
+    }
+
+    private static boolean packable(long reviewId, long customerId) {
+        return reviewId > 0 && reviewId <= MAX_REVIEW_ID && customerId > 0 && customerId <= MAX_CUSTOMER_ID;
+    }
+
+    // Review id in the high 32 bits, customer id in the low 32; only for packable() pairs
+    private static long voteKey(long reviewId, long customerId) {
+        return (reviewId << 32) | (customerId & 0xFFFFFFFFL);
+    }
+}
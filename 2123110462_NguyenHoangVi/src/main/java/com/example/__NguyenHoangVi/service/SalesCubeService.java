@@ -0,0 +1,601 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Order;
+import com.example.__NguyenHoangVi.util.SalesCube;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Ad-hoc sales analytics (revenue by category x day x channel x payment
+ * method x status) answered from an in-memory SalesCube, without touching
+ * MySQL at query time.
+ *
+ * Feeding the cube:
+ * - new orders: every analytics.cube.refresh-ms, orders with an id above
+ *   the watermark are read (primary key range, joined to their items and
+ *   the products' categories) and added. Orders younger than
+ *   analytics.cube.settle-seconds are left for the next run so that
+ *   transactions still in flight are not skipped. Reading by id also picks
+ *   up orders taken by the other nodes.
+ * - status changes: moved between status cells when they commit, and
+ *   published on the cluster bus (outbox row written in the caller's
+ *   transaction) so the other nodes move them too. Changes older than the
+ *   cube's data (replayed events) are ignored, and so is a move for an
+ *   order of the last refresh batch whose scanned status is not the move's
+ *   from (the refresh read it after the change committed).
+ *
+ * A rebuild scans without blocking either path: it reads in one
+ * REPEATABLE READ transaction, status moves arriving meanwhile are queued
+ * as well as applied to the live cube, and before the swap each queued
+ * move is replayed onto the new cube unless the scan's snapshot already
+ * has it (the order's status there is past the move's from).
+ *
+ * The cube is snapshotted to analytics.cube.snapshot-path (every
+ * analytics.cube.snapshot-ms when it changed, and at shutdown) so a
+ * restart loads it and only reads the orders taken since. A snapshot
+ * older than analytics.cube.snapshot-max-age-hours is rebuilt from orders
+ * instead, and a full rebuild also runs every night to pick up status
+ * changes made while the node was down and products moved between
+ * categories (an order is filed under its products' current category).
+ */
+@Service
+public class SalesCubeService {
+
+    private static final long SNAPSHOT_MAGIC = 0x53414C4553435542L; // "SALESCUB"
+
+    private static final String FACTS_SQL = "SELECT o.id, o.created_at, o.order_channel, o.payment_method, o.status, " +
+            "o.total_amount, oi.quantity, oi.price, p.category_id FROM orders o " +
+            "LEFT JOIN order_items oi ON oi.order_id = o.id LEFT JOIN products p ON p.id = oi.product_id " +
+            "WHERE o.created_at IS NOT NULL AND ";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${analytics.cube.snapshot-path:data/sales-cube.bin}")
+    private String snapshotPath;
+
+    @Value("${analytics.cube.snapshot-max-age-hours:24}")
+    private int snapshotMaxAgeHours;
+
+    @Value("${analytics.cube.settle-seconds:10}")
+    private int settleSeconds;
+
+    // One order's contribution to one category cell
+    private record Fact(LocalDate day, long category, String channel, String payment, String status,
+            long units, long revenueMinor) {
+    }
+
+    private record StatusMove(long orderId, String from, String to) {
+    }
+
+    // Queries take the read lock, changes to the cube the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private SalesCube cube = new SalesCube();
+    private volatile Map<Long, String> categoryNames = Map.of();
+
+    // Loader state, only touched while holding this
+    private long watermark = -1; // highest order id in the cube, -1 until loaded
+    private long asOf; // status changes stamped before this (ms) are already in the cube
+    private boolean dirty;
+    private volatile LocalDateTime lastRefresh;
+    private List<StatusMove> duringRebuild; // moves to replay onto the cube being built, null otherwise
+    private Map<Long, String> lastBatch = new HashMap<>(); // order id -> status, as the last refresh read it
+
+    private final Object rebuildLock = new Object();
+    private TransactionTemplate snapshotRead; // one consistent read view for a rebuild
+
+    // Nightly rebuilds run here, not on the shared scheduler threads
+    private final ExecutorService rebuildRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "sales-cube-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        snapshotRead = new TransactionTemplate(transactionManager);
+        snapshotRead.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        snapshotRead.setReadOnly(true);
+
+        // payload: orderId:changedAtMillis:from:to
+        clusterEventBus.subscribe(ClusterEventBus.ORDER_STATUS, payload -> {
+            String[] parts = payload.split(":", 4);
+            if (parts.length == 4) {
+                applyStatus(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            boolean loaded;
+            synchronized (this) {
+                loaded = loadSnapshot();
+            }
+            if (!loaded) {
+                rebuild();
+            }
+            refresh();
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning loading sales cube: " + e.getMessage());
+        }
+    }
+
+    // Add the orders committed since the last run
+    @Scheduled(fixedDelayString = "${analytics.cube.refresh-ms:5000}")
+    public synchronized void refresh() {
+        if (watermark < 0) {
+            return;
+        }
+        try {
+            Long upper = jdbcTemplate.queryForObject("SELECT MAX(id) FROM orders WHERE id > ? " +
+                    "AND created_at < NOW() - INTERVAL ? SECOND", Long.class, watermark, settleSeconds);
+            if (upper == null) {
+                return;
+            }
+            List<Fact> facts = new ArrayList<>();
+            long[] orders = { 0 };
+            Map<Long, String> batch = new HashMap<>();
+            scan(jdbcTemplate, "o.id > ? AND o.id <= ?", new Object[] { watermark, upper }, facts::add, orders,
+                    batch);
+            lock.writeLock().lock();
+            try {
+                for (Fact fact : facts) {
+                    add(cube, fact, 1);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lastBatch = batch;
+            watermark = upper;
+            dirty = true;
+            lastRefresh = LocalDateTime.now();
+            loadCategoryNames();
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning refreshing sales cube: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Move an order between status cells once its transaction commits, here
+     * and (through the cluster bus) on the other nodes. Call it inside the
+     * transaction that changes the status, so the outbox row commits or
+     * rolls back with it.
+     */
+    public void statusChanged(Order order, String oldStatus) {
+        String from = value(oldStatus);
+        String to = value(order.getStatus());
+        if (order.getId() == null || from.equals(to)) {
+            return;
+        }
+        long orderId = order.getId();
+        long changedAt = System.currentTimeMillis();
+        clusterEventBus.publish(ClusterEventBus.ORDER_STATUS, orderId + ":" + changedAt + ":" + from + ":" + to);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyStatus(orderId, changedAt, from, to);
+                }
+            });
+        } else {
+            applyStatus(orderId, changedAt, from, to);
+        }
+    }
+
+    private synchronized void applyStatus(long orderId, long changedAt, String from, String to) {
+        if (duringRebuild != null) {
+            duringRebuild.add(new StatusMove(orderId, from, to));
+        }
+        if (watermark < 0 || orderId > watermark || changedAt < asOf) {
+            return; // the next refresh (or the loaded data) already has the new status
+        }
+        String scanned = lastBatch.get(orderId);
+        if (scanned != null && !scanned.equals(from)) {
+            return; // the refresh waiting ahead of us read the order after this change
+        }
+        try {
+            List<Fact> facts = new ArrayList<>();
+            scan(jdbcTemplate, "o.id = ?", new Object[] { orderId }, facts::add, new long[1]);
+            lock.writeLock().lock();
+            try {
+                for (Fact fact : facts) {
+                    add(cube, withStatus(fact, from), -1);
+                    add(cube, withStatus(fact, to), 1);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (scanned != null) {
+                lastBatch.put(orderId, to);
+            }
+            dirty = true;
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning moving order " + orderId + " in sales cube: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Build a new cube from every settled order (one streamed pass) and
+     * swap it in; queries, refreshes and status moves keep using the old
+     * one meanwhile.
+     *
+     * @return number of cells
+     */
+    @Scheduled(cron = "${analytics.cube.rebuild-cron:0 15 3 * * *}")
+    public void scheduledRebuild() {
+        rebuildRunner.execute(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                System.err.println("⚠️ Warning rebuilding sales cube: " + e.getMessage());
+            }
+        });
+    }
+
+    public int rebuild() {
+        synchronized (rebuildLock) {
+            long t0 = System.currentTimeMillis();
+            synchronized (this) {
+                duringRebuild = new ArrayList<>();
+            }
+            try {
+                return snapshotRead.execute(status -> build(t0));
+            } finally {
+                synchronized (this) {
+                    duringRebuild = null;
+                }
+            }
+        }
+    }
+
+    // Scan and replay share the transaction's read view, so the replay sees each order as the scan did
+    private int build(long t0) {
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        Long max = streaming.queryForObject("SELECT COALESCE(MAX(id), 0) FROM orders " +
+                "WHERE created_at < NOW() - INTERVAL ? SECOND", Long.class, settleSeconds);
+        long upper = max != null ? max : 0;
+        SalesCube fresh = new SalesCube();
+        long[] orders = { 0 };
+        scan(streaming, "o.id <= ?", new Object[] { upper }, fact -> add(fresh, fact, 1), orders);
+
+        Map<Long, List<Fact>> replayedOrders = new HashMap<>();
+        int replayed = 0;
+        while (true) {
+            List<StatusMove> moves;
+            synchronized (this) {
+                if (duringRebuild.isEmpty()) {
+                    // Nothing left to replay: swap before another move can arrive
+                    lock.writeLock().lock();
+                    try {
+                        cube = fresh;
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    duringRebuild = null;
+                    lastBatch = new HashMap<>();
+                    watermark = upper;
+                    asOf = t0;
+                    dirty = true;
+                    lastRefresh = LocalDateTime.now();
+                    break;
+                }
+                moves = duringRebuild;
+                duringRebuild = new ArrayList<>();
+            }
+            for (StatusMove move : moves) {
+                if (replay(streaming, fresh, replayedOrders, move, upper)) {
+                    replayed++;
+                }
+            }
+        }
+        loadCategoryNames();
+        saveSnapshot();
+        System.out.println("🧊 Sales cube rebuilt from " + orders[0] + " orders: " + fresh.size() + " cells, "
+                + replayed + " status changes replayed, in " + (System.currentTimeMillis() - t0) + " ms");
+        return fresh.size();
+    }
+
+    /**
+     * Apply a move queued during the build to the new cube, unless the
+     * scan's snapshot already has it. The order's facts are read once (as
+     * of the snapshot) and then follow the moves applied to them.
+     */
+    private static boolean replay(JdbcTemplate template, SalesCube fresh, Map<Long, List<Fact>> replayedOrders,
+            StatusMove move, long upper) {
+        if (move.orderId() > upper) {
+            return false; // not in the new cube; the next refresh adds it with its current status
+        }
+        List<Fact> facts = replayedOrders.get(move.orderId());
+        if (facts == null) {
+            facts = new ArrayList<>();
+            scan(template, "o.id = ?", new Object[] { move.orderId() }, facts::add, new long[1]);
+            replayedOrders.put(move.orderId(), facts);
+        }
+        if (facts.isEmpty() || !facts.get(0).status().equals(move.from())) {
+            return false; // committed before the snapshot, so the scan already counted it
+        }
+        for (int i = 0; i < facts.size(); i++) {
+            Fact moved = withStatus(facts.get(i), move.to());
+            add(fresh, facts.get(i), -1);
+            add(fresh, moved, 1);
+            facts.set(i, moved);
+        }
+        return true;
+    }
+
+    /**
+     * Run a query against the cube: groups largest revenue first (at most
+     * limit), totals over all matching groups, and the query time.
+     */
+    public Map<String, Object> query(SalesCube.Query query, int limit) {
+        long t0 = System.nanoTime();
+        List<SalesCube.Group> groups;
+        int cells;
+        lock.readLock().lock();
+        try {
+            groups = cube.query(query);
+            cells = cube.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<Long, String> names = categoryNames;
+        long totalOrders = 0;
+        long totalUnits = 0;
+        long totalRevenue = 0;
+        List<Map<String, Object>> rows = new ArrayList<>(Math.min(limit, groups.size()));
+        for (SalesCube.Group group : groups) {
+            totalOrders += group.orders();
+            totalUnits += group.units();
+            totalRevenue += group.revenueMinor();
+            if (rows.size() >= limit) {
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>(group.dimensions());
+            if (row.containsKey(SalesCube.CATEGORY)) {
+                long category = (Long) row.get(SalesCube.CATEGORY);
+                row.put("categoryName", category == 0 ? "Chưa phân loại"
+                        : category < 0 ? "Khác" : names.getOrDefault(category, "#" + category));
+            }
+            row.put("orders", group.orders());
+            row.put("units", group.units());
+            row.put("revenue", group.revenueMinor() / 100.0);
+            rows.add(row);
+        }
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("orders", totalOrders);
+        totals.put("units", totalUnits);
+        totals.put("revenue", totalRevenue / 100.0);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("groupBy", query.groupBy());
+        result.put("groups", groups.size());
+        result.put("rows", rows);
+        result.put("totals", totals);
+        result.put("cellsScanned", cells);
+        result.put("tookMs", (System.nanoTime() - t0) / 1_000_000.0);
+        result.put("dataUntil", lastRefresh);
+        return result;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("cells", cube.size());
+            stats.put("columnBytes", cube.columnBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (this) {
+            stats.put("watermarkOrderId", watermark);
+            stats.put("dirty", dirty);
+        }
+        stats.put("lastRefresh", lastRefresh);
+        stats.put("snapshotPath", Paths.get(snapshotPath).toAbsolutePath().toString());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildRunner.shutdownNow();
+        saveSnapshot();
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.cube.snapshot-ms:300000}", initialDelayString = "${analytics.cube.snapshot-ms:300000}")
+    public synchronized void saveSnapshot() {
+        if (!dirty || watermark < 0) {
+            return;
+        }
+        Path path = Paths.get(snapshotPath);
+        try {
+            Path dir = path.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "sales-cube", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeLong(SNAPSHOT_MAGIC);
+                out.writeLong(watermark);
+                out.writeLong(System.currentTimeMillis()); // status changes up to now are in
+                lock.readLock().lock();
+                try {
+                    cube.writeTo(out);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning saving sales cube snapshot: " + e.getMessage());
+        }
+    }
+
+    // Load the snapshot if there is a recent enough one
+    private boolean loadSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.isReadable(path)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readLong() != SNAPSHOT_MAGIC) {
+                throw new IOException("not a sales cube snapshot");
+            }
+            long savedWatermark = in.readLong();
+            long savedAt = in.readLong();
+            if (System.currentTimeMillis() - savedAt > snapshotMaxAgeHours * 3_600_000L) {
+                System.out.println("🧊 Sales cube snapshot is older than " + snapshotMaxAgeHours + " h, rebuilding");
+                return false;
+            }
+            SalesCube loaded = SalesCube.readFrom(in);
+            lock.writeLock().lock();
+            try {
+                cube = loaded;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            watermark = savedWatermark;
+            asOf = savedAt;
+            lastRefresh = LocalDateTime.now();
+            loadCategoryNames();
+            System.out.println("🧊 Sales cube loaded from snapshot: " + loaded.size() + " cells, orders up to #"
+                    + savedWatermark);
+            return true;
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning reading sales cube snapshot, rebuilding: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stream orders joined to their items (ordered by order id) and emit one
+     * fact per order and category: units and item revenue. An order without
+     * items is filed under category 0 with its total amount.
+     */
+    private static void scan(JdbcTemplate template, String where, Object[] args, Consumer<Fact> sink, long[] orders) {
+        scan(template, where, args, sink, orders, null);
+    }
+
+    // statuses, if given, collects each order's status as read
+    private static void scan(JdbcTemplate template, String where, Object[] args, Consumer<Fact> sink, long[] orders,
+            Map<Long, String> statuses) {
+        long[] current = { -1 };
+        Fact[] head = new Fact[1]; // the order's dimensions, category/measures unset
+        Map<Long, long[]> byCategory = new HashMap<>(); // category -> units, revenue (minor)
+        long[] orderTotal = { 0 };
+        Runnable emit = () -> {
+            if (head[0] == null) {
+                return;
+            }
+            Fact order = head[0];
+            if (byCategory.isEmpty()) {
+                sink.accept(new Fact(order.day(), 0, order.channel(), order.payment(), order.status(), 0,
+                        orderTotal[0]));
+            }
+            byCategory.forEach((category, sums) -> sink.accept(new Fact(order.day(), category, order.channel(),
+                    order.payment(), order.status(), sums[0], sums[1])));
+            byCategory.clear();
+            orders[0]++;
+        };
+        template.query(FACTS_SQL + where + " ORDER BY o.id", rs -> {
+            long id = rs.getLong(1);
+            if (id != current[0]) {
+                emit.run();
+                current[0] = id;
+                head[0] = new Fact(rs.getTimestamp(2).toLocalDateTime().toLocalDate(), 0, value(rs.getString(3)),
+                        value(rs.getString(4)), value(rs.getString(5)), 0, 0);
+                if (statuses != null) {
+                    statuses.put(id, head[0].status());
+                }
+                orderTotal[0] = Math.round(rs.getDouble(6) * 100);
+            }
+            int quantity = rs.getInt(7);
+            if (rs.wasNull()) {
+                return; // order without items
+            }
+            long price = Math.round(rs.getDouble(8) * 100);
+            long category = rs.getLong(9);
+            long[] sums = byCategory.computeIfAbsent(category, k -> new long[2]);
+            sums[0] += quantity;
+            sums[1] += quantity * price;
+        }, args);
+        emit.run();
+    }
+
+    private void loadCategoryNames() {
+        try {
+            Map<Long, String> names = new HashMap<>();
+            jdbcTemplate.query("SELECT id, name FROM categories", rs -> {
+                names.put(rs.getLong(1), rs.getString(2));
+            });
+            categoryNames = names;
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning loading category names: " + e.getMessage());
+        }
+    }
+
+    private static void add(SalesCube target, Fact fact, int sign) {
+        target.add(fact.day(), fact.category(), fact.channel(), fact.payment(), fact.status(), sign,
+                sign * fact.units(), sign * fact.revenueMinor());
+    }
+
+    private static Fact withStatus(Fact fact, String status) {
+        return new Fact(fact.day(), fact.category(), fact.channel(), fact.payment(), status, fact.units(),
+                fact.revenueMinor());
+    }
+
+    // Dimension values as stored: lower case, "unknown" when missing
+    private static String value(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return "unknown";
+        }
+        String value = raw.trim().toLowerCase(Locale.ROOT);
+        return value.length() > 50 ? value.substring(0, 50) : value;
+    }
+}
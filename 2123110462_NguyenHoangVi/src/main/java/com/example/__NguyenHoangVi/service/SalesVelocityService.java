@@ -0,0 +1,236 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Inventory;
+import com.example.__NguyenHoangVi.repository.InventoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exponentially weighted sales velocity per product.
+ *
+ * Each product keeps a time-decayed sum of units sold: on every sale the old
+ * sum is decayed by exp(-lambda * dt) and the new quantity is added, so the
+ * velocity (units/day) is simply sum * lambda. Nothing is recomputed from
+ * history; the only full pass is the warm-up over the last few half-lives at
+ * startup.
+ *
+ * State lives in two primitive arrays indexed directly by product id
+ * (float sum + int minute of last decay = 8 bytes per SKU, ~800KB for 100k).
+ */
+@Service
+public class SalesVelocityService {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Value("${inventory.velocity.half-life-days:14}")
+    private double halfLifeDays;
+
+    @Value("${inventory.reorder.lead-time-days:7}")
+    private double leadTimeDays;
+
+    @Value("${inventory.reorder.cover-days:30}")
+    private double coverDays;
+
+    @Value("${inventory.reorder.service-level-z:1.65}")
+    private double serviceLevelZ;
+
+    @Value("${inventory.reorder.min-level:1}")
+    private int minReorderLevel;
+
+    @Value("${inventory.reorder.min-quantity:1}")
+    private int minReorderQuantity;
+
+    @Value("${inventory.reorder.auto-apply:false}")
+    private boolean autoApply;
+
+    // Index = productId
+    private float[] decayedUnits = new float[INITIAL_CAPACITY];
+    private int[] lastMinute = new int[INITIAL_CAPACITY];
+
+    public record ReorderRecommendation(Long productId, double dailyVelocity, int reorderLevel,
+            int reorderQuantity) {
+    }
+
+    // Warm up from recent order items only (older sales have decayed to ~0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        try {
+            double windowDays = halfLifeDays * 6;
+            LocalDateTime from = LocalDateTime.now().minusMinutes((long) (windowDays * 24 * 60));
+
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE); // MySQL: stream rows instead of buffering
+
+            long[] rows = { 0 };
+            streaming.query(
+                    "SELECT oi.product_id, oi.quantity, o.created_at FROM order_items oi " +
+                            "JOIN orders o ON o.id = oi.order_id " +
+                            "WHERE o.created_at >= ? AND oi.product_id IS NOT NULL AND oi.quantity > 0",
+                    rs -> {
+                        Timestamp createdAt = rs.getTimestamp(3);
+                        recordSale(rs.getLong(1), rs.getInt(2),
+                                createdAt != null ? createdAt.toLocalDateTime() : LocalDateTime.now());
+                        rows[0]++;
+                    },
+                    Timestamp.valueOf(from));
+
+            System.out.println("📈 Sales velocity warmed up from " + rows[0] + " order items");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning warming up sales velocity: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fold one sale into the product's decayed sum. Out-of-order events are
+     * decayed to the current reference point instead of moving it backwards.
+     */
+    public synchronized void recordSale(Long productId, int quantity, LocalDateTime soldAt) {
+        if (productId == null || productId <= 0 || productId > Integer.MAX_VALUE - 8 || quantity <= 0) {
+            return;
+        }
+        int idx = productId.intValue();
+        ensureCapacity(idx);
+
+        int minute = toMinute(soldAt);
+        int last = lastMinute[idx];
+        if (last == 0) {
+            decayedUnits[idx] = quantity;
+            lastMinute[idx] = minute;
+        } else if (minute >= last) {
+            decayedUnits[idx] = (float) (decayedUnits[idx] * decay(minute - last) + quantity);
+            lastMinute[idx] = minute;
+        } else {
+            decayedUnits[idx] = (float) (decayedUnits[idx] + quantity * decay(last - minute));
+        }
+    }
+
+    // Units per day, decayed up to now
+    public synchronized double getDailyVelocity(Long productId) {
+        if (productId == null || productId <= 0 || productId >= decayedUnits.length) {
+            return 0.0;
+        }
+        return velocityAt(productId.intValue(), toMinute(LocalDateTime.now()));
+    }
+
+    public ReorderRecommendation recommend(Long productId) {
+        return toRecommendation(productId, getDailyVelocity(productId));
+    }
+
+    /**
+     * Recommendations for a batch of inventory rows under one lock acquisition.
+     * Products without any recorded sales get null (keep current settings).
+     */
+    public synchronized List<ReorderRecommendation> recommendAll(List<Inventory> inventories) {
+        int now = toMinute(LocalDateTime.now());
+        List<ReorderRecommendation> result = new ArrayList<>(inventories.size());
+        for (Inventory inv : inventories) {
+            Long productId = inv.getProductId();
+            double velocity = productId != null && productId > 0 && productId < decayedUnits.length
+                    ? velocityAt(productId.intValue(), now)
+                    : 0.0;
+            result.add(toRecommendation(productId, velocity));
+        }
+        return result;
+    }
+
+    /**
+     * Write the dynamic reorder level/quantity into every inventory row that
+     * has sales history. Returns the number of rows changed.
+     */
+    public int applyRecommendations() {
+        List<Inventory> inventories = inventoryRepository.findAll();
+        List<ReorderRecommendation> recommendations = recommendAll(inventories);
+        List<Inventory> changed = new ArrayList<>();
+        for (int i = 0; i < inventories.size(); i++) {
+            Inventory inv = inventories.get(i);
+            ReorderRecommendation rec = recommendations.get(i);
+            if (rec == null || (Integer.valueOf(rec.reorderLevel()).equals(inv.getReorderLevel())
+                    && Integer.valueOf(rec.reorderQuantity()).equals(inv.getReorderQuantity()))) {
+                continue;
+            }
+            inv.setReorderLevel(rec.reorderLevel());
+            inv.setReorderQuantity(rec.reorderQuantity());
+            inv.setUpdatedReason("Auto reorder recommendation");
+            inv.setLastUpdated(LocalDateTime.now());
+            changed.add(inv);
+        }
+        inventoryRepository.saveAll(changed);
+        return changed.size();
+    }
+
+    // Nightly job, off unless inventory.reorder.auto-apply=true
+    @Scheduled(cron = "${inventory.reorder.auto-apply-cron:0 30 2 * * *}")
+    public void autoApply() {
+        if (!autoApply) {
+            return;
+        }
+        int changed = applyRecommendations();
+        System.out.println("📦 Applied reorder recommendations to " + changed + " inventory rows");
+    }
+
+    private ReorderRecommendation toRecommendation(Long productId, double dailyVelocity) {
+        if (dailyVelocity <= 0) {
+            return null;
+        }
+        // Reorder point = expected demand over lead time + safety stock (Poisson demand)
+        double leadDemand = dailyVelocity * leadTimeDays;
+        int level = (int) Math.ceil(leadDemand + serviceLevelZ * Math.sqrt(leadDemand));
+        int quantity = (int) Math.ceil(dailyVelocity * coverDays);
+        return new ReorderRecommendation(productId, dailyVelocity,
+                Math.max(minReorderLevel, level), Math.max(minReorderQuantity, quantity));
+    }
+
+    private double velocityAt(int idx, int nowMinute) {
+        int last = lastMinute[idx];
+        if (last == 0) {
+            return 0.0;
+        }
+        double sum = decayedUnits[idx] * decay(Math.max(0, nowMinute - last));
+        return sum * lambdaPerDay();
+    }
+
+    private double decay(int minutes) {
+        return Math.exp(-lambdaPerDay() * minutes / (24.0 * 60.0));
+    }
+
+    private double lambdaPerDay() {
+        return Math.log(2) / halfLifeDays;
+    }
+
+    private void ensureCapacity(int idx) {
+        if (idx < decayedUnits.length) {
+            return;
+        }
+        int newLength = decayedUnits.length;
+        while (newLength <= idx) {
+            newLength = (int) Math.min((long) newLength * 2, Integer.MAX_VALUE - 8);
+        }
+        decayedUnits = Arrays.copyOf(decayedUnits, newLength);
+        lastMinute = Arrays.copyOf(lastMinute, newLength);
+    }
+
+    // Minutes since epoch fits an int until year ~6000; 0 is reserved for "never sold"
+    private static int toMinute(LocalDateTime time) {
+        long millis = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return (int) Math.max(1, millis / 60_000L);
+    }
+}
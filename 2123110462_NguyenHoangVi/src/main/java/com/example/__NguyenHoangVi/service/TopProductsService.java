@@ -0,0 +1,295 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Order;
+import com.example.__NguyenHoangVi.entity.Product;
+import com.example.__NguyenHoangVi.repository.ProductRepository;
+import com.example.__NguyenHoangVi.util.SpaceSaving;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Best-selling products (by units) for the last hour, today and the last 7
+ * days without a GROUP BY over order_items.
+ *
+ * Sales are counted into one SpaceSaving summary per hour, in a ring of 168
+ * slots: a slot is reset when its hour comes round again, so windows roll
+ * and memory stays at 168 x stats.top-products.capacity counters whatever
+ * the catalogue size. A window query merges the summaries of its hours.
+ *
+ * Counts are estimates: each is an upper bound, count - error a lower bound,
+ * and error <= units sold in the window / capacity (e.g. 10k units, 256
+ * counters: at most 39 units). Products selling less than that may be
+ * missing; the top 10 of a skewed catalogue are exact in practice (see
+ * SpaceSavingTest).
+ *
+ * Sales are read from the orders table, not recorded by the request that
+ * took the order, so every node counts every node's orders: every
+ * stats.top-products.refresh-ms the items of orders with an id above the
+ * watermark are added (orders younger than stats.top-products.settle-seconds
+ * wait for the next run, as in SalesCubeService). Cancelled orders are not
+ * counted; an order cancelled later is subtracted again (and added back if
+ * it leaves cancelled), here and, through ORDER_STATUS on the cluster bus,
+ * on the other nodes.
+ */
+@Service
+public class TopProductsService {
+
+    public static final String HOUR = "hour";
+    public static final String TODAY = "today";
+    public static final String WEEK = "week";
+
+    private static final int SLOTS = 7 * 24;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final String CANCELLED = "cancelled";
+
+    private static final String ITEMS_SQL = "SELECT o.id, o.status, o.created_at, oi.product_id, oi.quantity " +
+            "FROM orders o LEFT JOIN order_items oi ON oi.order_id = o.id WHERE o.created_at IS NOT NULL AND ";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    @Value("${stats.top-products.settle-seconds:10}")
+    private int settleSeconds;
+
+    private final int capacity;
+    private final Slot[] slots = new Slot[SLOTS];
+
+    // Tail state, only touched while holding this
+    private long watermark = -1; // highest order id counted, -1 until started
+    private Map<Long, String> lastBatch = new HashMap<>(); // order id -> status, as the last refresh read it
+
+    // One hour of sales; guarded by itself
+    private static final class Slot {
+        long hour = -1; // hours since epoch this slot holds
+        SpaceSaving summary;
+    }
+
+    public TopProductsService(@Value("${stats.top-products.capacity:256}") int capacity) {
+        this.capacity = Math.max(16, capacity);
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // payload: orderId:changedAtMillis:from:to
+        clusterEventBus.subscribe(ClusterEventBus.ORDER_STATUS, payload -> {
+            String[] parts = payload.split(":", 4);
+            if (parts.length == 4) {
+                applyStatus(Long.parseLong(parts[0]), parts[2], parts[3]);
+            }
+        });
+    }
+
+    // Warm up from the orders of the last 7 days: the first refresh starts just below them
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        try {
+            Long from = jdbcTemplate.queryForObject("SELECT COALESCE(MIN(id) - 1, " +
+                    "(SELECT COALESCE(MAX(id), 0) FROM orders)) FROM orders WHERE created_at >= ?", Long.class,
+                    Timestamp.valueOf(LocalDateTime.now().minusDays(7)));
+            synchronized (this) {
+                watermark = from != null ? from : 0;
+            }
+            int rows = refresh();
+            System.out.println("🏆 Top products warmed up from " + rows + " order items");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning warming up top products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Count the items of the orders committed since the last run (one
+     * streamed primary key range). Returns the number of items counted.
+     */
+    @Scheduled(fixedDelayString = "${stats.top-products.refresh-ms:5000}")
+    public synchronized int refresh() {
+        if (watermark < 0) {
+            return 0;
+        }
+        try {
+            Long upper = jdbcTemplate.queryForObject("SELECT MAX(id) FROM orders WHERE id > ? " +
+                    "AND created_at < NOW() - INTERVAL ? SECOND", Long.class, watermark, settleSeconds);
+            if (upper == null) {
+                return 0;
+            }
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            Map<Long, String> batch = new HashMap<>();
+            int[] items = { 0 };
+            streaming.query(ITEMS_SQL + "o.id > ? AND o.id <= ?", rs -> {
+                String status = status(rs.getString(2));
+                batch.put(rs.getLong(1), status);
+                long productId = rs.getLong(4);
+                if (!rs.wasNull() && !CANCELLED.equals(status)) {
+                    add(productId, rs.getInt(5), rs.getTimestamp(3).toLocalDateTime(), 1);
+                    items[0]++;
+                }
+            }, watermark, upper);
+            lastBatch = batch;
+            watermark = upper;
+            return items[0];
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning refreshing top products: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Subtract (or add back) the order's items once a move into (out of) cancelled commits
+    public void statusChanged(Order order, String oldStatus) {
+        if (order.getId() == null) {
+            return;
+        }
+        long orderId = order.getId();
+        String from = status(oldStatus);
+        String to = status(order.getStatus());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyStatus(orderId, from, to);
+                }
+            });
+        } else {
+            applyStatus(orderId, from, to);
+        }
+    }
+
+    private synchronized void applyStatus(long orderId, String from, String to) {
+        if (CANCELLED.equals(from) == CANCELLED.equals(to)) {
+            return; // still counted, or still not
+        }
+        int sign = CANCELLED.equals(to) ? -1 : 1;
+        if (watermark < 0 || orderId > watermark) {
+            return; // the next refresh reads the order with its new status
+        }
+        String scanned = lastBatch.get(orderId);
+        if (scanned != null && !scanned.equals(from)) {
+            return; // the last refresh read the order after this change
+        }
+        try {
+            jdbcTemplate.query(ITEMS_SQL + "o.id = ? AND oi.product_id IS NOT NULL", rs -> {
+                add(rs.getLong(4), rs.getInt(5), rs.getTimestamp(3).toLocalDateTime(), sign);
+            }, orderId);
+            if (scanned != null) {
+                lastBatch.put(orderId, to);
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning moving order " + orderId + " in top products: " + e.getMessage());
+        }
+    }
+
+    private void add(long productId, int quantity, LocalDateTime soldAt, int sign) {
+        if (quantity <= 0) {
+            return;
+        }
+        long hour = hourOf(soldAt);
+        if (hour <= hourOf(LocalDateTime.now()) - SLOTS) {
+            return; // older than any window
+        }
+        Slot slot = slots[(int) Math.floorMod(hour, (long) SLOTS)];
+        synchronized (slot) {
+            if (slot.hour != hour) {
+                if (slot.hour > hour || sign < 0) {
+                    return; // the slot already moved on to a newer hour, or holds nothing of this one
+                }
+                slot.hour = hour; // roll over: drop the hour a week ago
+                slot.summary = new SpaceSaving(capacity);
+            }
+            if (sign > 0) {
+                slot.summary.add(productId, quantity);
+            } else {
+                slot.summary.subtract(productId, quantity);
+            }
+        }
+    }
+
+    /**
+     * Top k products of the window, best first: estimated units, the
+     * guaranteed minimum, name, rating and revenue at the current price.
+     */
+    public Map<String, Object> top(String window, int k) {
+        long now = hourOf(LocalDateTime.now());
+        long from = switch (window) {
+            case HOUR -> now;
+            case TODAY -> hourOf(LocalDateTime.now().truncatedTo(ChronoUnit.DAYS));
+            case WEEK -> now - SLOTS + 1;
+            default -> throw new IllegalArgumentException("window phải là hour, today hoặc week");
+        };
+        SpaceSaving merged = new SpaceSaving(capacity);
+        for (long hour = from; hour <= now; hour++) {
+            Slot slot = slots[(int) Math.floorMod(hour, (long) SLOTS)];
+            synchronized (slot) {
+                if (slot.hour == hour) {
+                    merged.merge(slot.summary);
+                }
+            }
+        }
+
+        List<SpaceSaving.Item> items = merged.top(k);
+        Map<Long, Product> products = productRepository.findAllById(items.stream().map(SpaceSaving.Item::id).toList())
+                .stream().collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<Map<String, Object>> top = new ArrayList<>(items.size());
+        for (SpaceSaving.Item item : items) {
+            Product product = products.get(item.id());
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("productId", item.id());
+            entry.put("productName", product != null ? product.getName() : null);
+            entry.put("sold", item.count());
+            entry.put("soldAtLeast", item.guaranteed());
+            entry.put("revenue", product != null && product.getPrice() != null ? item.count() * product.getPrice() : 0.0);
+            entry.put("rating", ratingSummaryService.getSummary(item.id()).averageRating());
+            top.add(entry);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("window", window);
+        result.put("totalSold", merged.total());
+        result.put("maxError", merged.total() / capacity);
+        result.put("products", top);
+        return result;
+    }
+
+    // Statuses as published on ORDER_STATUS: lower case, "unknown" when missing
+    private static String status(String raw) {
+        return raw == null || raw.isBlank() ? "unknown" : raw.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long hourOf(LocalDateTime time) {
+        return time.atZone(ZONE).toEpochSecond() / 3600;
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.VoucherBatch;
+import com.example.__NguyenHoangVi.repository.VoucherBatchRepository;
+import com.example.__NguyenHoangVi.util.FeistelPermutation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk generation of single-use voucher codes.
+ *
+ * Every batch reserves a range [startIndex, startIndex + quantity) of one
+ * global sequence; code i is prefix + base32(permute(startIndex + i)) where
+ * permute is a Feistel permutation of the 50-bit code space keyed by the
+ * VOUCHER_CODEGEN_SECRET environment variable (without the key the
+ * sequential indexes would give away every issued code, so batches are
+ * refused until it is set; the rest of the API runs regardless). Distinct
+ * indexes can never map to the same code,
+ * so there is no collision check or retry, and the codes are not guessable
+ * from each other.
+ *
+ * Rows go in with multi-row INSERTs (1000 rows per statement) on several
+ * connections in parallel, one transaction per 20k-row chunk. The batch row
+ * is enough to regenerate the codes, which is how the download is streamed.
+ */
+@Service
+public class VoucherBatchService {
+
+    public static final int MAX_QUANTITY = 5_000_000;
+
+    private static final int CODE_BITS = 50; // 10 base32 characters
+    private static final int CODE_LENGTH = CODE_BITS / 5;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray(); // Crockford base32
+    private static final int ROWS_PER_STATEMENT = 1000;
+    private static final int ROWS_PER_CHUNK = 20_000;
+    private static final String INSERT_COLUMNS = "INSERT INTO vouchers (code, description, discount_type, " +
+            "discount_value, min_order_amount, max_uses, used_count, start_date, end_date, is_active, " +
+            "created_at, updated_at) VALUES ";
+    private static final int MIN_SECRET_LENGTH = 16;
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, 1, 0, ?, ?, true, ?, ?)";
+
+    @Autowired
+    private VoucherBatchRepository voucherBatchRepository;
+
+    @Autowired
+    private VoucherService voucherService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    // Only from the environment: anyone holding the key can enumerate every issued code
+    @Value("${VOUCHER_CODEGEN_SECRET:}")
+    private String secret;
+
+    @Value("${vouchers.codegen.parallelism:4}")
+    private int parallelism;
+
+    private FeistelPermutation permutation; // null while VOUCHER_CODEGEN_SECRET is missing
+    private final ExecutorService jobRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "voucher-batch");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<Long, AtomicInteger> progress = new ConcurrentHashMap<>();
+    private final Map<Long, Long> startedAt = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (secret == null || secret.trim().length() < MIN_SECRET_LENGTH) {
+            System.err.println("⚠️ Warning: VOUCHER_CODEGEN_SECRET is not set (at least " + MIN_SECRET_LENGTH
+                    + " characters), voucher batches are disabled");
+            return;
+        }
+        long key = 0xcbf29ce484222325L;
+        for (byte b : secret.getBytes(StandardCharsets.UTF_8)) {
+            key = (key ^ b) * 0x100000001b3L;
+        }
+        permutation = new FeistelPermutation(CODE_BITS, key);
+    }
+
+    // Batches (and their downloads) need the code key
+    public boolean isConfigured() {
+        return permutation != null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+    }
+
+    /**
+     * Reserve a code range, save the batch and start inserting in the
+     * background. Returns immediately with the running batch.
+     */
+    public VoucherBatch start(VoucherBatch batch) {
+        if (!isConfigured()) {
+            throw new IllegalStateException("VOUCHER_CODEGEN_SECRET is not set");
+        }
+        VoucherBatch saved = transactionTemplate.execute(status -> {
+            // Locks the index range so two batches can't reserve the same start
+            Long next = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(start_index + quantity), 0) FROM voucher_batches FOR UPDATE", Long.class);
+            batch.setId(null);
+            batch.setStartIndex(next);
+            batch.setGeneratedCount(0);
+            batch.setStatus("running");
+            batch.setCreatedAt(LocalDateTime.now());
+            return voucherBatchRepository.save(batch);
+        });
+        progress.put(saved.getId(), new AtomicInteger());
+        startedAt.put(saved.getId(), System.currentTimeMillis());
+        jobRunner.execute(() -> run(saved));
+        return saved;
+    }
+
+    // Rows inserted so far (live while running, persisted once finished)
+    public int generatedCount(VoucherBatch batch) {
+        AtomicInteger live = progress.get(batch.getId());
+        return live != null ? live.get() : (batch.getGeneratedCount() != null ? batch.getGeneratedCount() : 0);
+    }
+
+    // Codes per second since start for a running batch, 0 otherwise
+    public double rate(VoucherBatch batch) {
+        Long start = startedAt.get(batch.getId());
+        AtomicInteger live = progress.get(batch.getId());
+        if (start == null || live == null) {
+            return 0;
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        return live.get() * 1000.0 / elapsed;
+    }
+
+    public String code(VoucherBatch batch, long i) {
+        long value = permutation.permute(batch.getStartIndex() + i);
+        char[] chars = new char[CODE_LENGTH];
+        for (int c = CODE_LENGTH - 1; c >= 0; c--) {
+            chars[c] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return batch.getPrefix() + new String(chars);
+    }
+
+    // Write all codes of the batch, one per line
+    public void writeCodes(VoucherBatch batch, Writer writer) throws IOException {
+        for (long i = 0; i < batch.getQuantity(); i++) {
+            writer.write(code(batch, i));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private void run(VoucherBatch batch) {
+        AtomicInteger done = progress.get(batch.getId());
+        AtomicLong cursor = new AtomicLong();
+        long t0 = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        String error = null;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < Math.max(1, parallelism); w++) {
+                futures.add(workers.submit(() -> {
+                    long from;
+                    while ((from = cursor.getAndAdd(ROWS_PER_CHUNK)) < batch.getQuantity()) {
+                        insertChunk(batch, from, Math.min(from + ROWS_PER_CHUNK, batch.getQuantity()), done);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            cursor.set(Long.MAX_VALUE / 2); // stop the other workers picking up chunks
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            error = cause.getMessage();
+            System.err.println("❌ Voucher batch " + batch.getId() + " failed: " + error);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        batch.setGeneratedCount(done.get());
+        batch.setStatus(error == null ? "completed" : "failed");
+        batch.setError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        batch.setCompletedAt(LocalDateTime.now());
+        voucherBatchRepository.save(batch);
+        progress.remove(batch.getId());
+        startedAt.remove(batch.getId());
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - t0);
+        System.out.println("🎟️ Voucher batch " + batch.getId() + " " + batch.getStatus() + ": " + done.get()
+                + " codes in " + elapsed + " ms (" + done.get() * 1000L / elapsed + " codes/s)");
+        voucherService.rebuildEverywhere();
+    }
+
+    // One transaction per chunk on a dedicated connection
+    private void insertChunk(VoucherBatch batch, long from, long to, AtomicInteger done) throws SQLException {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String description = "Batch #" + batch.getId() + ": " + batch.getName();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long i = from;
+                try (PreparedStatement full = connection.prepareStatement(insertSql(ROWS_PER_STATEMENT))) {
+                    while (to - i >= ROWS_PER_STATEMENT) {
+                        bindRows(full, batch, description, now, i, ROWS_PER_STATEMENT);
+                        full.executeUpdate();
+                        i += ROWS_PER_STATEMENT;
+                    }
+                }
+                if (i < to) {
+                    int rows = (int) (to - i);
+                    try (PreparedStatement tail = connection.prepareStatement(insertSql(rows))) {
+                        bindRows(tail, batch, description, now, i, rows);
+                        tail.executeUpdate();
+                    }
+                }
+                connection.commit();
+                done.addAndGet((int) (to - from));
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void bindRows(PreparedStatement ps, VoucherBatch batch, String description, Timestamp now,
+            long firstIndex, int rows) throws SQLException {
+        Timestamp start = batch.getStartDate() != null ? Timestamp.valueOf(batch.getStartDate()) : null;
+        Timestamp end = batch.getEndDate() != null ? Timestamp.valueOf(batch.getEndDate()) : null;
+        int p = 1;
+        for (int r = 0; r < rows; r++) {
+            ps.setString(p++, code(batch, firstIndex + r));
+            ps.setString(p++, description);
+            ps.setString(p++, batch.getDiscountType());
+            ps.setDouble(p++, batch.getDiscountValue());
+            ps.setDouble(p++, batch.getMinOrderAmount() != null ? batch.getMinOrderAmount() : 0.0);
+            ps.setObject(p++, start, Types.TIMESTAMP);
+            ps.setObject(p++, end, Types.TIMESTAMP);
+            ps.setTimestamp(p++, now);
+            ps.setTimestamp(p++, now);
+        }
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_COLUMNS.length() + rows * (INSERT_ROW.length() + 1));
+        sql.append(INSERT_COLUMNS);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                sql.append(',');
+            }
+            sql.append(INSERT_ROW);
+        }
+        return sql.toString();
+    }
+}
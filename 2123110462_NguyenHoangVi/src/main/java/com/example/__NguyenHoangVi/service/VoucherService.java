@@ -0,0 +1,392 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Voucher;
+import com.example.__NguyenHoangVi.repository.VoucherRepository;
+import com.example.__NguyenHoangVi.util.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Voucher validation and redemption without a database round trip per lookup.
+ *
+ * Active vouchers are held in a hash index keyed by normalized code, fronted
+ * by a seeded Bloom filter: a guessed code that was never issued fails the
+ * filter (a few array reads) and ~99.9% of guesses stop there. The index is
+ * authoritative for validation, so even a Bloom false positive is answered
+ * from memory. Only redemption touches the database, through one conditional
+ * UPDATE that enforces maxUses atomically.
+ *
+ * Only vouchers that can still be redeemed (active, uses left, not ended)
+ * are held in the index; the filter covers every active code, and a code
+ * that passes it but is not indexed (used up, expired) is looked up once to
+ * give the right reason. Single-use batch codes therefore leave the heap
+ * as soon as they are redeemed.
+ *
+ * The index is rebuilt on startup and every vouchers.index.full-rebuild-ms
+ * (to resize the filter and repair drift); in between, vouchers changed
+ * since the last pass (updated_at watermark) are applied every
+ * vouchers.index.refresh-ms. Vouchers created through the API are
+ * registered immediately. In a cluster both reach the other nodes through
+ * ClusterEventBus, and so does every redemption: the other nodes reread
+ * used_count, so none keeps accepting an exhausted voucher for long.
+ */
+@Service
+public class VoucherService {
+
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.001;
+    // updated_at is written with each node's clock before commit; reread a little behind the watermark
+    private static final long WATERMARK_OVERLAP_SECONDS = 30;
+    private static final String SELECT_VOUCHERS = "SELECT id, code, discount_type, discount_value, min_order_amount, " +
+            "max_uses, used_count, start_date, end_date, per_customer_limit, is_active FROM vouchers ";
+
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private CustomerRedemptionService redemptionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterEventBus clusterEventBus;
+
+    private volatile Index index = new Index(new ConcurrentHashMap<>(), new BloomFilter(1024, BLOOM_FALSE_POSITIVE_RATE, 0L));
+    private volatile LocalDateTime watermark; // vouchers updated since are applied by refresh()
+
+    // Compact in-memory view of a voucher; usedCount follows redemptions made here
+    public record Entry(Long id, String code, String discountType, double discountValue, double minOrderAmount,
+            Integer maxUses, Integer perCustomerLimit, AtomicInteger usedCount, LocalDateTime startDate,
+            LocalDateTime endDate) {
+
+        double discountFor(double orderAmount) {
+            double discount = "fixed".equalsIgnoreCase(discountType)
+                    ? discountValue
+                    : orderAmount * discountValue / 100.0;
+            return Math.min(Math.max(discount, 0), orderAmount);
+        }
+    }
+
+    public record Check(boolean valid, String reason, Long voucherId, String code, double discount, double total) {
+
+        static Check invalid(String reason, double orderAmount) {
+            return new Check(false, reason, null, null, 0, orderAmount);
+        }
+    }
+
+    private record Index(Map<String, Entry> byCode, BloomFilter bloom) {
+    }
+
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(ClusterEventBus.VOUCHER, payload -> {
+            if ("*".equals(payload)) {
+                rebuild();
+            } else {
+                voucherRepository.findById(Long.parseLong(payload)).ifPresent(this::registerLocal);
+            }
+        });
+        clusterEventBus.subscribe(ClusterEventBus.VOUCHER_USED, payload -> {
+            Entry entry = index.byCode().get(normalize(payload));
+            if (entry != null) {
+                Integer used = jdbcTemplate.queryForObject("SELECT used_count FROM vouchers WHERE id = ?",
+                        Integer.class, entry.id());
+                entry.usedCount().set(used != null ? used : 0);
+                dropIfUsedUp(entry);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${vouchers.index.full-rebuild-ms:3600000}",
+            initialDelayString = "${vouchers.index.full-rebuild-ms:3600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${vouchers.index.refresh-ms:60000}", initialDelayString = "${vouchers.index.refresh-ms:60000}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * Reload all active vouchers (streamed) into a fresh index and swap it in.
+     * Returns the number of redeemable codes indexed.
+     */
+    public synchronized int rebuild() {
+        try {
+            LocalDateTime startedAt = LocalDateTime.now();
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            Integer active = streaming.queryForObject("SELECT COUNT(*) FROM vouchers WHERE is_active = true",
+                    Integer.class);
+            int expected = Math.max(1024, (active != null ? active : 0) * 2);
+            Map<String, Entry> byCode = new ConcurrentHashMap<>();
+            BloomFilter bloom = new BloomFilter(expected, BLOOM_FALSE_POSITIVE_RATE,
+                    ThreadLocalRandom.current().nextLong());
+            LocalDateTime now = LocalDateTime.now();
+            streaming.query(SELECT_VOUCHERS + "WHERE is_active = true", rs -> {
+                Entry entry = toEntry(rs);
+                String key = normalize(entry.code());
+                bloom.put(key);
+                if (redeemable(entry, now)) {
+                    byCode.put(key, entry);
+                }
+            });
+            index = new Index(byCode, bloom);
+            watermark = startedAt;
+            System.out.println("🎟️ Voucher index built: " + byCode.size() + " redeemable of " + active
+                    + " active codes, bloom " + bloom.sizeInBytes() / 1024 + " KB");
+            return byCode.size();
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning building voucher index: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Apply vouchers updated since the last pass (new, deactivated, used up)
+     * to the current index. Served by idx_vouchers_updated, so it reads only
+     * the rows that changed.
+     */
+    public synchronized int refresh() {
+        LocalDateTime from = watermark;
+        if (from == null) {
+            return rebuild();
+        }
+        try {
+            LocalDateTime startedAt = LocalDateTime.now();
+            Index current = index;
+            int[] applied = { 0 };
+            JdbcTemplate streaming = new JdbcTemplate(dataSource);
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            streaming.query(SELECT_VOUCHERS + "WHERE updated_at >= ?", rs -> {
+                Entry entry = toEntry(rs);
+                String key = normalize(entry.code());
+                if (rs.getBoolean(11)) {
+                    current.bloom().put(key);
+                }
+                if (rs.getBoolean(11) && redeemable(entry, startedAt)) {
+                    current.byCode().put(key, entry);
+                } else {
+                    current.byCode().remove(key);
+                }
+                applied[0]++;
+            }, Timestamp.valueOf(from.minusSeconds(WATERMARK_OVERLAP_SECONDS)));
+            watermark = startedAt;
+            return applied[0];
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning refreshing voucher index: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // Make a newly saved voucher visible without waiting for the next rebuild
+    public void register(Voucher voucher) {
+        registerLocal(voucher);
+        if (voucher.getId() != null) {
+            clusterEventBus.publish(ClusterEventBus.VOUCHER, voucher.getId().toString());
+        }
+    }
+
+    // Rebuild here and on the other nodes (after bulk inserts)
+    public int rebuildEverywhere() {
+        int size = rebuild();
+        clusterEventBus.publish(ClusterEventBus.VOUCHER, "*");
+        return size;
+    }
+
+    private synchronized void registerLocal(Voucher voucher) {
+        String key = normalize(voucher.getCode());
+        if (key == null) {
+            return;
+        }
+        Index current = index;
+        if (!Boolean.TRUE.equals(voucher.getIsActive())) {
+            current.byCode().remove(key);
+            return;
+        }
+        current.bloom().put(key);
+        Entry entry = toEntry(voucher);
+        if (redeemable(entry, LocalDateTime.now())) {
+            current.byCode().put(key, entry);
+        } else {
+            current.byCode().remove(key);
+        }
+    }
+
+    public Check validate(String code, double orderAmount) {
+        return validate(code, orderAmount, null);
+    }
+
+    /**
+     * Check a code against an order amount (and the customer's own limit when
+     * customerId is given). Served from memory; the per-customer check only
+     * queries for customers who already used this voucher.
+     */
+    public Check validate(String code, double orderAmount, Long customerId) {
+        String key = normalize(code);
+        Index current = index;
+        if (key == null || !current.bloom().mightContain(key)) {
+            return Check.invalid("Mã voucher không tồn tại", orderAmount);
+        }
+        Entry entry = current.byCode().get(key);
+        if (entry == null) {
+            return Check.invalid(notRedeemableReason(key), orderAmount);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (entry.startDate() != null && now.isBefore(entry.startDate())) {
+            return Check.invalid("Voucher chưa đến thời gian sử dụng", orderAmount);
+        }
+        if (entry.endDate() != null && now.isAfter(entry.endDate())) {
+            return Check.invalid("Voucher đã hết hạn", orderAmount);
+        }
+        if (entry.maxUses() != null && entry.usedCount().get() >= entry.maxUses()) {
+            return Check.invalid("Voucher đã hết lượt sử dụng", orderAmount);
+        }
+        if (entry.perCustomerLimit() != null && customerId != null && !redemptionService
+                .canUse(CustomerRedemptionService.VOUCHER, entry.id(), customerId, entry.perCustomerLimit())) {
+            return Check.invalid("Bạn đã dùng hết lượt cho voucher này", orderAmount);
+        }
+        if (orderAmount < entry.minOrderAmount()) {
+            return Check.invalid("Đơn hàng chưa đạt giá trị tối thiểu " + entry.minOrderAmount(), orderAmount);
+        }
+        double discount = entry.discountFor(orderAmount);
+        return new Check(true, null, entry.id(), entry.code(), discount, orderAmount - discount);
+    }
+
+    public Check redeem(String code, double orderAmount) {
+        return redeem(code, orderAmount, null, null);
+    }
+
+    /**
+     * Validate, claim the customer's per-customer slot, then consume one use
+     * with a conditional UPDATE against maxUses. Returns an invalid Check if
+     * the last use was taken concurrently (the customer's claim is undone).
+     */
+    public Check redeem(String code, double orderAmount, Long customerId, Long orderId) {
+        Check check = validate(code, orderAmount, customerId);
+        if (!check.valid()) {
+            return check;
+        }
+        Entry entry = index.byCode().get(normalize(code));
+        Integer perCustomerLimit = entry != null ? entry.perCustomerLimit() : null;
+        CustomerRedemptionService.Claim claim = redemptionService.claim(CustomerRedemptionService.VOUCHER,
+                check.voucherId(), customerId, perCustomerLimit, orderId);
+        if (!claim.granted()) {
+            return Check.invalid(claim.reason(), orderAmount);
+        }
+        if (voucherRepository.incrementUsage(check.voucherId(), LocalDateTime.now()) == 0) {
+            redemptionService.release(CustomerRedemptionService.VOUCHER, check.voucherId(), customerId, claim);
+            if (entry != null && entry.maxUses() != null) {
+                entry.usedCount().set(entry.maxUses()); // exhausted (or deactivated) in the database
+            }
+            return Check.invalid("Voucher đã hết lượt sử dụng", orderAmount);
+        }
+        if (entry != null) {
+            countUseAfterCommit(entry);
+        }
+        clusterEventBus.publish(ClusterEventBus.VOUCHER_USED, check.code());
+        return check;
+    }
+
+    // Keep the in-memory count in step with the database, also when redeeming inside a checkout transaction
+    private void countUseAfterCommit(Entry entry) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entry.usedCount().incrementAndGet();
+                    dropIfUsedUp(entry);
+                }
+            });
+        } else {
+            entry.usedCount().incrementAndGet();
+            dropIfUsedUp(entry);
+        }
+    }
+
+    // Used-up codes leave the index (the Bloom filter still knows them)
+    private void dropIfUsedUp(Entry entry) {
+        if (entry.maxUses() != null && entry.usedCount().get() >= entry.maxUses()) {
+            index.byCode().remove(normalize(entry.code()), entry);
+        }
+    }
+
+    // Why an issued code is not in the index; also answers Bloom false positives
+    private String notRedeemableReason(String key) {
+        List<String> reasons = jdbcTemplate.query(
+                "SELECT is_active, max_uses, used_count, end_date FROM vouchers WHERE code = ?", (rs, i) -> {
+                    if (!rs.getBoolean(1)) {
+                        return "Mã voucher không tồn tại";
+                    }
+                    Integer maxUses = rs.getObject(2, Integer.class);
+                    if (maxUses != null && rs.getInt(3) >= maxUses) {
+                        return "Voucher đã hết lượt sử dụng";
+                    }
+                    Timestamp end = rs.getTimestamp(4);
+                    if (end != null && end.toLocalDateTime().isBefore(LocalDateTime.now())) {
+                        return "Voucher đã hết hạn";
+                    }
+                    return "Voucher tạm thời không khả dụng, vui lòng thử lại";
+                }, key);
+        return reasons.isEmpty() ? "Mã voucher không tồn tại" : reasons.get(0);
+    }
+
+    private static boolean redeemable(Entry entry, LocalDateTime now) {
+        return (entry.maxUses() == null || entry.usedCount().get() < entry.maxUses())
+                && (entry.endDate() == null || !now.isAfter(entry.endDate()));
+    }
+
+    private static Entry toEntry(ResultSet rs) throws SQLException {
+        Timestamp start = rs.getTimestamp(8);
+        Timestamp end = rs.getTimestamp(9);
+        return new Entry(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getDouble(4), rs.getDouble(5),
+                rs.getObject(6, Integer.class), rs.getObject(10, Integer.class), new AtomicInteger(rs.getInt(7)),
+                start != null ? start.toLocalDateTime() : null, end != null ? end.toLocalDateTime() : null);
+    }
+
+    private static Entry toEntry(Voucher voucher) {
+        return new Entry(voucher.getId(), voucher.getCode(), voucher.getDiscountType(),
+                voucher.getDiscountValue() != null ? voucher.getDiscountValue() : 0,
+                voucher.getMinOrderAmount() != null ? voucher.getMinOrderAmount() : 0,
+                voucher.getMaxUses(), voucher.getPerCustomerLimit(),
+                new AtomicInteger(voucher.getUsedCount() != null ? voucher.getUsedCount() : 0),
+                voucher.getStartDate(), voucher.getEndDate());
+    }
+
+    // Codes are matched case-insensitively, like the MySQL unique index on vouchers.code
+    private static String normalize(String code) {
+        if (code == null) {
+            return null;
+        }
+        String trimmed = code.trim();
+        return trimmed.isEmpty() ? null : trimmed.toUpperCase(Locale.ROOT);
+    }
+}
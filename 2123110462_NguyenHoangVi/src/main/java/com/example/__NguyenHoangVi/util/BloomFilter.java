@@ -0,0 +1,73 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over strings: m bits in a long[], k probes by double hashing
+ * (h1 + i * h2) of one 64-bit hash. "false" is definite; "true" may be a
+ * false positive at roughly the configured rate.
+ *
+ * The hash is keyed with a per-instance seed, so an attacker cannot
+ * precompute strings that collide with the stored set. Bits live in an
+ * AtomicLongArray so puts can race with lookups safely.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long seed;
+
+    public BloomFilter(int expectedInsertions, double falsePositiveRate, long seed) {
+        int n = Math.max(1, expectedInsertions);
+        double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) & ~63L);
+        this.bits = new AtomicLongArray((int) (m >>> 6));
+        this.bitCount = m;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        this.seed = seed;
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            long mask = 1L << bit;
+            bits.getAndAccumulate((int) (bit >>> 6), mask, (word, m) -> word | m);
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long sizeInBytes() {
+        return (long) bits.length() * 8;
+    }
+
+    // Seeded FNV-1a over the chars, finished with the murmur3 fmix64 avalanche
+    private long hash(String value) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe bitmap over non-negative int ids, allocated in 4096-bit pages
+ * (512 bytes) on first set, so a few high ids don't cost a dense array.
+ * get is two array reads; set is one CAS. Bits are never cleared in bulk.
+ */
+public class ConcurrentBitSet {
+
+    public static final long MAX_ID = Integer.MAX_VALUE;
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_SHIFT) >>> 6;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[16];
+
+    public boolean get(long id) {
+        if (id < 0 || id > MAX_ID) {
+            return false;
+        }
+        AtomicLongArray[] current = pages;
+        int page = (int) (id >>> PAGE_SHIFT);
+        if (page >= current.length || current[page] == null) {
+            return false;
+        }
+        return (current[page].get(wordIndex(id)) & (1L << id)) != 0;
+    }
+
+    /**
+     * @return true if the bit was clear before
+     */
+    public boolean set(long id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("id out of range: " + id);
+        }
+        AtomicLongArray words = page((int) (id >>> PAGE_SHIFT));
+        long mask = 1L << id;
+        return (words.getAndAccumulate(wordIndex(id), mask, (word, m) -> word | m) & mask) == 0;
+    }
+
+    public void clear(long id) {
+        if (!get(id)) {
+            return;
+        }
+        long mask = 1L << id;
+        pages[(int) (id >>> PAGE_SHIFT)].getAndAccumulate(wordIndex(id), ~mask, (word, m) -> word & m);
+    }
+
+    public long sizeInBytes() {
+        long bytes = (long) pages.length * 8;
+        for (AtomicLongArray page : pages) {
+            if (page != null) {
+                bytes += WORDS_PER_PAGE * 8L;
+            }
+        }
+        return bytes;
+    }
+
+    private static int wordIndex(long id) {
+        return (int) ((id >>> 6) & (WORDS_PER_PAGE - 1));
+    }
+
+    private AtomicLongArray page(int page) {
+        AtomicLongArray[] current = pages;
+        if (page < current.length && current[page] != null) {
+            return current[page];
+        }
+        synchronized (this) {
+            current = pages;
+            if (page >= current.length) {
+                AtomicLongArray[] grown = new AtomicLongArray[Math.max(page + 1, current.length * 2)];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            if (current[page] == null) {
+                current[page] = new AtomicLongArray(WORDS_PER_PAGE);
+            }
+            pages = current;
+            return current[page];
+        }
+    }
+}
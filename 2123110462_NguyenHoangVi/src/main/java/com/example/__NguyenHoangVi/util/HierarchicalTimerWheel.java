@@ -0,0 +1,176 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Hierarchical timing wheel (Varghese & Lauck), driven by one daemon thread.
+ *
+ * Level 0 has wheelSize buckets of tickMs each; every further level has
+ * buckets as wide as the whole level below, so a deadline weeks away costs one
+ * bucket insert and is cascaded down as time approaches. Adding and firing
+ * are O(1) per task regardless of how many timers are pending.
+ *
+ * Tasks never fire early: they run on the first tick boundary at or after
+ * their deadline (so at most tickMs late), on the supplied executor.
+ */
+public class HierarchicalTimerWheel implements AutoCloseable {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final Executor executor;
+    private final List<ArrayDeque<Timeout>[]> levels = new ArrayList<>();
+    private final Thread driver;
+
+    private long currentTime; // start of the current level-0 tick, guarded by this
+    private volatile boolean running = true;
+
+    public static final class Timeout {
+        private final long deadline;
+        private final long key; // deadline rounded up to a tick boundary
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadline, long key, Runnable task) {
+            this.deadline = deadline;
+            this.key = key;
+            this.task = task;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    public HierarchicalTimerWheel(long tickMs, int wheelSize, Executor executor, String name) {
+        if (tickMs <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("tickMs must be > 0 and wheelSize >= 2");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.executor = executor;
+        long now = System.currentTimeMillis();
+        this.currentTime = now - now % tickMs;
+        this.driver = new Thread(this::run, name);
+        this.driver.setDaemon(true);
+        this.driver.start();
+    }
+
+    /**
+     * Run task at (or at most one tick after) deadlineMillis.
+     */
+    public Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout timeout = new Timeout(deadlineMillis, deadlineMillis + tickMs - 1, task);
+        boolean runNow;
+        synchronized (this) {
+            runNow = !place(timeout);
+        }
+        if (runNow) {
+            fire(timeout);
+        }
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        driver.interrupt();
+    }
+
+    // Put the timeout in the lowest level whose window covers it; false if already due
+    private boolean place(Timeout timeout) {
+        if (timeout.key < currentTime + tickMs) {
+            return false;
+        }
+        long levelTick = tickMs;
+        for (int level = 0;; level++) {
+            long levelInterval = levelTick * wheelSize;
+            long levelStart = currentTime - currentTime % levelTick;
+            if (timeout.key < levelStart + levelInterval) {
+                bucketsOf(level)[(int) ((timeout.key / levelTick) % wheelSize)].add(timeout);
+                return true;
+            }
+            levelTick = levelInterval;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayDeque<Timeout>[] bucketsOf(int level) {
+        while (levels.size() <= level) {
+            ArrayDeque<Timeout>[] buckets = new ArrayDeque[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new ArrayDeque<>();
+            }
+            levels.add(buckets);
+        }
+        return levels.get(level);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                long sleep;
+                synchronized (this) {
+                    sleep = currentTime + tickMs - System.currentTimeMillis();
+                }
+                if (sleep > 0) {
+                    Thread.sleep(sleep);
+                }
+                List<Timeout> due = advance(System.currentTimeMillis());
+                for (Timeout timeout : due) {
+                    fire(timeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Timer wheel error: " + e.getMessage());
+            }
+        }
+    }
+
+    // Move the clock tick by tick up to now, cascading higher levels as their boundaries pass
+    private synchronized List<Timeout> advance(long now) {
+        List<Timeout> due = new ArrayList<>();
+        while (currentTime + tickMs <= now) {
+            currentTime += tickMs;
+            long levelTick = tickMs;
+            for (int level = 0; level < levels.size(); level++) {
+                if (currentTime % levelTick != 0) {
+                    break;
+                }
+                ArrayDeque<Timeout> bucket = levels.get(level)[(int) ((currentTime / levelTick) % wheelSize)];
+                int n = bucket.size();
+                for (int i = 0; i < n; i++) {
+                    Timeout timeout = bucket.poll();
+                    if (!timeout.cancelled && !place(timeout)) {
+                        due.add(timeout);
+                    }
+                }
+                levelTick *= wheelSize;
+            }
+        }
+        return due;
+    }
+
+    private void fire(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        executor.execute(() -> {
+            if (!timeout.cancelled) {
+                timeout.task.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in microseconds with log-linear buckets:
+ * exact below 64 us, then 32 sub-buckets per power of two (~3% error).
+ * Recording is one atomic increment; percentiles scan ~1.2k buckets.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int MAX_EXPONENT = 40; // ~12 days in us
+
+    private final AtomicLongArray buckets = new AtomicLongArray(LINEAR + (MAX_EXPONENT - 5) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public double meanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : sumMicros.get() / 1000.0 / n;
+    }
+
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    // Value at quantile q (0..1) in milliseconds
+    public double percentileMillis(double q) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return lowerBound(i) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        int sub = (int) ((micros >>> (exponent - 5)) & (SUB_BUCKETS - 1));
+        return LINEAR + (exponent - 6) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 6;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - 5);
+    }
+}
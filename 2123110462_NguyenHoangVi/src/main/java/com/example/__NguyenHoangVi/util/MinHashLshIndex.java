@@ -0,0 +1,244 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+/**
+ * MinHash signatures over word shingles plus a banded LSH index for
+ * near-duplicate lookup in sub-linear time.
+ *
+ * With 8 bands x 4 rows two texts become candidates with probability
+ * 1 - (1 - J^4)^8: ~98% at Jaccard 0.8, ~5% at 0.3. Candidates are then
+ * checked against the stored signature (fraction of equal min-hashes
+ * estimates Jaccard).
+ *
+ * Storage is flat primitive arrays: a short[] signature (low 16 bits of each
+ * min-hash) and a long[] doc id per slot, and per band an open-addressing
+ * bucket table (long key -> head slot) with an int[] "next in bucket" chain.
+ * Roughly 64 + 8 + 8 * (4 + ~24) bytes per document. Not thread-safe.
+ *
+ * remove() tombstones the slot (chains are left as they are and skip it), so
+ * re-indexing a changed document costs a fresh slot.
+ */
+public class MinHashLshIndex {
+
+    public static final int BANDS = 8;
+    public static final int ROWS = 4;
+    public static final int NUM_HASHES = BANDS * ROWS;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private final int shingleSize;
+    private final int minWords;
+    private final long[] hashA = new long[NUM_HASHES];
+    private final long[] hashB = new long[NUM_HASHES];
+
+    private int size;
+    private int slots;
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+    private long[] docIds = new long[1024];
+    private short[] signatures = new short[1024 * NUM_HASHES];
+    private final int[][] nextInBucket = new int[BANDS][1024];
+
+    // Per band: bucket key -> first slot + 1 (0 = empty)
+    private final long[][] bucketKeys = new long[BANDS][2048];
+    private final int[][] bucketHeads = new int[BANDS][2048];
+    private final int[] bucketCount = new int[BANDS];
+
+    public MinHashLshIndex(int shingleSize, long seed) {
+        this(shingleSize, shingleSize, seed);
+    }
+
+    /**
+     * minWords: texts with fewer words get no signature. A handful of shared
+     * shingles says nothing about copying ("sản phẩm rất tốt").
+     */
+    public MinHashLshIndex(int shingleSize, int minWords, long seed) {
+        this.shingleSize = shingleSize;
+        this.minWords = Math.max(shingleSize, minWords);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            hashA[i] = random.nextLong() | 1L; // odd multiplier
+            hashB[i] = random.nextLong();
+        }
+    }
+
+    public record Match(long docId, double similarity) {
+    }
+
+    /**
+     * MinHash signature of the text, or null if it has fewer than minWords
+     * words (too short to judge).
+     */
+    public int[] signature(String text) {
+        if (text == null) {
+            return null;
+        }
+        String[] words = NON_WORD.split(text.toLowerCase(Locale.ROOT).trim());
+        int wordCount = words.length > 0 && words[0].isEmpty() ? 0 : words.length;
+        int offset = words.length - wordCount;
+        if (wordCount < minWords) {
+            return null;
+        }
+
+        int[] mins = new int[NUM_HASHES];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        for (int start = offset; start + shingleSize <= words.length; start++) {
+            long shingle = 0xcbf29ce484222325L;
+            for (int w = start; w < start + shingleSize; w++) {
+                shingle = fnv(shingle, words[w]);
+                shingle = (shingle ^ ' ') * 0x100000001b3L;
+            }
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int h = (int) ((hashA[i] * shingle + hashB[i]) >>> 32);
+                if (h < mins[i]) {
+                    mins[i] = h;
+                }
+            }
+        }
+        return mins;
+    }
+
+    // Replaces the document if it is already indexed
+    public void add(long docId, int[] signature) {
+        remove(docId);
+        ensureCapacity(slots + 1);
+        int slot = slots++;
+        size++;
+        slotOf.put(docId, slot);
+        docIds[slot] = docId;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            signatures[slot * NUM_HASHES + i] = (short) signature[i];
+        }
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(signature, band);
+            int bucket = findBucket(band, key, true);
+            nextInBucket[band][slot] = bucketHeads[band][bucket] - 1;
+            bucketHeads[band][bucket] = slot + 1;
+        }
+    }
+
+    public boolean remove(long docId) {
+        Integer slot = slotOf.remove(docId);
+        if (slot == null) {
+            return false;
+        }
+        docIds[slot] = REMOVED;
+        size--;
+        return true;
+    }
+
+    /**
+     * Best indexed match with estimated Jaccard >= threshold, or null.
+     */
+    public Match findNearDuplicate(int[] signature, double threshold) {
+        Match best = null;
+        for (int band = 0; band < BANDS; band++) {
+            int bucket = findBucket(band, bandKey(signature, band), false);
+            if (bucket < 0) {
+                continue;
+            }
+            for (int slot = bucketHeads[band][bucket] - 1; slot >= 0; slot = nextInBucket[band][slot]) {
+                if (docIds[slot] == REMOVED) {
+                    continue;
+                }
+                double similarity = estimateSimilarity(signature, slot);
+                if (similarity >= threshold && (best == null || similarity > best.similarity())) {
+                    best = new Match(docIds[slot], similarity);
+                }
+            }
+        }
+        return best;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private double estimateSimilarity(int[] signature, int slot) {
+        int equal = 0;
+        int base = slot * NUM_HASHES;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (signatures[base + i] == (short) signature[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = 0x9E3779B97F4A7C15L * (band + 1);
+        for (int r = 0; r < ROWS; r++) {
+            key = (key ^ (signature[band * ROWS + r] & 0xFFFFFFFFL)) * 0xff51afd7ed558ccdL;
+            key ^= key >>> 29;
+        }
+        return key == 0 ? 1 : key;
+    }
+
+    // Open addressing; returns bucket index, or -1 when absent and !create
+    private int findBucket(int band, long key, boolean create) {
+        long[] keys = bucketKeys[band];
+        int mask = keys.length - 1;
+        int i = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+        if ((bucketCount[band] + 1) * 2 > keys.length) {
+            growBuckets(band);
+            return findBucket(band, key, true);
+        }
+        keys[i] = key;
+        bucketCount[band]++;
+        return i;
+    }
+
+    private void growBuckets(int band) {
+        long[] oldKeys = bucketKeys[band];
+        int[] oldHeads = bucketHeads[band];
+        long[] keys = new long[oldKeys.length << 1];
+        int[] heads = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = (int) (oldKeys[j] ^ (oldKeys[j] >>> 32)) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                heads[i] = oldHeads[j];
+            }
+        }
+        bucketKeys[band] = keys;
+        bucketHeads[band] = heads;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= docIds.length) {
+            return;
+        }
+        int capacity = docIds.length << 1;
+        docIds = Arrays.copyOf(docIds, capacity);
+        signatures = Arrays.copyOf(signatures, capacity * NUM_HASHES);
+        for (int band = 0; band < BANDS; band++) {
+            nextInBucket[band] = Arrays.copyOf(nextInBucket[band], capacity);
+        }
+    }
+
+    private static long fnv(long hash, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed bitmap over non-negative int ids, Roaring-style: ids are split
+ * into 65536-wide chunks by their high 16 bits; a chunk with up to 4096 ids
+ * is a sorted char array (2 bytes per id), a denser one an 8 KB bitset. So
+ * 10 readers cost 20 bytes, 1M readers at most ~128 KB.
+ *
+ * Not thread-safe; callers lock around it. serialize/deserialize give the
+ * compact blob form used for persistence.
+ */
+public class RoaringBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final byte FORMAT = 1;
+
+    private char[] keys = new char[4];
+    private Object[] containers = new Object[4]; // char[] (sorted, length = cardinality slots) or long[1024]
+    private int[] cardinalities = new int[4];
+    private int size;
+
+    /**
+     * @return true if the id was not in the bitmap before
+     */
+    public boolean add(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id must be non-negative: " + id);
+        }
+        char key = (char) (id >>> 16);
+        char low = (char) id;
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key);
+        }
+        if (containers[i] instanceof long[] words) {
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= mask;
+            cardinalities[i]++;
+            return true;
+        }
+        char[] values = (char[]) containers[i];
+        int card = cardinalities[i];
+        int at = Arrays.binarySearch(values, 0, card, low);
+        if (at >= 0) {
+            return false;
+        }
+        at = -at - 1;
+        if (card == ARRAY_MAX) {
+            long[] words = toBitmap(values, card);
+            words[low >>> 6] |= 1L << low;
+            containers[i] = words;
+        } else {
+            if (card == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, card * 2)));
+                containers[i] = values;
+            }
+            System.arraycopy(values, at, values, at + 1, card - at);
+            values[at] = low;
+        }
+        cardinalities[i]++;
+        return true;
+    }
+
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int i = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) id;
+        if (containers[i] instanceof long[] words) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[i], 0, cardinalities[i], low) >= 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            if (containers[i] instanceof long[] words) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) containers[i];
+                for (int v = 0; v < cardinalities[i]; v++) {
+                    action.accept(high | values[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add every id of the other bitmap, chunk by chunk (array merge or word
+     * OR, never id by id).
+     *
+     * @return true if this bitmap changed
+     */
+    public boolean or(RoaringBitmap other) {
+        boolean changed = false;
+        for (int j = 0; j < other.size; j++) {
+            int i = Arrays.binarySearch(keys, 0, size, other.keys[j]);
+            if (i < 0) {
+                i = -i - 1;
+                insertContainer(i, other.keys[j]);
+            }
+            int before = cardinalities[i];
+            orContainer(i, other.containers[j], other.cardinalities[j]);
+            changed |= cardinalities[i] != before;
+        }
+        return changed;
+    }
+
+    public long cardinality() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += cardinalities[i];
+        }
+        return total;
+    }
+
+    public long sizeInBytes() {
+        long bytes = 16L + size * 8L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i] instanceof long[] ? BITMAP_WORDS * 8L : ((char[]) containers[i]).length * 2L;
+        }
+        return bytes;
+    }
+
+    public byte[] serialize() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, sizeInBytes()));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeChar(keys[i]);
+                out.writeInt(cardinalities[i]);
+                if (containers[i] instanceof long[] words) {
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                } else {
+                    char[] values = (char[]) containers[i];
+                    for (int v = 0; v < cardinalities[i]; v++) {
+                        out.writeChar(values[v]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static RoaringBitmap deserialize(byte[] data) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        if (data == null || data.length == 0) {
+            return bitmap;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != FORMAT) {
+                throw new IllegalArgumentException("Unknown bitmap format");
+            }
+            int size = in.readInt();
+            bitmap.keys = new char[Math.max(4, size)];
+            bitmap.containers = new Object[Math.max(4, size)];
+            bitmap.cardinalities = new int[Math.max(4, size)];
+            for (int i = 0; i < size; i++) {
+                bitmap.keys[i] = in.readChar();
+                int card = in.readInt();
+                bitmap.cardinalities[i] = card;
+                if (card > ARRAY_MAX) {
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] = in.readLong();
+                    }
+                    bitmap.containers[i] = words;
+                } else {
+                    char[] values = new char[Math.max(4, card)];
+                    for (int v = 0; v < card; v++) {
+                        values[v] = in.readChar();
+                    }
+                    bitmap.containers[i] = values;
+                }
+            }
+            bitmap.size = size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+
+    private void insertContainer(int at, char key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+            cardinalities = Arrays.copyOf(cardinalities, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        System.arraycopy(cardinalities, at, cardinalities, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = new char[4];
+        cardinalities[at] = 0;
+        size++;
+    }
+
+    // Union into container i; it stays a bitmap exactly when its cardinality is above ARRAY_MAX
+    private void orContainer(int i, Object other, int otherCard) {
+        long[] words;
+        if (containers[i] instanceof long[] mine) {
+            words = mine;
+        } else if (other instanceof long[] theirs) {
+            words = theirs.clone();
+            other = containers[i];
+            otherCard = cardinalities[i];
+        } else {
+            char[] a = (char[]) containers[i];
+            char[] b = (char[]) other;
+            int aCard = cardinalities[i];
+            char[] merged = new char[aCard + otherCard];
+            int x = 0, y = 0, n = 0;
+            while (x < aCard && y < otherCard) {
+                if (a[x] < b[y]) {
+                    merged[n++] = a[x++];
+                } else if (a[x] > b[y]) {
+                    merged[n++] = b[y++];
+                } else {
+                    merged[n++] = a[x++];
+                    y++;
+                }
+            }
+            while (x < aCard) {
+                merged[n++] = a[x++];
+            }
+            while (y < otherCard) {
+                merged[n++] = b[y++];
+            }
+            if (n == aCard) {
+                return; // nothing new
+            }
+            containers[i] = n > ARRAY_MAX ? toBitmap(merged, n)
+                    : n < merged.length ? Arrays.copyOf(merged, Math.max(4, n)) : merged;
+            cardinalities[i] = n;
+            return;
+        }
+        if (other instanceof long[] theirs) {
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] |= theirs[w];
+            }
+        } else {
+            char[] values = (char[]) other;
+            for (int v = 0; v < otherCard; v++) {
+                words[values[v] >>> 6] |= 1L << values[v];
+            }
+        }
+        int card = 0;
+        for (long word : words) {
+            card += Long.bitCount(word);
+        }
+        containers[i] = words;
+        cardinalities[i] = card;
+    }
+
+    private static long[] toBitmap(char[] values, int card) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int v = 0; v < card; v++) {
+            words[values[v] >>> 6] |= 1L << values[v];
+        }
+        return words;
+    }
+}
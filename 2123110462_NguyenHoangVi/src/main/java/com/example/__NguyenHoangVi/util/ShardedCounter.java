@@ -0,0 +1,53 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Budget-splitting counter: a global limit is divided into N slots and each
+ * acquire claims one unit from any slot that still has budget.
+ *
+ * Each slot is only ever incremented through an atomic "used < budget"
+ * check (a CAS in memory, a conditional UPDATE in the database), and the
+ * budgets sum to the limit, so the total can never exceed it. Starting at a
+ * random slot spreads concurrent writers over N rows instead of one hot row;
+ * probing the remaining slots on failure means the last units are still
+ * handed out exactly, not lost in a slot nobody visits.
+ */
+public final class ShardedCounter {
+
+    private ShardedCounter() {
+    }
+
+    @FunctionalInterface
+    public interface Slots {
+        // Atomically take one unit from slot if used < budget
+        boolean tryIncrement(int slot);
+    }
+
+    /**
+     * Take one unit from any slot. Returns false only when every slot was
+     * full at the time it was probed.
+     */
+    public static boolean acquire(Slots slots, int slotCount) {
+        int start = slotCount > 1 ? ThreadLocalRandom.current().nextInt(slotCount) : 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (slots.tryIncrement((start + i) % slotCount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Split total into slotCount budgets differing by at most one
+    public static int[] splitBudget(int total, int slotCount) {
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("slotCount must be >= 1");
+        }
+        int[] budgets = new int[slotCount];
+        int remaining = Math.max(0, total);
+        for (int i = 0; i < slotCount; i++) {
+            budgets[i] = remaining / slotCount + (i < remaining % slotCount ? 1 : 0);
+        }
+        return budgets;
+    }
+}
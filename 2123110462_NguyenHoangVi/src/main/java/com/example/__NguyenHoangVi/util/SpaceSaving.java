@@ -0,0 +1,214 @@
+package com.example.__NguyenHoangVi.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy-hitter summary over long ids with weighted counts
+ * (Metwally et al.): at most capacity counters, kept in a min-heap. An id
+ * that is not tracked when the summary is full replaces the smallest
+ * counter and inherits its count as error.
+ *
+ * Guarantees for a stream of total weight N: every estimate is an upper
+ * bound, estimate - error is a lower bound, error <= N / capacity, and any
+ * id with true count > N / capacity is tracked. merge() keeps both bounds,
+ * so summaries of consecutive windows can be combined. subtract() takes
+ * back weight added earlier (a cancelled sale) and keeps both bounds.
+ *
+ * Not thread-safe; callers lock around it.
+ */
+public class SpaceSaving {
+
+    public record Item(long id, long count, long error) {
+
+        // Count that is certainly reached
+        public long guaranteed() {
+            return Math.max(0, count - error);
+        }
+    }
+
+    private static final class Counter {
+        final long id;
+        long count;
+        long error;
+        int heapIndex;
+
+        Counter(long id, long count, long error) {
+            this.id = id;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<Long, Counter> counters;
+    private final Counter[] heap; // min-heap by count
+    private int size;
+    private long total;
+    private boolean evicted; // some id lost its counter, so untracked ids may have been seen
+
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.counters = new HashMap<>(this.capacity * 2);
+        this.heap = new Counter[this.capacity];
+    }
+
+    public void add(long id, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        total += weight;
+        Counter counter = counters.get(id);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.heapIndex);
+            return;
+        }
+        if (size < capacity) {
+            counter = new Counter(id, weight, 0);
+            counter.heapIndex = size;
+            heap[size++] = counter;
+            counters.put(id, counter);
+            siftUp(counter.heapIndex);
+            return;
+        }
+        // Replace the smallest counter; its count becomes the newcomer's error
+        evicted = true;
+        Counter min = heap[0];
+        counters.remove(min.id);
+        counter = new Counter(id, min.count + weight, min.count);
+        counter.heapIndex = 0;
+        heap[0] = counter;
+        counters.put(id, counter);
+        siftDown(0);
+    }
+
+    /**
+     * Take back weight that was added for the id. A tracked counter drops
+     * by it (so the lower bound may go below zero, shown as 0); an
+     * untracked id's weight is already folded into some error and stays.
+     */
+    public void subtract(long id, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        total = Math.max(0, total - weight);
+        Counter counter = counters.get(id);
+        if (counter != null) {
+            counter.count = Math.max(0, counter.count - weight);
+            siftUp(counter.heapIndex);
+        }
+    }
+
+    // Upper bound on the count of an id (0 if it can't have been seen)
+    public long estimate(long id) {
+        Counter counter = counters.get(id);
+        if (counter != null) {
+            return counter.count;
+        }
+        return evicted ? heap[0].count : 0;
+    }
+
+    /**
+     * Add another summary into this one. Ids missing from a summary that
+     * has evicted are charged its smallest count as both count and error,
+     * so estimates stay upper bounds; the largest capacity counters are kept.
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = evicted ? heap[0].count : 0;
+        long otherMin = other.evicted ? other.heap[0].count : 0;
+        Map<Long, long[]> merged = new HashMap<>((size + other.size) * 2);
+        for (int i = 0; i < size; i++) {
+            Counter c = heap[i];
+            Counter o = other.counters.get(c.id);
+            merged.put(c.id, o != null
+                    ? new long[] { c.count + o.count, c.error + o.error }
+                    : new long[] { c.count + otherMin, c.error + otherMin });
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter o = other.heap[i];
+            if (!counters.containsKey(o.id)) {
+                merged.put(o.id, new long[] { o.count + thisMin, o.error + thisMin });
+            }
+        }
+        List<Map.Entry<Long, long[]>> entries = new ArrayList<>(merged.entrySet());
+        evicted |= other.evicted;
+        if (entries.size() > capacity) {
+            evicted = true;
+            entries.sort(Comparator.comparingLong((Map.Entry<Long, long[]> e) -> e.getValue()[0]).reversed());
+            entries = entries.subList(0, capacity);
+        }
+        counters.clear();
+        size = 0;
+        for (Map.Entry<Long, long[]> entry : entries) {
+            Counter counter = new Counter(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            counter.heapIndex = size;
+            heap[size++] = counter;
+            counters.put(counter.id, counter);
+            siftUp(counter.heapIndex);
+        }
+        total += other.total;
+    }
+
+    // The k largest counters, largest first
+    public List<Item> top(int k) {
+        List<Item> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new Item(heap[i].id, heap[i].count, heap[i].error));
+        }
+        items.sort(Comparator.comparingLong(Item::count).reversed().thenComparingLong(Item::id));
+        return items.size() > k ? new ArrayList<>(items.subList(0, Math.max(0, k))) : items;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void siftUp(int i) {
+        Counter counter = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(counter, i);
+    }
+
+    private void siftDown(int i) {
+        Counter counter = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], i);
+            i = child;
+        }
+        place(counter, i);
+    }
+
+    private void place(Counter counter, int i) {
+        heap[i] = counter;
+        counter.heapIndex = i;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.Application;
+import com.example.__NguyenHoangVi.dto.Notification;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Reconnect with Last-Event-ID across a real restart: notifications are
+ * published on one application context, it is shut down, and a client
+ * resumes its stream on a fresh one (random port, the application's MySQL
+ * database). Nothing has been fanned out on the new node yet, so the
+ * replay has to come from the store.
+ */
+class NotificationHubTest {
+
+
+    @Test
+    void reconnectAfterRestartReplaysMissedNotifications() throws Exception {
+        String phone = "hub-test-" + System.nanoTime();
+        Notification seen;
+        Notification missed;
+        try (ConfigurableApplicationContext before = start()) {
+            NotificationHub hub = before.getBean(NotificationHub.class);
+            seen = hub.publish("Seen", "before restart", "news", "specific", List.of(phone), null, null);
+            missed = hub.publish("Missed", "before restart", "news", "specific", List.of(phone), null, null);
+        } // shutdown flushes the store to the table
+
+        try (ConfigurableApplicationContext after = start()) {
+            int port = after.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + port + "/api/admin/notifications/stream?userPhone=" + phone))
+                    .header("Accept", "text/event-stream")
+                    .header("Last-Event-ID", Long.toString(seen.seq()))
+                    .GET()
+                    .build();
+            CompletableFuture<?> stream = HttpClient.newHttpClient()
+                    .sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(new Lines(lines)));
+            try {
+                assertEquals(Long.toString(missed.seq()), nextEventId(lines));
+            } finally {
+                stream.cancel(true);
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(Application.class).properties("server.port=0").run();
+    }
+
+    // The id of the first event on the stream (heartbeat comments have none)
+    private static String nextEventId(BlockingQueue<String> lines) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            String line = lines.poll(100, TimeUnit.MILLISECONDS);
+            if (line != null && line.startsWith("id:")) {
+                return line.substring(3).trim();
+            }
+        }
+        return fail("no event replayed within 10 s");
+    }
+
+    private static final class Lines implements Flow.Subscriber<String> {
+        private final BlockingQueue<String> lines;
+
+        Lines(BlockingQueue<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            lines.add(line);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.dto.Notification;
+import com.example.__NguyenHoangVi.util.LatencyHistogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.http.converter.autoconfigure.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.jackson.autoconfigure.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.tomcat.autoconfigure.servlet.TomcatServletWebServerAutoConfiguration;
+import org.springframework.boot.webmvc.autoconfigure.DispatcherServletAutoConfiguration;
+import org.springframework.boot.webmvc.autoconfigure.WebMvcAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * How many concurrent SSE subscribers one node holds: the real
+ * NotificationHub behind embedded Tomcat on a random port, with the store,
+ * read state and cluster bus mocked (no database on the stream path).
+ *
+ * Opens N concurrent streams (non-blocking client, no thread per stream),
+ * waits until every stream is open, publishes one broadcast and checks
+ * that it reaches every subscriber. N defaults to 1000; step it with
+ * -Dnotifications.load.subscribers=5000 etc.
+ *
+ * Measured on 1 vCPU / 5 GB, ulimit -n 20000, server.tomcat.max-connections
+ * 20000 (as in application.properties), client in the same JVM and sharing
+ * the one CPU (so latencies are pessimistic):
+ *   1000 streams: all open (connect p99 3.7 s), broadcast reached all, fan-out p99 1.2 s
+ *   5000 streams: all open (connect p99 9.4 s), broadcast reached all, fan-out p99 1.9 s
+ *   9000 streams: all open (connect p99 12.6 s), broadcast reached all, fan-out p99 5.6 s
+ *  10000 streams: connects fail with "Too many open files"
+ * The ceiling here is file descriptors, not the hub: client and server
+ * share the process, so each stream costs two of the 20000. A node serving
+ * remote clients holds roughly ulimit -n streams (minus the connection pool
+ * and open files), as long as max-connections is raised with it.
+ */
+@SpringBootTest(classes = NotificationStreamLoadTest.StreamNode.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "server.tomcat.max-connections=20000")
+class NotificationStreamLoadTest {
+
+    private static final int SUBSCRIBERS = Integer.getInteger("notifications.load.subscribers", 1000);
+    private static final int CONNECT_BATCH = 500;
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @MockitoBean
+    private NotificationStore notificationStore;
+
+    @MockitoBean
+    private NotificationReadService notificationReadService;
+
+    @MockitoBean
+    private ClusterEventBus clusterEventBus;
+
+    private final List<CompletableFuture<?>> streams = new ArrayList<>();
+
+    @BeforeEach
+    void stubStore() {
+        AtomicLong seq = new AtomicLong();
+        when(notificationStore.publish(anyString(), anyString(), anyString(), anyString(), anyList(), any(), any()))
+                .thenAnswer(call -> new Notification("load-" + seq.incrementAndGet(), seq.get(),
+                        call.getArgument(0), call.getArgument(1), call.getArgument(2), call.getArgument(3),
+                        List.of(), null, null, "2026-01-01T00:00:00", System.currentTimeMillis() * 1000, true));
+    }
+
+    @AfterEach
+    void closeStreams() {
+        for (CompletableFuture<?> stream : streams) {
+            stream.cancel(true);
+        }
+    }
+
+    @Test
+    void broadcastReachesEveryOpenStream() throws Exception {
+        String baseUrl = "http://localhost:" + port;
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        CountDownLatch opened = new CountDownLatch(SUBSCRIBERS);
+        CountDownLatch received = new CountDownLatch(SUBSCRIBERS);
+        AtomicInteger failed = new AtomicInteger();
+        LatencyHistogram connectLatency = new LatencyHistogram();
+        LatencyHistogram fanoutLatency = new LatencyHistogram();
+        AtomicLong sentAt = new AtomicLong(Long.MAX_VALUE);
+
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create(baseUrl + "/stream?userPhone=load-" + i))
+                    .header("Accept", "text/event-stream")
+                    .GET()
+                    .build();
+            StreamListener listener = new StreamListener(System.nanoTime(), opened, received, connectLatency,
+                    fanoutLatency, sentAt, failed);
+            streams.add(client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(listener))
+                    .whenComplete((response, error) -> {
+                        if (error != null || response.statusCode() != 200) {
+                            listener.fail();
+                        }
+                    }));
+            if ((i + 1) % CONNECT_BATCH == 0) {
+                Thread.sleep(50); // don't overflow the server's accept backlog
+            }
+        }
+
+        assertTrue(opened.await(120, TimeUnit.SECONDS), "streams still opening: " + opened.getCount());
+        assertEquals(0, failed.get(), "streams failed to open");
+        System.out.printf("📊 Connect (first byte): p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                connectLatency.percentileMillis(0.5), connectLatency.percentileMillis(0.99),
+                connectLatency.maxMillis());
+
+        HttpRequest send = HttpRequest.newBuilder(URI.create(baseUrl + "/send"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        sentAt.set(System.nanoTime());
+        HttpResponse<String> sendResponse = client.send(send, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, sendResponse.statusCode(), sendResponse.body());
+
+        assertTrue(received.await(60, TimeUnit.SECONDS), "broadcast missing on " + received.getCount() + " streams");
+        assertEquals(0, failed.get(), "streams closed before the broadcast arrived");
+        assertEquals(SUBSCRIBERS, fanoutLatency.count());
+        System.out.printf("📊 Fan-out to %d streams: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n", SUBSCRIBERS,
+                fanoutLatency.percentileMillis(0.5), fanoutLatency.percentileMillis(0.99), fanoutLatency.maxMillis());
+    }
+
+    // One node's stream path: the hub and its endpoints, nothing behind them
+    @Configuration
+    @ImportAutoConfiguration({ TomcatServletWebServerAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class, JacksonAutoConfiguration.class })
+    @Import(StreamEndpoints.class)
+    static class StreamNode {
+
+        @Bean
+        NotificationHub notificationHub() {
+            return new NotificationHub(4);
+        }
+
+    }
+
+    // The admin stream/send endpoints reduced to the hub calls
+    @RestController
+    static class StreamEndpoints {
+
+        @Autowired
+        private NotificationHub notificationHub;
+
+        @GetMapping(value = "/stream", produces = "text/event-stream")
+        SseEmitter stream(@RequestParam("userPhone") String userPhone) {
+            return notificationHub.subscribe(userPhone, null);
+        }
+
+        @PostMapping("/send")
+        Notification send() {
+            return notificationHub.publish("Load test", "broadcast", "news", "all", List.of(), null, null);
+        }
+    }
+
+    // Counts the first line (stream open) and the first notification event of one stream
+    private static final class StreamListener implements Flow.Subscriber<String> {
+        private final long startedAt;
+        private final CountDownLatch opened;
+        private final CountDownLatch received;
+        private final LatencyHistogram connectLatency;
+        private final LatencyHistogram fanoutLatency;
+        private final AtomicLong sentAt;
+        private final AtomicInteger failed;
+        private boolean isOpen;
+        private boolean gotEvent;
+
+        StreamListener(long startedAt, CountDownLatch opened, CountDownLatch received,
+                LatencyHistogram connectLatency, LatencyHistogram fanoutLatency, AtomicLong sentAt,
+                AtomicInteger failed) {
+            this.startedAt = startedAt;
+            this.opened = opened;
+            this.received = received;
+            this.connectLatency = connectLatency;
+            this.fanoutLatency = fanoutLatency;
+            this.sentAt = sentAt;
+            this.failed = failed;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public synchronized void onNext(String line) {
+            long now = System.nanoTime();
+            if (!isOpen) {
+                isOpen = true;
+                connectLatency.recordNanos(now - startedAt);
+                opened.countDown();
+            }
+            if (!gotEvent && line.startsWith("event:") && line.contains("notification") && now >= sentAt.get()) {
+                gotEvent = true;
+                fanoutLatency.recordNanos(now - sentAt.get());
+                received.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail();
+        }
+
+        @Override
+        public void onComplete() {
+            fail();
+        }
+
+        // Release both latches so the test fails on the count instead of waiting out the timeout
+        synchronized void fail() {
+            if (isOpen && gotEvent) {
+                return; // cancelled after it was done
+            }
+            failed.incrementAndGet();
+            if (!isOpen) {
+                isOpen = true;
+                opened.countDown();
+            }
+            if (!gotEvent) {
+                gotEvent = true;
+                received.countDown();
+            }
+        }
+    }
+}
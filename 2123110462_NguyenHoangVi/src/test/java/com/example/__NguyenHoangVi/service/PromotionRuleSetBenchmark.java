@@ -0,0 +1,82 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Promotion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for cart pricing against a compiled rule set.
+ * Run from the IDE, or: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.__NguyenHoangVi.service.PromotionRuleSetBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromotionRuleSetBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int promotionCount;
+
+    private PromotionRuleSet ruleSet;
+    private BigDecimal[] subtotals;
+    private String[] codes;
+    private long now;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        LocalDateTime base = LocalDateTime.now();
+        List<Promotion> promotions = new ArrayList<>();
+        codes = new String[promotionCount];
+        for (int i = 0; i < promotionCount; i++) {
+            boolean fixed = random.nextBoolean();
+            Promotion p = new Promotion("CODE" + i, "Promotion " + i, fixed ? "fixed" : "percentage",
+                    BigDecimal.valueOf(fixed ? 5_000 + random.nextInt(50_000) : 5 + random.nextInt(30)));
+            p.setId((long) i + 1);
+            p.setMinPurchase(BigDecimal.valueOf(random.nextInt(500_000)));
+            p.setMaxDiscount(fixed ? null : BigDecimal.valueOf(20_000 + random.nextInt(100_000)));
+            p.setStartDate(base.minusDays(random.nextInt(10)));
+            p.setEndDate(base.plusDays(random.nextInt(10) - 2));
+            promotions.add(p);
+            codes[i] = p.getCode();
+        }
+        ruleSet = PromotionRuleSet.compile(promotions);
+        now = System.currentTimeMillis();
+
+        subtotals = new BigDecimal[1024];
+        for (int i = 0; i < subtotals.length; i++) {
+            subtotals[i] = BigDecimal.valueOf(10_000 + random.nextInt(1_000_000));
+        }
+    }
+
+    @Benchmark
+    public PromotionRuleSet.Result bestPromotion() {
+        return ruleSet.best(subtotals[cursor++ & 1023], now);
+    }
+
+    @Benchmark
+    public PromotionRuleSet.Result promotionByCode() {
+        int i = cursor++;
+        return ruleSet.forCode(codes[i % codes.length], subtotals[i & 1023], now);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(PromotionRuleSetBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
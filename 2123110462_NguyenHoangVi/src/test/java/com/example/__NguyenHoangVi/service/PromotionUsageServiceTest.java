@@ -0,0 +1,162 @@
+package com.example.__NguyenHoangVi.service;
+
+import com.example.__NguyenHoangVi.entity.Promotion;
+import com.example.__NguyenHoangVi.repository.PromotionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Promotion usage limits against the application's MySQL database: the
+ * real conditional UPDATEs of both counter modes, and the switch between
+ * them while 32 threads keep using the promotion with the Promotion row
+ * they loaded at the start (so most of them run in a stale mode).
+ */
+@SpringBootTest
+class PromotionUsageServiceTest {
+
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS_PER_THREAD = 25;
+    private static final int LIMIT = 300;
+
+    @Autowired
+    private PromotionUsageService usageService;
+
+    @Autowired
+    private PromotionRepository promotionRepository;
+
+    private Long promotionId;
+
+    @BeforeEach
+    void createPromotion() {
+        Promotion promotion = new Promotion();
+        promotion.setCode("TEST-USAGE-" + System.nanoTime());
+        promotion.setName("Usage limit test");
+        promotion.setDiscountValue(BigDecimal.TEN);
+        promotion.setIsActive(false); // never compiled into the live rule set
+        promotion.setUsageLimit(LIMIT);
+        promotion.setUsageCount(0);
+        promotionId = promotionRepository.save(promotion).getId();
+    }
+
+    @AfterEach
+    void deletePromotion() {
+        usageService.deleteShards(promotionId);
+        promotionRepository.deleteById(promotionId);
+    }
+
+    @Test
+    void singleCounterUpdateSkipsShardedPromotions() {
+        usageService.setShards(promotionId, 4);
+        assertEquals(0, promotionRepository.incrementUsage(promotionId, LocalDateTime.now()));
+
+        Promotion promotion = reload();
+        assertEquals(0, usageService.totalUsage(promotion));
+        assertTrue(usageService.use(promotion));
+        assertEquals(1, usageService.totalUsage(reload()));
+    }
+
+    @Test
+    void singleCounterNeverExceedsLimit() throws Exception {
+        assertEquals(LIMIT, useConcurrently(false));
+        assertExhausted();
+    }
+
+    @Test
+    void shardedCounterNeverExceedsLimit() throws Exception {
+        usageService.setShards(promotionId, 16);
+        assertEquals(LIMIT, useConcurrently(false));
+        assertExhausted();
+    }
+
+    @Test
+    void limitHoldsWhileModeSwitches() throws Exception {
+        int granted = useConcurrently(true);
+        assertTrue(granted <= LIMIT, "granted " + granted);
+
+        // A use can be refused while the mode flips twice under it; the rest of the budget is still there
+        Promotion current = reload();
+        while (usageService.use(current)) {
+            granted++;
+        }
+        assertEquals(LIMIT, granted);
+        assertExhausted();
+    }
+
+    @Test
+    void exhaustedOnlyOnceTheLastUnitIsTaken() {
+        usageService.setShards(promotionId, 8);
+        Promotion promotion = reload();
+        for (int i = 0; i < LIMIT - 1; i++) {
+            assertTrue(usageService.use(promotion));
+        }
+        assertFalse(usageService.exhausted(promotion));
+        assertTrue(usageService.use(promotion));
+        assertTrue(usageService.exhausted(promotion));
+    }
+
+    // Demand (32 x 25) is well above the limit; returns the number of granted uses
+    private int useConcurrently(boolean switchModes) throws Exception {
+        Promotion snapshot = reload();
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    if (usageService.use(snapshot)) {
+                        granted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        if (switchModes) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20; i++) {
+                    usageService.setShards(promotionId, i % 2 == 0 ? 8 : 1);
+                    Thread.sleep(5);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get(60, TimeUnit.SECONDS); // rethrows failures from the workers
+        }
+        pool.shutdown();
+        return granted.get();
+    }
+
+    private void assertExhausted() {
+        Promotion promotion = reload();
+        assertEquals(LIMIT, usageService.totalUsage(promotion));
+        assertTrue(usageService.exhausted(promotion));
+        assertFalse(usageService.use(promotion));
+        assertEquals(LIMIT, usageService.totalUsage(reload()));
+    }
+
+    private Promotion reload() {
+        return promotionRepository.findById(promotionId).orElseThrow();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.__NguyenHoangVi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Serialized blob round trips and container-level OR, checked against a
+ * TreeSet. Cardinalities straddle the 4096-id switch from a sorted array
+ * to an 8 KB bitset within one chunk.
+ */
+class RoaringBitmapTest {
+
+    private static final int[] CARDINALITIES = { 0, 1, 4095, 4096, 4097, 10_000 };
+
+    @Test
+    void roundTripKeepsIdsAcrossArrayToBitmapBoundary() {
+        for (int card : CARDINALITIES) {
+            RoaringBitmap bitmap = new RoaringBitmap();
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int i = 0; i < card; i++) {
+                int id = i * 3 + 7; // one chunk: at most 30_007 < 65_536
+                bitmap.add(id);
+                expected.add(id);
+            }
+            assertEquals(card, bitmap.cardinality());
+
+            RoaringBitmap copy = RoaringBitmap.deserialize(bitmap.serialize());
+            assertEquals(card, copy.cardinality(), "cardinality after round trip at " + card);
+            assertEquals(expected, contents(copy));
+            assertFalse(copy.contains(8));
+
+            // The copy keeps growing across the boundary like the original
+            assertTrue(copy.add(1));
+            assertEquals(card + 1, copy.cardinality());
+            assertEquals(card + 1, RoaringBitmap.deserialize(copy.serialize()).cardinality());
+        }
+    }
+
+    @Test
+    void roundTripSpansChunks() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            int id = random.nextInt(Integer.MAX_VALUE);
+            bitmap.add(id);
+            expected.add(id);
+        }
+        for (int i = 0; i < 5_000; i++) {
+            bitmap.add((7 << 16) + i); // one dense chunk among the sparse ones
+            expected.add((7 << 16) + i);
+        }
+        RoaringBitmap copy = RoaringBitmap.deserialize(bitmap.serialize());
+        assertEquals(expected.size(), copy.cardinality());
+        assertEquals(expected, contents(copy));
+        assertEquals(0, RoaringBitmap.deserialize(new byte[0]).cardinality());
+    }
+
+    @Test
+    void orMatchesSetUnion() {
+        Random random = new Random(7);
+        for (int left : CARDINALITIES) {
+            for (int right : CARDINALITIES) {
+                RoaringBitmap a = new RoaringBitmap();
+                RoaringBitmap b = new RoaringBitmap();
+                TreeSet<Integer> expected = new TreeSet<>();
+                fill(a, expected, left, 1, random);
+                TreeSet<Integer> bIds = new TreeSet<>();
+                fill(b, bIds, right, 2, random);
+                expected.addAll(bIds);
+
+                long before = a.cardinality();
+                boolean changed = a.or(b);
+                assertEquals(expected.size() != before, changed, left + " | " + right);
+                assertEquals(expected.size(), a.cardinality(), left + " | " + right);
+                assertEquals(expected, contents(a), left + " | " + right);
+                assertEquals(expected, contents(RoaringBitmap.deserialize(a.serialize())));
+
+                assertFalse(a.or(b), "second or changes nothing");
+                assertFalse(a.or(a));
+            }
+        }
+    }
+
+    // Ids in chunk 1 (shared by both sides, so unions cross 4096) and chunks up to maxChunk
+    private static void fill(RoaringBitmap bitmap, TreeSet<Integer> ids, int count, int maxChunk, Random random) {
+        while (ids.size() < count) {
+            int chunk = ids.size() % 8 == 0 ? 1 + random.nextInt(maxChunk) : 1;
+            int id = (chunk << 16) | random.nextInt(12_000);
+            bitmap.add(id);
+            ids.add(id);
+        }
+    }
+
+    private static TreeSet<Integer> contents(RoaringBitmap bitmap) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        bitmap.forEach(ids::add);
+        return ids;
+    }
+}
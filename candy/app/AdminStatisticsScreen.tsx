@@ -42,7 +42,7 @@ export default function AdminStatisticsScreen() {
           {item.productName}
         </Text>
         <View style={styles.productMeta}>
-          <Text style={styles.metaText}>📊 {item.salesCount} bán</Text>
+          <Text style={styles.metaText}>📊 {item.sold} bán</Text>
           <Text style={styles.metaText}>⭐ {item.rating.toFixed(1)}</Text>
         </View>
       </View>
@@ -51,7 +51,7 @@ export default function AdminStatisticsScreen() {
   );
 
   const renderDailyStats = ({ item, index }: any) => {
-    const maxRevenue = Math.max(...dailyStats.map((s: any) => s.revenue));
+    const maxRevenue = Math.max(1, ...dailyStats.map((s: any) => s.revenue));
     const barHeight = (item.revenue / maxRevenue) * 100;
 
     return (
@@ -89,19 +89,19 @@ export default function AdminStatisticsScreen() {
               label="Tổng doanh thu"
               value={`₫${(orderStats.totalRevenue / 1000000).toFixed(1)}M`}
               color="#10b981"
-              subtext={`Trung bình: ₫${(orderStats.totalRevenue / orderStats.totalOrders / 1000).toFixed(0)}K`}
+              subtext={`Trung bình: ₫${(orderStats.avgOrderValue / 1000).toFixed(0)}K`}
             />
             <StatCard
               label="Đơn xác nhận"
               value={orderStats.confirmedOrders}
               color="#f59e0b"
-              subtext={`${((orderStats.confirmedOrders / orderStats.totalOrders) * 100).toFixed(0)}% tổng số`}
+              subtext={`${((orderStats.confirmedOrders / Math.max(1, orderStats.totalOrders)) * 100).toFixed(0)}% tổng số`}
             />
             <StatCard
               label="Đơn hủy"
               value={orderStats.cancelledOrders}
               color="#ef4444"
-              subtext={`${((orderStats.cancelledOrders / orderStats.totalOrders) * 100).toFixed(0)}% tổng số`}
+              subtext={`${((orderStats.cancelledOrders / Math.max(1, orderStats.totalOrders)) * 100).toFixed(0)}% tổng số`}
             />
           </View>
         </View>
@@ -120,7 +120,7 @@ export default function AdminStatisticsScreen() {
                   style={[
                     styles.statusBarFill,
                     {
-                      width: `${(orderStats.pendingOrders / orderStats.totalOrders) * 100}%`,
+                      width: `${(orderStats.pendingOrders / Math.max(1, orderStats.totalOrders)) * 100}%`,
                       backgroundColor: '#3b82f6',
                     },
                   ]}
@@ -139,7 +139,7 @@ export default function AdminStatisticsScreen() {
                   style={[
                     styles.statusBarFill,
                     {
-                      width: `${(orderStats.confirmedOrders / orderStats.totalOrders) * 100}%`,
+                      width: `${(orderStats.confirmedOrders / Math.max(1, orderStats.totalOrders)) * 100}%`,
                       backgroundColor: '#f59e0b',
                     },
                   ]}
@@ -158,7 +158,7 @@ export default function AdminStatisticsScreen() {
                   style={[
                     styles.statusBarFill,
                     {
-                      width: `${(orderStats.cancelledOrders / orderStats.totalOrders) * 100}%`,
+                      width: `${(orderStats.cancelledOrders / Math.max(1, orderStats.totalOrders)) * 100}%`,
                       backgroundColor: '#ef4444',
                     },
                   ]}
@@ -222,7 +222,7 @@ export default function AdminStatisticsScreen() {
             <View style={styles.summaryItem}>
               <Text style={styles.summaryLabel}>Tỷ lệ chuyển đổi</Text>
               <Text style={styles.summaryValue}>
-                {orderStats ? ((orderStats.confirmedOrders / orderStats.totalOrders) * 100).toFixed(1) : 0}%
+                {orderStats ? ((orderStats.confirmedOrders / Math.max(1, orderStats.totalOrders)) * 100).toFixed(1) : 0}%
               </Text>
             </View>
             <View style={styles.divider} />
@@ -4,23 +4,49 @@ import { useUser } from '../context/UserContext';
 import { getApiUrl } from '../config/network';
 
 /**
- * Component này chạy ở background để poll notifications từ backend
- * Mỗi 5 giây sẽ check một lần xem có thông báo mới nào
+ * Component này chạy ở background để nhận notifications từ backend
+ * qua Server-Sent Events (/api/admin/notifications/stream). React Native không có
+ * EventSource nên đọc stream bằng XMLHttpRequest (responseText tăng dần).
+ * Khi mất kết nối sẽ tự kết nối lại với lastEventId để không bỏ sót thông báo;
+ * nếu stream lỗi liên tục thì quay về poll mỗi 5 giây.
  */
 export function NotificationPoller() {
   const { addNotification } = useNotification();
   const { userPhone } = useUser();
-  const pollingIntervalRef = useRef<ReturnType<typeof setInterval> | null>(null);
-  const lastCheckRef = useRef<string>(new Date().toISOString());
+  const lastSeqRef = useRef<number | null>(null);
 
   useEffect(() => {
     if (!userPhone) return;
 
+    let stopped = false;
+    let xhr: XMLHttpRequest | null = null;
+    let retryTimer: ReturnType<typeof setTimeout> | null = null;
+    let pollingInterval: ReturnType<typeof setInterval> | null = null;
+    let failures = 0;
+
+    const handleNotification = async (noti: any) => {
+      if (typeof noti.seq === 'number') {
+        lastSeqRef.current = Math.max(lastSeqRef.current ?? 0, noti.seq);
+      }
+      await addNotification({
+        id: noti.id,
+        title: noti.title,
+        message: noti.message,
+        type: noti.type || 'promotion',
+        isRead: false,
+        createdAt: noti.sentAt || new Date().toISOString(),
+        actionUrl: noti.actionUrl,
+      });
+    };
+
+    // Fallback: poll by seq cursor (or by time on first load)
     const pollNotifications = async () => {
       try {
-        // Call backend để lấy thông báo mới
+        const cursor = lastSeqRef.current !== null
+          ? `sinceSeq=${lastSeqRef.current}`
+          : `since=${encodeURIComponent(new Date().toISOString())}`;
         const response = await fetch(
-          `${getApiUrl()}/admin/notifications/new?since=${encodeURIComponent(lastCheckRef.current)}&userPhone=${userPhone}`,
+          `${getApiUrl()}/api/admin/notifications/new?${cursor}&userPhone=${userPhone}`,
           {
             method: 'GET',
             headers: {
@@ -28,47 +54,87 @@ export function NotificationPoller() {
             },
           }
         );
-
         if (response.ok) {
           const data = await response.json();
-          
-          // data là array of notifications
-          if (Array.isArray(data) && data.length > 0) {
-            console.log(`📬 Received ${data.length} new notifications`);
-            
-            // Add each notification
+          if (Array.isArray(data)) {
             for (const noti of data) {
-              await addNotification({
-                id: noti.id,
-                title: noti.title,
-                message: noti.message,
-                type: noti.type || 'promotion',
-                isRead: false,
-                createdAt: noti.sentAt || new Date().toISOString(),
-                actionUrl: noti.actionUrl,
-              });
+              await handleNotification(noti);
             }
-            
-            // Update last check time
-            lastCheckRef.current = new Date().toISOString();
           }
         }
       } catch {
         // Silently fail - don't spam console in production
-        // Notification polling check happens in background
       }
     };
 
-    // Poll immediately on first load
-    pollNotifications();
+    // Stream works again (event or heartbeat): stop the fallback polling
+    const streamHealthy = () => {
+      failures = 0;
+      if (pollingInterval) {
+        clearInterval(pollingInterval);
+        pollingInterval = null;
+      }
+    };
+
+    const connect = () => {
+      if (stopped) return;
+      const lastId = lastSeqRef.current !== null ? `&lastEventId=${lastSeqRef.current}` : '';
+      const request = new XMLHttpRequest();
+      xhr = request;
+      let parsed = 0;
+      let buffer = '';
+
+      request.open('GET', `${getApiUrl()}/api/admin/notifications/stream?userPhone=${userPhone}${lastId}`);
+      request.setRequestHeader('Accept', 'text/event-stream');
 
-    // Set up polling interval - every 5 seconds
-    pollingIntervalRef.current = setInterval(pollNotifications, 5000);
+      request.onreadystatechange = () => {
+        if (request.readyState === 3 || request.readyState === 4) {
+          // Parse only the new part of the response, event by event
+          buffer += request.responseText.substring(parsed);
+          parsed = request.responseText.length;
+          let end;
+          while ((end = buffer.indexOf('\n\n')) >= 0) {
+            const block = buffer.substring(0, end);
+            buffer = buffer.substring(end + 2);
+            const data = block
+              .split('\n')
+              .filter((line) => line.startsWith('data:'))
+              .map((line) => line.substring(5))
+              .join('\n');
+            if (data || block.startsWith(':')) {
+              streamHealthy();
+            }
+            if (data) {
+              try {
+                handleNotification(JSON.parse(data));
+              } catch {
+                // Ignore a malformed event
+              }
+            }
+          }
+        }
+        if (request.readyState === 4 && !stopped) {
+          // Stream closed (timeout, overflow, network): reconnect with backoff
+          failures++;
+          if (failures >= 5 && !pollingInterval) {
+            console.log('📭 Notification stream unavailable, falling back to polling');
+            pollNotifications();
+            pollingInterval = setInterval(pollNotifications, 5000);
+          }
+          const delay = Math.min(30000, 1000 * 2 ** Math.min(failures, 5));
+          retryTimer = setTimeout(connect, delay);
+        }
+      };
+      request.send();
+    };
+
+    connect();
 
     return () => {
-      if (pollingIntervalRef.current) {
-        clearInterval(pollingIntervalRef.current);
-      }
+      stopped = true;
+      if (xhr) xhr.abort();
+      if (retryTimer) clearTimeout(retryTimer);
+      if (pollingInterval) clearInterval(pollingInterval);
     };
   }, [userPhone, addNotification]);
 
@@ -1,4 +1,5 @@
 import React, { createContext, useContext, useState } from 'react';
+import { getApiUrl } from '../config/network';
 
 export interface ProductStatistic {
   productId: number;
@@ -44,16 +45,20 @@ export function AdminStatisticsProvider({ children }: { children: React.ReactNod
   const fetchOrderStatistics = async () => {
     try {
       setLoading(true);
-      // Mock data
-      const mockStats: OrderStatistic = {
-        totalOrders: 156,
-        totalRevenue: 15600000,
-        avgOrderValue: 100000,
-        pendingOrders: 12,
-        confirmedOrders: 120,
-        cancelledOrders: 24,
-      };
-      setOrderStats(mockStats);
+      // 30 ngày gần nhất, đọc từ bảng tổng hợp theo giờ/ngày
+      const response = await fetch(`${getApiUrl()}/api/admin/stats/orders`);
+      if (!response.ok) {
+        throw new Error(`HTTP ${response.status}`);
+      }
+      const data = await response.json();
+      setOrderStats({
+        totalOrders: data.totalOrders,
+        totalRevenue: data.totalRevenue,
+        avgOrderValue: data.avgOrderValue,
+        pendingOrders: data.pendingOrders,
+        confirmedOrders: data.confirmedOrders,
+        cancelledOrders: data.cancelledOrders,
+      });
       console.log('✅ Order statistics loaded');
     } catch (error) {
       console.error('Error fetching order statistics:', error);
@@ -65,15 +70,21 @@ export function AdminStatisticsProvider({ children }: { children: React.ReactNod
   const fetchProductStatistics = async () => {
     try {
       setLoading(true);
-      // Mock data
-      const mockProducts: ProductStatistic[] = [
-        { productId: 1, productName: 'Bánh quy bơ', sold: 45, revenue: 2250000, rating: 4.8 },
-        { productId: 2, productName: 'Kẹo socola', sold: 38, revenue: 1140000, rating: 4.5 },
-        { productId: 3, productName: 'Bánh su kem', sold: 32, revenue: 1600000, rating: 4.9 },
-        { productId: 4, productName: 'Nước cam', sold: 28, revenue: 840000, rating: 4.3 },
-        { productId: 5, productName: 'Cà phê đen', sold: 25, revenue: 500000, rating: 4.6 },
-      ];
-      setProductStats(mockProducts);
+      // Bán chạy nhất hôm nay (ước lượng theo cửa sổ giờ trên server)
+      const response = await fetch(`${getApiUrl()}/api/admin/stats/top-products?window=today&limit=10`);
+      if (!response.ok) {
+        throw new Error(`HTTP ${response.status}`);
+      }
+      const data = await response.json();
+      setProductStats(
+        (data.products || []).map((p: any) => ({
+          productId: p.productId,
+          productName: p.productName ?? `#${p.productId}`,
+          sold: p.sold,
+          revenue: p.revenue,
+          rating: p.rating ?? 0,
+        }))
+      );
       console.log('✅ Product statistics loaded');
     } catch (error) {
       console.error('Error fetching product statistics:', error);
@@ -85,18 +96,13 @@ export function AdminStatisticsProvider({ children }: { children: React.ReactNod
   const fetchDailyStatistics = async (days: number = 7) => {
     try {
       setLoading(true);
-      // Mock data - tạo dữ liệu cho 7 ngày gần đây
-      const mockDaily: DailyStatistic[] = [];
-      for (let i = days - 1; i >= 0; i--) {
-        const date = new Date();
-        date.setDate(date.getDate() - i);
-        mockDaily.push({
-          date: date.toISOString().split('T')[0],
-          orders: Math.floor(Math.random() * 30) + 10,
-          revenue: Math.floor(Math.random() * 3000000) + 1000000,
-        });
+      // Một điểm mỗi ngày (kể cả ngày không có đơn), kết thúc ở hôm nay
+      const response = await fetch(`${getApiUrl()}/api/admin/stats/revenue?granularity=day&days=${days}`);
+      if (!response.ok) {
+        throw new Error(`HTTP ${response.status}`);
       }
-      setDailyStats(mockDaily);
+      const data: DailyStatistic[] = await response.json();
+      setDailyStats(data);
       console.log('✅ Daily statistics loaded');
     } catch (error) {
       console.error('Error fetching daily statistics:', error);